@@ -0,0 +1,171 @@
+package org.firstinspires.ftc.library.command;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A command that runs blocking work, such as writing a file or computing a path, on a background
+ * executor so it never stalls {@link CommandScheduler#run()}.
+ *
+ * <p>The work is submitted when the command initializes. The command stays scheduled, holding its
+ * requirements, until the work completes; the scheduler only polls whether it is done and never
+ * waits on it. The completion callback runs in {@link #end(boolean)}, on the main loop thread, so
+ * it may safely touch hardware and subsystems. If the command is interrupted, the work is
+ * cancelled by interrupting its thread; long-running work should check
+ * {@link Thread#interrupted()}.
+ *
+ * <p>By default the work runs on a shared executor with two daemon threads and a queue of 16
+ * tasks. If the queue is full, the command ends immediately and reports a
+ * {@link RejectedExecutionException} to its error handler.
+ *
+ * @param <T> the type of the result of the work
+ */
+public class AsyncCommand<T> extends CommandBase {
+
+    private static ExecutorService sharedExecutor;
+
+    private final Callable<T> m_work;
+    private final Consumer<T> m_onComplete;
+    private Consumer<Throwable> m_onError = error -> { };
+    // null to use the shared executor, looked up on each initialize
+    private final ExecutorService m_executor;
+
+    private Future<T> m_future;
+    private Throwable m_rejected;
+
+    /**
+     * Creates an AsyncCommand that runs its work on the shared executor. The executor is looked
+     * up each time the command is scheduled, so the command keeps working after
+     * {@link #shutdownSharedExecutor()}.
+     *
+     * @param work         the blocking work, run off the main loop
+     * @param onComplete   receives the result on the main loop thread
+     * @param requirements the subsystems held while the work runs
+     */
+    public AsyncCommand(Callable<T> work, Consumer<T> onComplete, Subsystem... requirements) {
+        this(null, work, onComplete, requirements);
+    }
+
+    /**
+     * Creates an AsyncCommand that runs its work on the given executor.
+     *
+     * @param executor     the executor to submit the work to, or null for the shared executor
+     * @param work         the blocking work, run off the main loop
+     * @param onComplete   receives the result on the main loop thread
+     * @param requirements the subsystems held while the work runs
+     */
+    public AsyncCommand(ExecutorService executor, Callable<T> work, Consumer<T> onComplete,
+                        Subsystem... requirements) {
+        m_executor = executor;
+        m_work = work;
+        m_onComplete = onComplete;
+        addRequirements(requirements);
+    }
+
+    /**
+     * Creates an AsyncCommand for work without a result.
+     *
+     * @param work         the blocking work, run off the main loop
+     * @param requirements the subsystems held while the work runs
+     * @return the command
+     */
+    public static AsyncCommand<Void> of(Runnable work, Subsystem... requirements) {
+        return new AsyncCommand<>(() -> {
+            work.run();
+            return null;
+        }, result -> { }, requirements);
+    }
+
+    /**
+     * Sets the handler for work that threw or was rejected. It runs on the main loop thread.
+     *
+     * @param onError receives the exception thrown by the work
+     * @return this command, for chaining
+     */
+    public AsyncCommand<T> onError(Consumer<Throwable> onError) {
+        m_onError = onError;
+        return this;
+    }
+
+    @Override
+    public void initialize() {
+        m_rejected = null;
+        try {
+            ExecutorService executor = m_executor != null ? m_executor : getSharedExecutor();
+            m_future = executor.submit(m_work);
+        } catch (RejectedExecutionException e) {
+            m_future = null;
+            m_rejected = e;
+        }
+    }
+
+    @Override
+    public boolean isFinished() {
+        return m_future == null || m_future.isDone();
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        Future<T> future = m_future;
+        m_future = null;
+
+        if (m_rejected != null) {
+            m_onError.accept(m_rejected);
+            return;
+        }
+        if (future == null) {
+            return;
+        }
+        if (interrupted && !future.isDone()) {
+            future.cancel(true);
+            return;
+        }
+
+        try {
+            // The future is done, so this does not block
+            m_onComplete.accept(future.get());
+        } catch (ExecutionException e) {
+            m_onError.accept(e.getCause());
+        } catch (CancellationException | InterruptedException e) {
+            m_onError.accept(e);
+        }
+    }
+
+    /**
+     * @return the executor shared by AsyncCommands that don't specify their own
+     */
+    public static synchronized ExecutorService getSharedExecutor() {
+        if (sharedExecutor == null || sharedExecutor.isShutdown()) {
+            AtomicInteger count = new AtomicInteger();
+            sharedExecutor = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(16), runnable -> {
+                Thread thread = new Thread(runnable, "AsyncCommand-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            });
+            ((ThreadPoolExecutor) sharedExecutor).allowCoreThreadTimeOut(true);
+        }
+        return sharedExecutor;
+    }
+
+    /**
+     * Interrupts any work still running on the shared executor. Call this when the OpMode stops;
+     * the executor is recreated the next time it is needed.
+     */
+    public static synchronized void shutdownSharedExecutor() {
+        if (sharedExecutor != null) {
+            sharedExecutor.shutdownNow();
+            sharedExecutor = null;
+        }
+    }
+}
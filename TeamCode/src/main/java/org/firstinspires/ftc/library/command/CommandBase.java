@@ -23,6 +23,9 @@ public abstract class CommandBase implements Command {
     protected String m_subsystem = "Ungrouped";
     protected Set<Subsystem> m_requirements = new HashSet<>();
 
+    // The grouped-command generation this command was added to a group in; see CommandGroupBase
+    int m_groupedGeneration;
+
     /**
      * Adds the specified requirements to the command.
      *
@@ -7,26 +7,38 @@
 
 package org.firstinspires.ftc.library.command;
 
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Set;
 import java.util.WeakHashMap;
 
 /**
- * A base for CommandGroups. Statically tracks commands that have been allocated to groups to
- * ensure those commands are not also used independently, which can result in inconsistent command
- * state and unpredictable execution.
+ * A base for CommandGroups. Tracks commands that have been allocated to groups to ensure those
+ * commands are not also used independently, which can result in inconsistent command state and
+ * unpredictable execution.
+ *
+ * <p>Membership is recorded on the command itself: a {@link CommandBase} is grouped while its
+ * stamp matches the current generation, so checking it is a field read, and clearing every
+ * command is a single increment. Commands that implement {@link Command} directly fall back to a
+ * weak set.
  *
  * @author Jackson
  */
 public abstract class CommandGroupBase extends CommandBase implements Command {
 
-    private static final Set<Command> m_groupedCommands =
+    private static int m_generation = 1;
+
+    private static final Set<Command> m_groupedOtherCommands =
             Collections.newSetFromMap(new WeakHashMap<>());
 
     static void registerGroupedCommands(Command... commands) {
-        m_groupedCommands.addAll(Arrays.asList(commands));
+        for (Command command : commands) {
+            if (command instanceof CommandBase) {
+                ((CommandBase) command).m_groupedGeneration = m_generation;
+            } else {
+                m_groupedOtherCommands.add(command);
+            }
+        }
     }
 
     /**
@@ -36,7 +48,8 @@ public abstract class CommandGroupBase extends CommandBase implements Command {
      * use this unless you fully understand what you are doing.
      */
     public static void clearGroupedCommands() {
-        m_groupedCommands.clear();
+        m_generation++;
+        m_groupedOtherCommands.clear();
     }
 
     /**
@@ -49,9 +62,25 @@ public abstract class CommandGroupBase extends CommandBase implements Command {
      * @param command the command to remove from the list of grouped commands
      */
     public static void clearGroupedCommand(Command command) {
-        m_groupedCommands.remove(command);
+        if (command instanceof CommandBase) {
+            ((CommandBase) command).m_groupedGeneration = 0;
+        } else {
+            m_groupedOtherCommands.remove(command);
+        }
     }
 
+    /**
+     * Whether the command has been allocated to a CommandGroup.
+     *
+     * @param command the command to check
+     * @return whether the command is grouped
+     */
+    public static boolean isGrouped(Command command) {
+        if (command instanceof CommandBase) {
+            return ((CommandBase) command).m_groupedGeneration == m_generation;
+        }
+        return !m_groupedOtherCommands.isEmpty() && m_groupedOtherCommands.contains(command);
+    }
 
     /**
      * Requires that the specified commands not have been already allocated to a CommandGroup. Throws
@@ -60,7 +89,9 @@ public abstract class CommandGroupBase extends CommandBase implements Command {
      * @param commands The commands to check
      */
     public static void requireUngrouped(Command... commands) {
-        requireUngrouped(Arrays.asList(commands));
+        for (Command command : commands) {
+            checkUngrouped(command);
+        }
     }
 
     /**
@@ -70,13 +101,15 @@ public abstract class CommandGroupBase extends CommandBase implements Command {
      * @param commands The commands to check
      */
     public static void requireUngrouped(Collection<Command> commands) {
-        if (!Collections.disjoint(commands, getGroupedCommands())) {
-            throw new IllegalArgumentException("Commands cannot be added to more than one CommandGroup");
+        for (Command command : commands) {
+            checkUngrouped(command);
         }
     }
 
-    static Set<Command> getGroupedCommands() {
-        return m_groupedCommands;
+    private static void checkUngrouped(Command command) {
+        if (isGrouped(command)) {
+            throw new IllegalArgumentException("Commands cannot be added to more than one CommandGroup");
+        }
     }
 
     /**
@@ -0,0 +1,153 @@
+package org.firstinspires.ftc.library.command;
+
+import java.util.ArrayDeque;
+import java.util.function.Supplier;
+
+/**
+ * Reuses command instances that would otherwise be created every time they run.
+ *
+ * <p>A {@link DeferredCommand} or a supplier-based {@link SelectCommand} builds a new command graph
+ * each time it initializes, and in TeleOp that is a steady stream of garbage for the collector.
+ * A pool builds the graph with its factory only when no idle instance is available, and gets the
+ * instance back when it ends:
+ *
+ * <pre>
+ * CommandPool&lt;AlignCommand&gt; aligns = new CommandPool&lt;&gt;(() -&gt; new AlignCommand(drive));
+ * new DeferredCommand(() -&gt; {
+ *     CommandPool.Pooled&lt;AlignCommand&gt; align = aligns.acquire();
+ *     align.get().setTarget(vision.getTarget());
+ *     return align;
+ * }, Arrays.asList(drive));
+ * </pre>
+ *
+ * <p>{@link #acquire()} returns the instance wrapped in a {@link Pooled} command, which goes back
+ * to the pool as soon as it ends, finished or interrupted. The instance is initialized again each
+ * time it runs, so commands that reset their state in {@code initialize()} need nothing else;
+ * commands with parameters should be configured after they are acquired. A pooled command is
+ * released from the group it was part of, so the next user can put it in another group. It must
+ * not be run again after it ends without acquiring it again.
+ *
+ * <p>The pool is meant for the main loop thread, like the rest of the command framework.
+ *
+ * @param <T> the type of command in the pool
+ */
+public class CommandPool<T extends Command> {
+
+    /**
+     * A command on loan from a pool. It runs the pooled instance and returns it to the pool when it
+     * ends.
+     *
+     * @param <T> the type of the pooled command
+     */
+    public static final class Pooled<T extends Command> extends WrapperCommand {
+        private final CommandPool<T> m_pool;
+        private final T m_instance;
+        private boolean m_inUse;
+
+        private Pooled(CommandPool<T> pool, T instance) {
+            super(instance);
+            CommandGroupBase.registerGroupedCommands(instance);
+            m_pool = pool;
+            m_instance = instance;
+        }
+
+        /**
+         * @return the pooled instance, for configuring it before it runs
+         */
+        public T get() {
+            return m_instance;
+        }
+
+        @Override
+        public void end(boolean interrupted) {
+            m_command.end(interrupted);
+            m_pool.release(this);
+        }
+    }
+
+    private final Supplier<T> m_factory;
+    private final ArrayDeque<Pooled<T>> m_idle;
+    private final int m_maxIdle;
+    private int m_created;
+
+    /**
+     * Creates a pool that keeps up to 8 idle instances.
+     *
+     * @param factory creates a new instance when none is idle
+     */
+    public CommandPool(Supplier<T> factory) {
+        this(factory, 8);
+    }
+
+    /**
+     * Creates a pool.
+     *
+     * @param factory creates a new instance when none is idle
+     * @param maxIdle the number of idle instances to keep; more are left to the garbage collector
+     */
+    public CommandPool(Supplier<T> factory, int maxIdle) {
+        if (maxIdle <= 0) {
+            throw new IllegalArgumentException("A command pool must keep at least one instance");
+        }
+        m_factory = factory;
+        m_maxIdle = maxIdle;
+        m_idle = new ArrayDeque<>(maxIdle);
+    }
+
+    /**
+     * Creates instances ahead of time, so the first uses don't allocate either.
+     *
+     * @param count the number of idle instances to have ready, at most the pool's idle limit
+     * @return this pool, for chaining
+     */
+    public CommandPool<T> prefill(int count) {
+        while (m_idle.size() < Math.min(count, m_maxIdle)) {
+            m_idle.push(create());
+        }
+        return this;
+    }
+
+    /**
+     * Takes an idle instance from the pool, or creates one if none is idle.
+     *
+     * @return the command, which returns to the pool when it ends
+     */
+    public Pooled<T> acquire() {
+        Pooled<T> pooled = m_idle.poll();
+        if (pooled == null) {
+            pooled = create();
+        }
+        pooled.m_inUse = true;
+        return pooled;
+    }
+
+    /**
+     * @return the number of instances the factory has created
+     */
+    public int getCreatedCount() {
+        return m_created;
+    }
+
+    /**
+     * @return the number of instances waiting to be acquired
+     */
+    public int getIdleCount() {
+        return m_idle.size();
+    }
+
+    private Pooled<T> create() {
+        m_created++;
+        return new Pooled<>(this, m_factory.get());
+    }
+
+    private void release(Pooled<T> pooled) {
+        if (!pooled.m_inUse) {
+            return;
+        }
+        pooled.m_inUse = false;
+        CommandGroupBase.clearGroupedCommand(pooled);
+        if (m_idle.size() < m_maxIdle) {
+            m_idle.push(pooled);
+        }
+    }
+}
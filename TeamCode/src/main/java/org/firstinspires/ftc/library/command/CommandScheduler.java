@@ -20,6 +20,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 
 /**
@@ -76,6 +77,9 @@ public final class CommandScheduler {
     private final Map<Command, Boolean> m_toSchedule = new LinkedHashMap<>();
     private boolean m_inRunLoop;
     private final List<Command> m_toCancel = new ArrayList<>();
+    private CommandWatchdog m_watchdog;
+    private ForkJoinPool m_periodicPool;
+    private PeriodicGraph m_periodicGraph;
     private boolean clearHubCache = false;
     private List<LynxModule> allHubs;
 
@@ -109,6 +113,9 @@ public final class CommandScheduler {
     private void initCommand(Command command, boolean interruptible, Set<Subsystem> requirements) {
         command.initialize();
         CommandState scheduledCommand = new CommandState(interruptible);
+        if (m_watchdog != null) {
+            m_watchdog.start(command, scheduledCommand);
+        }
         m_scheduledCommands.put(command, scheduledCommand);
         for (Consumer<Command> action : m_initActions) {
             action.accept(command);
@@ -134,7 +141,7 @@ public final class CommandScheduler {
             return;
         }
 
-        if (CommandGroupBase.getGroupedCommands().contains(command)) {
+        if (CommandGroupBase.isGrouped(command)) {
             throw new IllegalArgumentException(
                     "A command that is part of a command group cannot be independently scheduled");
         }
@@ -215,8 +222,15 @@ public final class CommandScheduler {
         }
 
         // Run the periodic method of all registered subsystems.
-        for (Subsystem subsystem : m_subsystems.keySet()) {
-            subsystem.periodic();
+        if (m_periodicPool != null) {
+            if (m_periodicGraph == null) {
+                m_periodicGraph = new PeriodicGraph(m_subsystems.keySet(), m_periodicPool);
+            }
+            m_periodicGraph.run();
+        } else {
+            for (Subsystem subsystem : m_subsystems.keySet()) {
+                subsystem.periodic();
+            }
         }
 
         // Poll buttons for new commands to add.
@@ -226,9 +240,10 @@ public final class CommandScheduler {
 
         m_inRunLoop = true;
         // Run scheduled commands, remove finished commands.
-        for (Iterator<Command> iterator = m_scheduledCommands.keySet().iterator();
-             iterator.hasNext(); ) {
-            Command command = iterator.next();
+        for (Iterator<Map.Entry<Command, CommandState>> iterator =
+             m_scheduledCommands.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Command, CommandState> entry = iterator.next();
+            Command command = entry.getKey();
 
             if (!command.runsWhenDisabled() && Robot.isDisabled) {
                 command.end(true);
@@ -240,9 +255,27 @@ public final class CommandScheduler {
                 continue;
             }
 
-            command.execute();
-            for (Consumer<Command> action : m_executeActions) {
-                action.accept(command);
+            CommandWatchdog watchdog = m_watchdog;
+            if (watchdog == null) {
+                command.execute();
+                for (Consumer<Command> action : m_executeActions) {
+                    action.accept(command);
+                }
+            } else if (watchdog.shouldExecute(command, entry.getValue())) {
+                long start = System.nanoTime();
+                command.execute();
+                if (watchdog.record(command, entry.getValue(), System.nanoTime() - start)) {
+                    command.end(true);
+                    for (Consumer<Command> action : m_interruptActions) {
+                        action.accept(command);
+                    }
+                    m_requirements.keySet().removeAll(command.getRequirements());
+                    iterator.remove();
+                    continue;
+                }
+                for (Consumer<Command> action : m_executeActions) {
+                    action.accept(command);
+                }
             }
             if (command.isFinished()) {
                 command.end(false);
@@ -294,6 +327,7 @@ public final class CommandScheduler {
         for (Subsystem subsystem : subsystems) {
             m_subsystems.put(subsystem, null);
         }
+        m_periodicGraph = null;
     }
 
     /**
@@ -304,6 +338,33 @@ public final class CommandScheduler {
      */
     public void unregisterSubsystem(Subsystem... subsystems) {
         m_subsystems.keySet().removeAll(Arrays.asList(subsystems));
+        m_periodicGraph = null;
+    }
+
+    /**
+     * Times every command's execute() against a budget, and logs, throttles or cancels commands
+     * that keep going over it. Commands already scheduled are timed from their next execution.
+     *
+     * @param watchdog the watchdog, or null to stop timing commands
+     */
+    public void setWatchdog(CommandWatchdog watchdog) {
+        m_watchdog = watchdog;
+    }
+
+    /**
+     * Runs subsystem periodic methods in parallel on a pool, such as
+     * {@link ForkJoinPool#commonPool()}. The periodic methods of {@link ConcurrentSubsystem}s whose
+     * declared reads and writes don't conflict run on the pool at the same time; all other
+     * subsystems run on the thread calling {@link #run()}, in registration order relative to the
+     * subsystems they depend on. Every periodic method completes before buttons are polled and
+     * commands run.
+     *
+     * @param pool the pool to run periodic methods on, or null to run them all in order on the
+     *             calling thread
+     */
+    public void setPeriodicPool(ForkJoinPool pool) {
+        m_periodicPool = pool;
+        m_periodicGraph = null;
     }
 
     /**
@@ -351,6 +412,9 @@ public final class CommandScheduler {
             throw new IllegalArgumentException("Default commands should not end!");
         }
 
+        if (!m_subsystems.containsKey(subsystem)) {
+            m_periodicGraph = null;
+        }
         m_subsystems.put(subsystem, defaultCommand);
     }
 
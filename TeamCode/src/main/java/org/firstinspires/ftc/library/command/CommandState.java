@@ -22,6 +22,13 @@ class CommandState {
     // Whether or not it is interruptible.
     private final boolean m_interruptible;
 
+    // Execute timing, kept by the CommandWatchdog
+    long m_budgetNanos;
+    int m_strikes;
+    int m_overruns;
+    boolean m_throttled;
+    int m_ticks;
+
 
     CommandState(boolean interruptible) {
         m_interruptible = interruptible;
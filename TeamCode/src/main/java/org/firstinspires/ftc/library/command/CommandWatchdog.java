@@ -0,0 +1,195 @@
+package org.firstinspires.ftc.library.command;
+
+import android.util.Log;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a single slow command from eating the loop. Set it with
+ * {@link CommandScheduler#setWatchdog(CommandWatchdog)} and the scheduler times every
+ * {@code execute()} call against the command's budget.
+ *
+ * <p>Each execution over budget is an overrun and adds a strike; each execution within budget
+ * takes one away. The first overrun of every scheduling is logged with the command's name. When a
+ * command reaches the strike limit, the watchdog applies its {@link Action}: it logs again, runs
+ * the command's {@code execute()} only every Nth tick from then on, or cancels the command. A
+ * throttled command still has {@code isFinished()} checked every tick.
+ *
+ * <pre>
+ * CommandWatchdog watchdog = new CommandWatchdog(2000)
+ *         .setAction(CommandWatchdog.Action.THROTTLE)
+ *         .setBudget(visionAlign, 5000);
+ * CommandScheduler.getInstance().setWatchdog(watchdog);
+ * </pre>
+ */
+public class CommandWatchdog {
+
+    /**
+     * What to do with a command that reaches the strike limit.
+     */
+    public enum Action {
+        LOG, THROTTLE, CANCEL
+    }
+
+    private final long m_defaultBudgetNanos;
+    private final Map<Command, Long> m_budgets = new IdentityHashMap<>();
+    private Action m_action = Action.LOG;
+    private int m_strikeLimit = 5;
+    private int m_throttleDivisor = 4;
+    private Consumer<String> m_logger = message -> Log.w("CommandWatchdog", message);
+
+    private long m_totalOverruns;
+    private String m_worstCommand;
+    private long m_worstNanos;
+
+    /**
+     * Creates a watchdog.
+     *
+     * @param defaultBudgetMicros the execute budget of commands without their own, in microseconds
+     */
+    public CommandWatchdog(long defaultBudgetMicros) {
+        if (defaultBudgetMicros <= 0) {
+            throw new IllegalArgumentException("The execute budget must be positive");
+        }
+        m_defaultBudgetNanos = defaultBudgetMicros * 1000L;
+    }
+
+    /**
+     * Gives a command its own budget. Takes effect the next time the command is scheduled.
+     *
+     * @param command      the command
+     * @param budgetMicros its execute budget, in microseconds
+     * @return this watchdog, for chaining
+     */
+    public CommandWatchdog setBudget(Command command, long budgetMicros) {
+        if (budgetMicros <= 0) {
+            throw new IllegalArgumentException("The execute budget must be positive");
+        }
+        m_budgets.put(command, budgetMicros * 1000L);
+        return this;
+    }
+
+    /**
+     * @param action what to do with commands that reach the strike limit
+     * @return this watchdog, for chaining
+     */
+    public CommandWatchdog setAction(Action action) {
+        m_action = action;
+        return this;
+    }
+
+    /**
+     * @param strikeLimit the number of strikes before the action is applied
+     * @return this watchdog, for chaining
+     */
+    public CommandWatchdog setStrikeLimit(int strikeLimit) {
+        if (strikeLimit <= 0) {
+            throw new IllegalArgumentException("The strike limit must be positive");
+        }
+        m_strikeLimit = strikeLimit;
+        return this;
+    }
+
+    /**
+     * @param divisor a throttled command executes once every this many ticks
+     * @return this watchdog, for chaining
+     */
+    public CommandWatchdog setThrottleDivisor(int divisor) {
+        if (divisor < 2) {
+            throw new IllegalArgumentException("The throttle divisor must be at least 2");
+        }
+        m_throttleDivisor = divisor;
+        return this;
+    }
+
+    /**
+     * @param logger receives the watchdog's messages, instead of logcat
+     * @return this watchdog, for chaining
+     */
+    public CommandWatchdog setLogger(Consumer<String> logger) {
+        m_logger = logger;
+        return this;
+    }
+
+    /**
+     * @return the number of overruns of all commands
+     */
+    public long getTotalOverruns() {
+        return m_totalOverruns;
+    }
+
+    /**
+     * @return the name of the command with the slowest execution seen, or null if none overran
+     */
+    public String getWorstCommand() {
+        return m_worstCommand;
+    }
+
+    /**
+     * @return the slowest execution seen, in microseconds
+     */
+    public long getWorstMicros() {
+        return m_worstNanos / 1000L;
+    }
+
+    // Called when a command is scheduled
+    void start(Command command, CommandState state) {
+        Long budget = m_budgets.get(command);
+        state.m_budgetNanos = budget != null ? budget : m_defaultBudgetNanos;
+        state.m_strikes = 0;
+        state.m_overruns = 0;
+        state.m_throttled = false;
+        state.m_ticks = 0;
+    }
+
+    // Whether a command should execute this tick
+    boolean shouldExecute(Command command, CommandState state) {
+        if (state.m_budgetNanos == 0) {
+            // scheduled before the watchdog was set
+            start(command, state);
+        }
+        return !state.m_throttled || state.m_ticks++ % m_throttleDivisor == 0;
+    }
+
+    // Records an execution; returns whether the command should be cancelled
+    boolean record(Command command, CommandState state, long nanos) {
+        if (nanos <= state.m_budgetNanos) {
+            if (state.m_strikes > 0) {
+                state.m_strikes--;
+            }
+            return false;
+        }
+
+        m_totalOverruns++;
+        if (nanos > m_worstNanos) {
+            m_worstNanos = nanos;
+            m_worstCommand = command.getName();
+        }
+        if (state.m_overruns++ == 0) {
+            m_logger.accept(command.getName() + " took " + nanos / 1000L + " us to execute, over its "
+                    + state.m_budgetNanos / 1000L + " us budget");
+        }
+        if (++state.m_strikes < m_strikeLimit || state.m_throttled) {
+            return false;
+        }
+
+        switch (m_action) {
+            case THROTTLE:
+                state.m_throttled = true;
+                state.m_ticks = 1;
+                m_logger.accept(command.getName() + " overran its budget " + state.m_overruns
+                        + " times, executing it every " + m_throttleDivisor + " ticks");
+                return false;
+            case CANCEL:
+                m_logger.accept(command.getName() + " overran its budget " + state.m_overruns
+                        + " times, cancelling it");
+                return true;
+            default:
+                m_logger.accept(command.getName() + " overran its budget " + state.m_overruns + " times");
+                state.m_strikes = 0;
+                return false;
+        }
+    }
+}
@@ -2,7 +2,9 @@ package org.firstinspires.ftc.library.command;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 /**
@@ -247,6 +249,44 @@ public final class Commands {
         return new ParallelDeadlineGroup(deadline, otherCommands);
     }
 
+    /**
+     * Constructs an empty coroutine command, to be filled with steps.
+     *
+     * @param requirements subsystems the command requires
+     * @return the command
+     * @see CoroutineCommand
+     */
+    public static CoroutineCommand coroutine(Subsystem... requirements) {
+        return new CoroutineCommand(requirements);
+    }
+
+    /**
+     * Flattens a composed command into a single interpreted command with the same behavior.
+     *
+     * @param command the command tree to compile
+     * @return the compiled command
+     * @see CompiledCommand
+     */
+    public static Command compile(Command command) {
+        return CompiledCommand.compile(command);
+    }
+
+    /**
+     * Constructs a command that runs blocking work off the main loop and hands its result back on
+     * the main loop thread.
+     *
+     * @param work         the blocking work
+     * @param onComplete   receives the result when the work is done
+     * @param requirements subsystems the command requires while the work runs
+     * @param <T>          the type of the result
+     * @return the command
+     * @see AsyncCommand
+     */
+    public static <T> AsyncCommand<T> async(Callable<T> work, Consumer<T> onComplete,
+                                            Subsystem... requirements) {
+        return new AsyncCommand<>(work, onComplete, requirements);
+    }
+
     private Commands() {
         throw new UnsupportedOperationException("This is a utility class");
     }
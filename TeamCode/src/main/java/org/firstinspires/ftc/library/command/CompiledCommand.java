@@ -0,0 +1,368 @@
+package org.firstinspires.ftc.library.command;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A command tree flattened into arrays and run by a single interpreter.
+ *
+ * <p>Decorator chains such as {@code drive.withTimeout(2000).andThen(intake).alongWith(lift)}
+ * nest a group object per call, so every tick walks through several levels of virtual
+ * {@code execute()} and {@code isFinished()} calls before reaching a leaf command. Compiling the
+ * tree replaces the groups with nodes in flat arrays: leaf commands are called directly, and the
+ * group logic runs in one interpreter over node indices. Sequences nested directly in sequences
+ * and parallel groups nested directly in parallel groups are merged into their parent, so the
+ * tree also gets shallower.
+ *
+ * <p>The interpreter reproduces the group semantics exactly: leaf commands see the same
+ * {@code initialize}, {@code execute}, {@code isFinished} and {@code end} calls, in the same
+ * order, as they would inside the original groups. Only {@link SequentialCommandGroup},
+ * {@link ParallelCommandGroup}, {@link ParallelRaceGroup} and {@link ParallelDeadlineGroup}
+ * instances that don't override their lifecycle methods are flattened; subclasses that only add
+ * commands in their constructor (the usual way of writing an autonomous routine) are flattened
+ * too, anything else is kept as a leaf.
+ *
+ * <p>The compiled command takes the place of the root command, which becomes grouped and cannot
+ * be scheduled on its own.
+ */
+public class CompiledCommand extends CommandBase {
+    private static final int LEAF = 0;
+    private static final int SEQUENCE = 1;
+    private static final int PARALLEL = 2;
+    private static final int RACE = 3;
+    private static final int DEADLINE = 4;
+
+    private final int[] m_type;
+    private final Command[] m_leaf;
+    // children of node n are m_children[m_firstChild[n]] .. m_children[m_firstChild[n] + m_childCount[n] - 1]
+    private final int[] m_firstChild;
+    private final int[] m_childCount;
+    private final int[] m_children;
+    private final int[] m_deadline;
+
+    // SEQUENCE: position of the running child, -1 when not running
+    private final int[] m_current;
+    // whether a child of a parallel, race or deadline node is still running
+    private final boolean[] m_running;
+    // PARALLEL and DEADLINE: number of children still running
+    private final int[] m_runningCount;
+    // RACE: whether a child has finished
+    private final boolean[] m_finished;
+
+    private final boolean m_runWhenDisabled;
+
+    /**
+     * Compiles a command tree.
+     *
+     * @param command the root of the tree, which must not already be part of a group
+     * @return the compiled command
+     */
+    public static CompiledCommand compile(Command command) {
+        CommandGroupBase.requireUngrouped(command);
+        CompiledCommand compiled = new CompiledCommand(command);
+        CommandGroupBase.registerGroupedCommands(command);
+        return compiled;
+    }
+
+    private CompiledCommand(Command root) {
+        Builder builder = new Builder();
+        builder.add(root);
+
+        int nodes = builder.m_types.size();
+        m_type = new int[nodes];
+        m_leaf = builder.m_leaves.toArray(new Command[0]);
+        m_firstChild = new int[nodes];
+        m_childCount = new int[nodes];
+        m_deadline = new int[nodes];
+
+        int childTotal = 0;
+        for (int n = 0; n < nodes; n++) {
+            childTotal += builder.m_childLists.get(n).size();
+        }
+        m_children = new int[childTotal];
+
+        int next = 0;
+        for (int n = 0; n < nodes; n++) {
+            m_type[n] = builder.m_types.get(n);
+            m_deadline[n] = builder.m_deadlines.get(n);
+            List<Integer> children = builder.m_childLists.get(n);
+            m_firstChild[n] = next;
+            m_childCount[n] = children.size();
+            for (int child : children) {
+                m_children[next++] = child;
+            }
+        }
+
+        m_current = new int[nodes];
+        Arrays.fill(m_current, -1);
+        m_running = new boolean[nodes];
+        m_runningCount = new int[nodes];
+        m_finished = new boolean[nodes];
+        Arrays.fill(m_finished, true);
+
+        m_requirements.addAll(root.getRequirements());
+        m_runWhenDisabled = root.runsWhenDisabled();
+        setName(root.getName());
+    }
+
+    /**
+     * @return the number of nodes in the compiled tree, leaves and groups
+     */
+    public int getNodeCount() {
+        return m_type.length;
+    }
+
+    @Override
+    public void initialize() {
+        initialize(0);
+    }
+
+    @Override
+    public void execute() {
+        execute(0);
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        end(0, interrupted);
+    }
+
+    @Override
+    public boolean isFinished() {
+        return isFinished(0);
+    }
+
+    @Override
+    public boolean runsWhenDisabled() {
+        return m_runWhenDisabled;
+    }
+
+    private int child(int node, int index) {
+        return m_children[m_firstChild[node] + index];
+    }
+
+    private void initialize(int node) {
+        int count = m_childCount[node];
+        switch (m_type[node]) {
+            case LEAF:
+                m_leaf[node].initialize();
+                break;
+            case SEQUENCE:
+                m_current[node] = 0;
+                if (count > 0) {
+                    initialize(child(node, 0));
+                }
+                break;
+            case RACE:
+                m_finished[node] = false;
+                initializeAll(node, count);
+                break;
+            default:
+                initializeAll(node, count);
+                break;
+        }
+    }
+
+    // Starts every child of a parallel node
+    private void initializeAll(int node, int count) {
+        for (int i = 0; i < count; i++) {
+            int child = child(node, i);
+            initialize(child);
+            m_running[child] = true;
+        }
+        m_runningCount[node] = count;
+    }
+
+    private void execute(int node) {
+        int count = m_childCount[node];
+        switch (m_type[node]) {
+            case LEAF:
+                m_leaf[node].execute();
+                break;
+            case SEQUENCE: {
+                int current = m_current[node];
+                if (count == 0 || current == -1 || current >= count) {
+                    return;
+                }
+                int child = child(node, current);
+                execute(child);
+                if (isFinished(child)) {
+                    end(child, false);
+                    m_current[node] = ++current;
+                    if (current < count) {
+                        initialize(child(node, current));
+                    }
+                }
+                break;
+            }
+            case RACE:
+                for (int i = 0; i < count; i++) {
+                    int child = child(node, i);
+                    execute(child);
+                    if (isFinished(child)) {
+                        m_running[child] = false;
+                        m_finished[node] = true;
+                    }
+                }
+                break;
+            default:
+                for (int i = 0; i < count; i++) {
+                    int child = child(node, i);
+                    if (!m_running[child]) {
+                        continue;
+                    }
+                    execute(child);
+                    if (isFinished(child)) {
+                        end(child, false);
+                        m_running[child] = false;
+                        m_runningCount[node]--;
+                    }
+                }
+                break;
+        }
+    }
+
+    private boolean isFinished(int node) {
+        switch (m_type[node]) {
+            case LEAF:
+                return m_leaf[node].isFinished();
+            case SEQUENCE:
+                return m_current[node] == m_childCount[node];
+            case PARALLEL:
+                return m_runningCount[node] == 0;
+            case RACE:
+                return m_finished[node];
+            default:
+                return isFinished(m_deadline[node]);
+        }
+    }
+
+    private void end(int node, boolean interrupted) {
+        int count = m_childCount[node];
+        switch (m_type[node]) {
+            case LEAF:
+                m_leaf[node].end(interrupted);
+                break;
+            case SEQUENCE: {
+                int current = m_current[node];
+                if (current == -1) {
+                    return;
+                }
+                if (interrupted && current < count) {
+                    end(child(node, current), true);
+                }
+                m_current[node] = -1;
+                break;
+            }
+            default:
+                for (int i = 0; i < count; i++) {
+                    int child = child(node, i);
+                    if (m_running[child]) {
+                        end(child, true);
+                        m_running[child] = false;
+                    }
+                }
+                m_runningCount[node] = 0;
+                m_finished[node] = true;
+                break;
+        }
+    }
+
+    // Builds the node tables in depth-first order, so node 0 is the root
+    private static final class Builder {
+        final List<Integer> m_types = new ArrayList<>();
+        final List<Command> m_leaves = new ArrayList<>();
+        final List<List<Integer>> m_childLists = new ArrayList<>();
+        final List<Integer> m_deadlines = new ArrayList<>();
+
+        int add(Command command) {
+            int type = typeOf(command);
+            int node = m_types.size();
+            m_types.add(type);
+            m_leaves.add(type == LEAF ? command : null);
+            m_childLists.add(new ArrayList<>());
+            m_deadlines.add(-1);
+
+            switch (type) {
+                case SEQUENCE:
+                    addChildren(node, ((SequentialCommandGroup) command).getCommands(), SEQUENCE);
+                    break;
+                case PARALLEL:
+                    addChildren(node, ((ParallelCommandGroup) command).getCommands(), PARALLEL);
+                    break;
+                case RACE:
+                    addChildren(node, ((ParallelRaceGroup) command).getCommands(), -1);
+                    break;
+                case DEADLINE: {
+                    ParallelDeadlineGroup group = (ParallelDeadlineGroup) command;
+                    for (Command child : group.getCommands()) {
+                        int childNode = add(child);
+                        m_childLists.get(node).add(childNode);
+                        if (child == group.getDeadline()) {
+                            m_deadlines.set(node, childNode);
+                        }
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+            return node;
+        }
+
+        // Adds children, merging non-empty children of the same kind into this node
+        void addChildren(int node, Command[] children, int mergeType) {
+            for (Command child : children) {
+                if (mergeType != -1 && typeOf(child) == mergeType) {
+                    Command[] grandchildren = mergeType == SEQUENCE
+                            ? ((SequentialCommandGroup) child).getCommands()
+                            : ((ParallelCommandGroup) child).getCommands();
+                    if (grandchildren.length > 0) {
+                        addChildren(node, grandchildren, mergeType);
+                        continue;
+                    }
+                }
+                m_childLists.get(node).add(add(child));
+            }
+        }
+
+        static int typeOf(Command command) {
+            if (command instanceof SequentialCommandGroup
+                    && isPlain(command, SequentialCommandGroup.class)) {
+                return SEQUENCE;
+            }
+            if (command instanceof ParallelCommandGroup
+                    && isPlain(command, ParallelCommandGroup.class)) {
+                return PARALLEL;
+            }
+            if (command instanceof ParallelRaceGroup
+                    && isPlain(command, ParallelRaceGroup.class)) {
+                return RACE;
+            }
+            if (command instanceof ParallelDeadlineGroup
+                    && isPlain(command, ParallelDeadlineGroup.class)) {
+                return DEADLINE;
+            }
+            return LEAF;
+        }
+
+        // Whether the command inherits its lifecycle unchanged from the group class
+        static boolean isPlain(Command command, Class<?> groupClass) {
+            if (command.getClass() == groupClass) {
+                return true;
+            }
+            try {
+                for (String method : new String[]{"initialize", "execute", "isFinished"}) {
+                    if (command.getClass().getMethod(method).getDeclaringClass() != groupClass) {
+                        return false;
+                    }
+                }
+                return command.getClass().getMethod("end", boolean.class)
+                        .getDeclaringClass() == groupClass;
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    }
+}
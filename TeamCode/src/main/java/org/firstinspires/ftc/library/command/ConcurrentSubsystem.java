@@ -0,0 +1,35 @@
+package org.firstinspires.ftc.library.command;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * A subsystem whose {@link #periodic()} may run on a worker thread, in parallel with the periodic
+ * methods of other subsystems, when the scheduler has a periodic pool set with
+ * {@link CommandScheduler#setPeriodicPool(java.util.concurrent.ForkJoinPool)}.
+ *
+ * <p>Implement this for periodic work that does not touch hardware, such as vision
+ * post-processing or formatting telemetry. The periodic method must only use the state it
+ * declares: any objects it reads that another subsystem's periodic method writes go in
+ * {@link #getPeriodicReads()}, and any objects it writes go in {@link #getPeriodicWrites()}. Two
+ * periodic methods that share an object which at least one of them writes run in registration
+ * order, one after the other; all others may overlap. Subsystems that don't implement this
+ * interface run on the main thread, after every subsystem registered before them and before every
+ * subsystem registered after them.
+ */
+public interface ConcurrentSubsystem extends Subsystem {
+
+    /**
+     * @return the objects periodic() reads that other periodic methods may write
+     */
+    default Set<Object> getPeriodicReads() {
+        return Collections.emptySet();
+    }
+
+    /**
+     * @return the objects periodic() writes
+     */
+    default Set<Object> getPeriodicWrites() {
+        return Collections.emptySet();
+    }
+}
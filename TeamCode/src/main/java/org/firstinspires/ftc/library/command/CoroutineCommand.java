@@ -0,0 +1,311 @@
+package org.firstinspires.ftc.library.command;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * A command whose body is written top to bottom as a script, with points where it waits for the
+ * next loop. Each tick the scheduler resumes the script where it left off: everything up to the
+ * next waiting step runs immediately, then the command yields until the next tick.
+ *
+ * <pre>
+ * new CoroutineCommand(lift, claw)
+ *         .run(lift::raise)
+ *         .await(lift::atTarget)
+ *         .run(claw::open)
+ *         .awaitMillis(250)
+ *         .whileTrue(() -&gt; !claw.isEmpty(), body -&gt; body.run(claw::eject))
+ *         .run(lift::lower);
+ * </pre>
+ *
+ * <p>This replaces nested {@link SequentialCommandGroup}s of {@link InstantCommand}s and
+ * {@link WaitUntilCommand}s, and hand-written state machines. No threads are involved: the script
+ * is compiled into an array of steps, and resuming it is an index into that array and a call to
+ * the current step, without allocating. Steps must not be added while the command is running.
+ *
+ * <p>The command ends when the last step completes. If it is interrupted, the running
+ * {@link #command(Command)} step is interrupted and the {@link #finallyDo(Consumer)} actions run.
+ */
+public class CoroutineCommand extends CommandBase {
+
+    // A step reports whether it completed; the script only advances past completed steps
+    private interface Step {
+        default void start() {
+        }
+
+        boolean resume();
+
+        default void stop(boolean interrupted) {
+        }
+    }
+
+    private final List<Step> m_building = new ArrayList<>();
+    private Step[] m_steps;
+    private final List<Consumer<Boolean>> m_finally = new ArrayList<>();
+
+    private int m_pc = -1;
+    private boolean m_started;
+    private boolean m_runWhenDisabled;
+
+    /**
+     * Creates an empty coroutine command.
+     *
+     * @param requirements the subsystems required by this command
+     */
+    public CoroutineCommand(Subsystem... requirements) {
+        addRequirements(requirements);
+    }
+
+    /**
+     * Runs an action once and continues immediately.
+     *
+     * @param action the action to run
+     * @return this command, for chaining
+     */
+    public CoroutineCommand run(Runnable action) {
+        return add(() -> {
+            action.run();
+            return true;
+        });
+    }
+
+    /**
+     * Waits until the next tick.
+     *
+     * @return this command, for chaining
+     */
+    public CoroutineCommand yieldTick() {
+        return add(new Step() {
+            private boolean m_yielded;
+
+            @Override
+            public void start() {
+                m_yielded = false;
+            }
+
+            @Override
+            public boolean resume() {
+                if (m_yielded) {
+                    return true;
+                }
+                m_yielded = true;
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Waits until a condition is true. If it is already true, continues immediately.
+     *
+     * @param condition the condition to wait for
+     * @return this command, for chaining
+     */
+    public CoroutineCommand await(BooleanSupplier condition) {
+        return add(condition::getAsBoolean);
+    }
+
+    /**
+     * Waits for a period of time.
+     *
+     * @param millis the time to wait, in milliseconds
+     * @return this command, for chaining
+     */
+    public CoroutineCommand awaitMillis(long millis) {
+        long nanos = millis * 1_000_000L;
+        return add(new Step() {
+            private long m_start;
+
+            @Override
+            public void start() {
+                m_start = System.nanoTime();
+            }
+
+            @Override
+            public boolean resume() {
+                return System.nanoTime() - m_start >= nanos;
+            }
+        });
+    }
+
+    /**
+     * Runs an action every tick until a condition is true. The condition is checked before each
+     * run, so the action does not run at all if the condition is already true.
+     *
+     * @param action the action to run
+     * @param until  the condition that ends the step
+     * @return this command, for chaining
+     */
+    public CoroutineCommand during(Runnable action, BooleanSupplier until) {
+        return add(() -> {
+            if (until.getAsBoolean()) {
+                return true;
+            }
+            action.run();
+            return false;
+        });
+    }
+
+    /**
+     * Runs a command inline, as a {@link SequentialCommandGroup} would, and continues after it
+     * finishes. The command's requirements must be included in this command's requirements.
+     *
+     * @param command the command to run
+     * @return this command, for chaining
+     */
+    public CoroutineCommand command(Command command) {
+        CommandGroupBase.requireUngrouped(command);
+        CommandGroupBase.registerGroupedCommands(command);
+        m_requirements.addAll(command.getRequirements());
+        return add(new Step() {
+            @Override
+            public void start() {
+                command.initialize();
+            }
+
+            @Override
+            public boolean resume() {
+                command.execute();
+                if (command.isFinished()) {
+                    command.end(false);
+                    return true;
+                }
+                return false;
+            }
+
+            @Override
+            public void stop(boolean interrupted) {
+                command.end(true);
+            }
+        });
+    }
+
+    /**
+     * Runs the steps added by the body only if a condition is true when this point is reached.
+     *
+     * @param condition the condition
+     * @param body      adds the steps to run
+     * @return this command, for chaining
+     */
+    public CoroutineCommand ifThen(BooleanSupplier condition, Consumer<CoroutineCommand> body) {
+        int[] end = new int[1];
+        add(jumpUnless(condition, end));
+        body.accept(this);
+        end[0] = m_building.size();
+        return this;
+    }
+
+    /**
+     * Repeats the steps added by the body while a condition is true. Each iteration ends with a
+     * yield, so a loop runs at most one iteration per tick.
+     *
+     * @param condition the condition, checked before every iteration
+     * @param body      adds the steps to repeat
+     * @return this command, for chaining
+     */
+    public CoroutineCommand whileTrue(BooleanSupplier condition, Consumer<CoroutineCommand> body) {
+        int start = m_building.size();
+        int[] end = new int[1];
+        add(jumpUnless(condition, end));
+        body.accept(this);
+        yieldTick();
+        add(() -> {
+            m_pc = start - 1;
+            return true;
+        });
+        end[0] = m_building.size();
+        return this;
+    }
+
+    /**
+     * Adds an action that runs when the command ends, whether it finished or was interrupted.
+     *
+     * @param action receives whether the command was interrupted
+     * @return this command, for chaining
+     */
+    public CoroutineCommand finallyDo(Consumer<Boolean> action) {
+        m_finally.add(action);
+        return this;
+    }
+
+    /**
+     * Sets whether this command runs while the robot is disabled.
+     *
+     * @param runWhenDisabled whether to run when disabled
+     * @return this command, for chaining
+     */
+    public CoroutineCommand runWhenDisabled(boolean runWhenDisabled) {
+        m_runWhenDisabled = runWhenDisabled;
+        return this;
+    }
+
+    // Continues at the step after the body when the condition is false. The target is filled in
+    // once the body has been added.
+    private Step jumpUnless(BooleanSupplier condition, int[] target) {
+        return () -> {
+            if (!condition.getAsBoolean()) {
+                m_pc = target[0] - 1;
+            }
+            return true;
+        };
+    }
+
+    private CoroutineCommand add(Step step) {
+        if (m_pc != -1) {
+            throw new IllegalStateException(
+                    "Steps cannot be added to a CoroutineCommand while it is running");
+        }
+        m_building.add(step);
+        m_steps = null;
+        return this;
+    }
+
+    @Override
+    public void initialize() {
+        if (m_steps == null) {
+            m_steps = m_building.toArray(new Step[0]);
+        }
+        m_pc = 0;
+        m_started = false;
+    }
+
+    @Override
+    public void execute() {
+        Step[] steps = m_steps;
+        while (m_pc < steps.length) {
+            Step step = steps[m_pc];
+            if (!m_started) {
+                step.start();
+                m_started = true;
+            }
+            if (!step.resume()) {
+                return;
+            }
+            m_started = false;
+            m_pc++;
+        }
+    }
+
+    @Override
+    public boolean isFinished() {
+        return m_pc != -1 && m_pc >= m_steps.length;
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        if (interrupted && m_started && m_pc < m_steps.length) {
+            m_steps[m_pc].stop(true);
+        }
+        m_started = false;
+        m_pc = -1;
+        for (Consumer<Boolean> action : m_finally) {
+            action.accept(interrupted);
+        }
+    }
+
+    @Override
+    public boolean runsWhenDisabled() {
+        return m_runWhenDisabled;
+    }
+}
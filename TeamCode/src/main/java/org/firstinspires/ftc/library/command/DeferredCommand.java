@@ -18,7 +18,8 @@ import java.util.function.Supplier;
  * command, like building a new trajectory in the middle of auto. If this command is interrupted, it
  * will cancel the command.
  *
- * <p>Note that the supplier <i>must</i> create a new Command each call. For selecting one of a
+ * <p>Note that the supplier <i>must</i> create a new Command each call, or acquire one from a
+ * {@link CommandPool} to reuse instances instead of allocating them. For selecting one of a
  * preallocated set of commands, use {@link SelectCommand}.
  *
  * @author Suchir Ryali - X BOTS 19448
@@ -32,7 +33,8 @@ public class DeferredCommand extends CommandBase {
      * Creates a new DeferredCommand that directly runs the supplied command when initialized, and
      * ends when it ends. Useful for lazily creating commands when the DeferredCommand is initialized,
      * such as if the supplied command depends on runtime state. The {@link Supplier} will be called
-     * each time this command is initialized. The Supplier <i>must</i> create a new Command each call.
+     * each time this command is initialized. The Supplier <i>must</i> create a new Command each call,
+     * or acquire one from a {@link CommandPool}.
      *
      * @param supplier     The command supplier
      * @param requirements The command requirements. This is a {@link List} to prevent accidental
@@ -1,11 +1,14 @@
 package org.firstinspires.ftc.library.command;
 
 import org.firstinspires.ftc.library.kinematics.Odometry;
+import org.firstinspires.ftc.library.kinematics.PoseEstimator;
+import org.firstinspires.ftc.library.kinematics.PoseHistory;
 import org.firstinspires.ftc.library.math.geometry.Pose2d;
 
 public class OdometrySubsystem extends SubsystemBase {
 
     protected Odometry m_odometry;
+    protected PoseHistory m_poseHistory;
 
     /**
      * Make sure you are using the supplier version of the constructor
@@ -20,11 +23,29 @@ public class OdometrySubsystem extends SubsystemBase {
         return m_odometry.getPose();
     }
 
+    /**
+     * Records the pose after every update, timestamped with {@link PoseEstimator#now()}, so
+     * vision and shooter calculations can look up where the robot was.
+     *
+     * @param poseHistory the history, or null to stop recording
+     */
+    public void setPoseHistory(PoseHistory poseHistory) {
+        m_poseHistory = poseHistory;
+    }
+
+    /**
+     * @return the pose history, or null if none is set
+     */
+    public PoseHistory getPoseHistory() {
+        return m_poseHistory;
+    }
+
     /**
      * Call this at the end of every loop
      */
     public void update() {
         m_odometry.updatePose();
+        record();
     }
 
     /**
@@ -33,6 +54,14 @@ public class OdometrySubsystem extends SubsystemBase {
     @Override
     public void periodic() {
         m_odometry.updatePose();
+        record();
+    }
+
+    private void record() {
+        if (m_poseHistory != null) {
+            m_poseHistory.add(PoseEstimator.now(), m_odometry.getX(), m_odometry.getY(),
+                    m_odometry.getHeading());
+        }
     }
 
 }
@@ -7,21 +7,27 @@
 
 package org.firstinspires.ftc.library.command;
 
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * A CommandGroup that runs a set of commands in parallel, ending when the last command ends.
  *
+ * <p>Members are kept in declaration order in an array alongside their running flags, and a count
+ * of the members still running makes {@link #isFinished()} constant time.
+ *
  * <p>As a rule, CommandGroups require the union of the requirements of their component commands.
  *
  * @author Jackson
  */
 public class ParallelCommandGroup extends CommandGroupBase {
 
-    // maps commands in this group to whether they are still running
-    private final Map<Command, Boolean> m_commands = new HashMap<>();
+    private Command[] m_commands = new Command[0];
+    // whether each command in this group is still running
+    private boolean[] m_running = new boolean[0];
+    private int m_runningCount;
     private boolean m_runWhenDisabled = true;
 
     /**
@@ -39,60 +45,78 @@ public class ParallelCommandGroup extends CommandGroupBase {
     public final void addCommands(Command... commands) {
         requireUngrouped(commands);
 
-        if (m_commands.containsValue(true)) {
+        if (m_runningCount > 0) {
             throw new IllegalStateException(
                     "Commands cannot be added to a CommandGroup while the group is running");
         }
 
-        registerGroupedCommands(commands);
-
+        // Validate every command before changing the group, so a rejected call leaves it intact
+        Set<Subsystem> requirements = new HashSet<>(m_requirements);
         for (Command command : commands) {
-            if (!Collections.disjoint(command.getRequirements(), m_requirements)) {
+            if (!Collections.disjoint(command.getRequirements(), requirements)) {
                 throw new IllegalArgumentException("Multiple commands in a parallel group cannot"
                         + "require the same subsystems");
             }
-            m_commands.put(command, false);
+            requirements.addAll(command.getRequirements());
+        }
+
+        registerGroupedCommands(commands);
+
+        int count = m_commands.length;
+        m_commands = Arrays.copyOf(m_commands, count + commands.length);
+        m_running = new boolean[m_commands.length];
+
+        for (Command command : commands) {
+            m_commands[count++] = command;
             m_requirements.addAll(command.getRequirements());
             m_runWhenDisabled &= command.runsWhenDisabled();
         }
     }
 
+    // Used by CompiledCommand to flatten the group
+    Command[] getCommands() {
+        return m_commands;
+    }
+
     @Override
     public void initialize() {
-        for (Map.Entry<Command, Boolean> commandRunning : m_commands.entrySet()) {
-            commandRunning.getKey().initialize();
-            commandRunning.setValue(true);
+        for (int i = 0; i < m_commands.length; i++) {
+            m_commands[i].initialize();
+            m_running[i] = true;
         }
+        m_runningCount = m_commands.length;
     }
 
     @Override
     public void execute() {
-        for (Map.Entry<Command, Boolean> commandRunning : m_commands.entrySet()) {
-            if (!commandRunning.getValue()) {
+        for (int i = 0; i < m_commands.length; i++) {
+            if (!m_running[i]) {
                 continue;
             }
-            commandRunning.getKey().execute();
-            if (commandRunning.getKey().isFinished()) {
-                commandRunning.getKey().end(false);
-                commandRunning.setValue(false);
+            Command command = m_commands[i];
+            command.execute();
+            if (command.isFinished()) {
+                command.end(false);
+                m_running[i] = false;
+                m_runningCount--;
             }
         }
     }
 
     @Override
     public void end(boolean interrupted) {
-        if (interrupted) {
-            for (Map.Entry<Command, Boolean> commandRunning : m_commands.entrySet()) {
-                if (commandRunning.getValue()) {
-                    commandRunning.getKey().end(true);
-                }
+        for (int i = 0; i < m_commands.length; i++) {
+            if (m_running[i]) {
+                m_commands[i].end(true);
+                m_running[i] = false;
             }
         }
+        m_runningCount = 0;
     }
 
     @Override
     public boolean isFinished() {
-        return !m_commands.values().contains(true);
+        return m_runningCount == 0;
     }
 
     @Override
@@ -100,4 +124,4 @@ public class ParallelCommandGroup extends CommandGroupBase {
         return m_runWhenDisabled;
     }
 
-}
\ No newline at end of file
+}
@@ -7,22 +7,28 @@
 
 package org.firstinspires.ftc.library.command;
 
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * A CommandGroup that runs a set of commands in parallel, ending only when a specific command
  * (the "deadline") ends, interrupting all other commands that are still running at that point.
  *
+ * <p>Members are kept in declaration order in an array alongside their running flags, so
+ * execution does not allocate.
+ *
  * <p>As a rule, CommandGroups require the union of the requirements of their component commands.
  *
  * @author Jackson
  */
 public class ParallelDeadlineGroup extends CommandGroupBase {
 
-    // maps commands in this group to whether they are still running
-    private final Map<Command, Boolean> m_commands = new HashMap<>();
+    private Command[] m_commands = new Command[0];
+    // whether each command in this group is still running
+    private boolean[] m_running = new boolean[0];
+    private int m_runningCount;
     private boolean m_runWhenDisabled = true;
     private Command m_deadline;
 
@@ -38,7 +44,7 @@ public class ParallelDeadlineGroup extends CommandGroupBase {
     public ParallelDeadlineGroup(Command deadline, Command... commands) {
         m_deadline = deadline;
         addCommands(commands);
-        if (!m_commands.containsKey(deadline)) {
+        if (indexOf(deadline) < 0) {
             addCommands(deadline);
         }
     }
@@ -50,63 +56,96 @@ public class ParallelDeadlineGroup extends CommandGroupBase {
      * @param deadline the command that determines when the group ends
      */
     public void setDeadline(Command deadline) {
-        if (!m_commands.containsKey(deadline)) {
+        if (indexOf(deadline) < 0) {
             addCommands(deadline);
         }
         m_deadline = deadline;
     }
 
+    private int indexOf(Command command) {
+        for (int i = 0; i < m_commands.length; i++) {
+            if (m_commands[i] == command) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     @Override
     public void addCommands(Command... commands) {
         requireUngrouped(commands);
 
-        if (m_commands.containsValue(true)) {
+        if (m_runningCount > 0) {
             throw new IllegalStateException(
                     "Commands cannot be added to a CommandGroup while the group is running");
         }
 
-        registerGroupedCommands(commands);
-
+        // Validate every command before changing the group, so a rejected call leaves it intact
+        Set<Subsystem> requirements = new HashSet<>(m_requirements);
         for (Command command : commands) {
-            if (!Collections.disjoint(command.getRequirements(), m_requirements)) {
+            if (!Collections.disjoint(command.getRequirements(), requirements)) {
                 throw new IllegalArgumentException("Multiple commands in a parallel group cannot"
                         + "require the same subsystems");
             }
-            m_commands.put(command, false);
+            requirements.addAll(command.getRequirements());
+        }
+
+        registerGroupedCommands(commands);
+
+        int count = m_commands.length;
+        m_commands = Arrays.copyOf(m_commands, count + commands.length);
+        m_running = new boolean[m_commands.length];
+
+        for (Command command : commands) {
+            m_commands[count++] = command;
             m_requirements.addAll(command.getRequirements());
             m_runWhenDisabled &= command.runsWhenDisabled();
         }
     }
 
+    // Used by CompiledCommand to flatten the group
+    Command[] getCommands() {
+        return m_commands;
+    }
+
+    Command getDeadline() {
+        return m_deadline;
+    }
+
     @Override
     public void initialize() {
-        for (Map.Entry<Command, Boolean> commandRunning : m_commands.entrySet()) {
-            commandRunning.getKey().initialize();
-            commandRunning.setValue(true);
+        for (int i = 0; i < m_commands.length; i++) {
+            m_commands[i].initialize();
+            m_running[i] = true;
         }
+        m_runningCount = m_commands.length;
     }
 
     @Override
     public void execute() {
-        for (Map.Entry<Command, Boolean> commandRunning : m_commands.entrySet()) {
-            if (!commandRunning.getValue()) {
+        for (int i = 0; i < m_commands.length; i++) {
+            if (!m_running[i]) {
                 continue;
             }
-            commandRunning.getKey().execute();
-            if (commandRunning.getKey().isFinished()) {
-                commandRunning.getKey().end(false);
-                commandRunning.setValue(false);
+            Command command = m_commands[i];
+            command.execute();
+            if (command.isFinished()) {
+                command.end(false);
+                m_running[i] = false;
+                m_runningCount--;
             }
         }
     }
 
     @Override
     public void end(boolean interrupted) {
-        for (Map.Entry<Command, Boolean> commandRunning : m_commands.entrySet()) {
-            if (commandRunning.getValue()) {
-                commandRunning.getKey().end(true);
+        for (int i = 0; i < m_commands.length; i++) {
+            if (m_running[i]) {
+                m_commands[i].end(true);
+                m_running[i] = false;
             }
         }
+        m_runningCount = 0;
     }
 
     @Override
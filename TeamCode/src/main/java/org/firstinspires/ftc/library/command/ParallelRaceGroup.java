@@ -7,6 +7,7 @@
 
 package org.firstinspires.ftc.library.command;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
@@ -15,13 +16,18 @@ import java.util.Set;
  * A CommandGroup that runs a set of commands in parallel, ending when any one of the commands ends
  * and interrupting all the others.
  *
+ * <p>Members are kept in declaration order in an array, alongside flags recording which ones
+ * finished, so execution does not allocate.
+ *
  * <p>As a rule, CommandGroups require the union of the requirements of their component commands.
  *
  * @author Jackson
  */
 public class ParallelRaceGroup extends CommandGroupBase {
 
-    private final Set<Command> m_commands = new HashSet<>();
+    private Command[] m_commands = new Command[0];
+    // whether each command in this group has not finished yet
+    private boolean[] m_running = new boolean[0];
     private boolean m_runWhenDisabled = true;
     private boolean m_finished = true;
 
@@ -45,32 +51,50 @@ public class ParallelRaceGroup extends CommandGroupBase {
                     "Commands cannot be added to a CommandGroup while the group is running");
         }
 
-        registerGroupedCommands(commands);
-
+        // Validate every command before changing the group, so a rejected call leaves it intact
+        Set<Subsystem> requirements = new HashSet<>(m_requirements);
         for (Command command : commands) {
-            if (!Collections.disjoint(command.getRequirements(), m_requirements)) {
+            if (!Collections.disjoint(command.getRequirements(), requirements)) {
                 throw new IllegalArgumentException("Multiple commands in a parallel group cannot"
                         + " require the same subsystems");
             }
-            m_commands.add(command);
+            requirements.addAll(command.getRequirements());
+        }
+
+        registerGroupedCommands(commands);
+
+        int count = m_commands.length;
+        m_commands = Arrays.copyOf(m_commands, count + commands.length);
+        m_running = new boolean[m_commands.length];
+
+        for (Command command : commands) {
+            m_commands[count++] = command;
             m_requirements.addAll(command.getRequirements());
             m_runWhenDisabled &= command.runsWhenDisabled();
         }
     }
 
+    // Used by CompiledCommand to flatten the group
+    Command[] getCommands() {
+        return m_commands;
+    }
+
     @Override
     public void initialize() {
         m_finished = false;
-        for (Command command : m_commands) {
-            command.initialize();
+        for (int i = 0; i < m_commands.length; i++) {
+            m_commands[i].initialize();
+            m_running[i] = true;
         }
     }
 
     @Override
     public void execute() {
-        for (Command command : m_commands) {
+        for (int i = 0; i < m_commands.length; i++) {
+            Command command = m_commands[i];
             command.execute();
             if (command.isFinished()) {
+                m_running[i] = false;
                 m_finished = true;
             }
         }
@@ -78,11 +102,13 @@ public class ParallelRaceGroup extends CommandGroupBase {
 
     @Override
     public void end(boolean interrupted) {
-        for (Command command : m_commands) {
-            if (!command.isFinished()) {
-                command.end(true);
+        for (int i = 0; i < m_commands.length; i++) {
+            if (m_running[i]) {
+                m_commands[i].end(true);
+                m_running[i] = false;
             }
         }
+        m_finished = true;
     }
 
     @Override
@@ -0,0 +1,182 @@
+package org.firstinspires.ftc.library.command;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the periodic methods of the registered subsystems as a dependency graph, for
+ * {@link CommandScheduler#setPeriodicPool(ForkJoinPool)}.
+ *
+ * <p>There is an edge from each subsystem to every later-registered subsystem it conflicts with.
+ * {@link ConcurrentSubsystem}s conflict when one writes an object the other reads or writes; any
+ * other subsystem conflicts with everything and runs on the calling thread. A tick releases the
+ * subsystems without predecessors, and each completed subsystem releases the successors it was
+ * the last predecessor of, until all have run. The tasks and queues are built once per set of
+ * subsystems and reused every tick.
+ */
+final class PeriodicGraph {
+    private static final int DONE = -1;
+
+    private final Subsystem[] m_subsystems;
+    private final boolean[] m_onMainThread;
+    private final int[] m_predecessorCount;
+    private final int[][] m_successors;
+    private final RecursiveAction[] m_tasks;
+    private final boolean[] m_forked;
+
+    private final ForkJoinPool m_pool;
+    private final AtomicIntegerArray m_remaining;
+    private final AtomicInteger m_completed = new AtomicInteger();
+    private final BlockingQueue<Integer> m_mainReady;
+    private final AtomicReference<Throwable> m_error = new AtomicReference<>();
+
+    PeriodicGraph(Collection<Subsystem> subsystems, ForkJoinPool pool) {
+        int n = subsystems.size();
+        m_subsystems = subsystems.toArray(new Subsystem[0]);
+        m_onMainThread = new boolean[n];
+        m_predecessorCount = new int[n];
+        m_successors = new int[n][];
+        m_tasks = new RecursiveAction[n];
+        m_forked = new boolean[n];
+        m_pool = pool;
+        m_remaining = new AtomicIntegerArray(n);
+        // Every subsystem is queued at most once per tick, plus the end marker
+        m_mainReady = new ArrayBlockingQueue<>(n + 1);
+
+        for (int i = 0; i < n; i++) {
+            m_onMainThread[i] = !(m_subsystems[i] instanceof ConcurrentSubsystem);
+        }
+
+        List<List<Integer>> successors = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            successors.add(new ArrayList<>());
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                if (conflicts(m_subsystems[i], m_subsystems[j])) {
+                    successors.get(i).add(j);
+                    m_predecessorCount[j]++;
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            List<Integer> list = successors.get(i);
+            m_successors[i] = new int[list.size()];
+            for (int k = 0; k < list.size(); k++) {
+                m_successors[i][k] = list.get(k);
+            }
+
+            int index = i;
+            m_tasks[i] = new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    runNode(index);
+                }
+            };
+        }
+    }
+
+    private static boolean conflicts(Subsystem a, Subsystem b) {
+        if (!(a instanceof ConcurrentSubsystem) || !(b instanceof ConcurrentSubsystem)) {
+            return true;
+        }
+        ConcurrentSubsystem first = (ConcurrentSubsystem) a;
+        ConcurrentSubsystem second = (ConcurrentSubsystem) b;
+        Set<Object> firstWrites = first.getPeriodicWrites();
+        Set<Object> secondWrites = second.getPeriodicWrites();
+        return !Collections.disjoint(firstWrites, secondWrites)
+                || !Collections.disjoint(firstWrites, second.getPeriodicReads())
+                || !Collections.disjoint(secondWrites, first.getPeriodicReads());
+    }
+
+    /**
+     * Runs every periodic method once and returns when all have completed. An exception thrown by
+     * a periodic method is rethrown here, after the other periodic methods have run.
+     */
+    void run() {
+        int n = m_subsystems.length;
+        if (n == 0) {
+            return;
+        }
+        // A worker can still be returning from the last tick's task after posting its completion,
+        // or still running it if the last tick was interrupted; a task must be fully done before it
+        // is reinitialized
+        for (int i = 0; i < n; i++) {
+            if (m_forked[i]) {
+                m_tasks[i].quietlyJoin();
+                m_forked[i] = false;
+            }
+        }
+        m_mainReady.clear();
+
+        m_completed.set(0);
+        m_error.set(null);
+        for (int i = 0; i < n; i++) {
+            m_remaining.set(i, m_predecessorCount[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            if (m_predecessorCount[i] == 0) {
+                release(i);
+            }
+        }
+
+        try {
+            int next;
+            while ((next = m_mainReady.take()) != DONE) {
+                runNode(next);
+            }
+        } catch (InterruptedException e) {
+            // The OpMode is stopping; the workers finish the tick on their own
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        Throwable error = m_error.get();
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        } else if (error != null) {
+            throw new RuntimeException(error);
+        }
+    }
+
+    private void runNode(int index) {
+        try {
+            m_subsystems[index].periodic();
+        } catch (Throwable t) {
+            m_error.compareAndSet(null, t);
+        }
+
+        int[] successors = m_successors[index];
+        for (int successor : successors) {
+            if (m_remaining.decrementAndGet(successor) == 0) {
+                release(successor);
+            }
+        }
+        if (m_completed.incrementAndGet() == m_subsystems.length) {
+            m_mainReady.add(DONE);
+        }
+    }
+
+    private void release(int index) {
+        if (m_onMainThread[index]) {
+            m_mainReady.add(index);
+        } else {
+            RecursiveAction task = m_tasks[index];
+            task.reinitialize();
+            m_forked[index] = true;
+            m_pool.execute(task);
+        }
+    }
+}
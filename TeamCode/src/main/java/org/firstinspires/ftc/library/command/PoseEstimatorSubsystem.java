@@ -0,0 +1,53 @@
+package org.firstinspires.ftc.library.command;
+
+import org.firstinspires.ftc.library.kinematics.PoseEstimator;
+import org.firstinspires.ftc.library.math.geometry.Pose2d;
+
+/**
+ * An {@link OdometrySubsystem} counterpart that runs a {@link PoseEstimator}, so vision
+ * measurements can be fused with the odometry at their capture time.
+ */
+public class PoseEstimatorSubsystem extends SubsystemBase {
+
+    protected PoseEstimator m_poseEstimator;
+
+    /**
+     * @param poseEstimator the pose estimator, built on the supplier version of the odometry
+     */
+    public PoseEstimatorSubsystem(PoseEstimator poseEstimator) {
+        m_poseEstimator = poseEstimator;
+    }
+
+    public Pose2d getPose() {
+        return m_poseEstimator.getEstimatedPose();
+    }
+
+    /**
+     * Applies a vision pose measurement at the time its frame was captured.
+     *
+     * @param visionPose       the measured field pose of the robot
+     * @param captureTimestamp the capture time in seconds, see {@link PoseEstimator#now()}
+     * @param xStdDev          the standard deviation of the measured x
+     * @param yStdDev          the standard deviation of the measured y
+     * @param headingStdDev    the standard deviation of the measured heading, in radians
+     * @return false if the measurement was too old or rejected
+     */
+    public boolean addVisionMeasurement(Pose2d visionPose, double captureTimestamp,
+                                        double xStdDev, double yStdDev, double headingStdDev) {
+        return m_poseEstimator.addVisionMeasurement(visionPose, captureTimestamp,
+                xStdDev, yStdDev, headingStdDev);
+    }
+
+    public void resetPose(Pose2d pose) {
+        m_poseEstimator.resetPose(pose);
+    }
+
+    /**
+     * Updates the estimate every cycle
+     */
+    @Override
+    public void periodic() {
+        m_poseEstimator.update();
+    }
+
+}
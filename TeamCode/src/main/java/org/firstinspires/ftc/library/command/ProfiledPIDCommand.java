@@ -11,6 +11,7 @@ import static org.firstinspires.ftc.library.controller.TrapezoidProfile.State;
 
 import androidx.annotation.NonNull;
 
+import org.firstinspires.ftc.library.controller.SCurveProfile;
 import org.firstinspires.ftc.library.controller.wpilibcontroller.ProfiledPIDController;
 
 import java.util.Arrays;
@@ -23,6 +24,10 @@ import java.util.function.Supplier;
  * default - to add
  * exit conditions and/or other behavior, subclass this class.  The controller calculation and
  * output are performed synchronously in the command's execute() method.
+ *
+ * <p>If the controller was given {@link SCurveProfile.Constraints}, the setpoint handed to the
+ * output consumer is an {@link SCurveProfile.State}, so the profiled acceleration can be used
+ * for feedforward.
  */
 public class ProfiledPIDCommand extends CommandBase {
 
@@ -30,6 +30,9 @@ public class SelectCommand extends CommandBase {
     private final Supplier<Object> m_selector;
     private final Supplier<Command> m_toRun;
     private Command m_selectedCommand;
+    // answers runsWhenDisabled() for a supplier while no command is selected
+    private boolean m_runWhenDisabled;
+    private Command m_selectorFailure;
 
     /**
      * Creates a new selectcommand.
@@ -66,9 +69,12 @@ public class SelectCommand extends CommandBase {
     public void initialize() {
         if (m_selector != null) {
             if (!m_commands.keySet().contains(m_selector.get())) {
-                m_selectedCommand = new LogCatCommand(
-                        "SelectCommand failure",
-                        "SelectCommand selector value does not correspond to" + " any command!");
+                if (m_selectorFailure == null) {
+                    m_selectorFailure = new LogCatCommand(
+                            "SelectCommand failure",
+                            "SelectCommand selector value does not correspond to" + " any command!");
+                }
+                m_selectedCommand = m_selectorFailure;
                 return;
             }
             m_selectedCommand = m_commands.get(m_selector.get());
@@ -86,6 +92,7 @@ public class SelectCommand extends CommandBase {
     @Override
     public void end(boolean interrupted) {
         m_selectedCommand.end(interrupted);
+        m_selectedCommand = null;
     }
 
     @Override
@@ -101,8 +108,24 @@ public class SelectCommand extends CommandBase {
                 runsWhenDisabled &= command.runsWhenDisabled();
             }
             return runsWhenDisabled;
+        } else if (m_selectedCommand != null) {
+            return m_selectedCommand.runsWhenDisabled();
         } else {
-            return m_toRun.get().runsWhenDisabled();
+            return m_runWhenDisabled;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Sets whether a command from the supplier may be scheduled while the robot is disabled. The
+     * supplier is only called when this command is initialized, so the command it will return is
+     * not known before then; once it is running, the supplied command's own setting applies.
+     * Has no effect when selecting from a map of commands.
+     *
+     * @param runWhenDisabled whether to run when disabled
+     * @return this command, for chaining
+     */
+    public SelectCommand setRunWhenDisabled(boolean runWhenDisabled) {
+        m_runWhenDisabled = runWhenDisabled;
+        return this;
+    }
+}
@@ -52,6 +52,11 @@ public class SequentialCommandGroup extends CommandGroupBase {
         }
     }
 
+    // Used by CompiledCommand to flatten the group
+    Command[] getCommands() {
+        return m_commands.toArray(new Command[0]);
+    }
+
     @Override
     public void initialize() {
         m_currentCommandIndex = 0;
@@ -0,0 +1,444 @@
+package org.firstinspires.ftc.library.command;
+
+import org.firstinspires.ftc.library.command.button.Trigger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A subsystem driven by a hierarchical state machine, for mechanisms such as an intake, transfer
+ * and shooter that move through a fixed set of states.
+ *
+ * <p>States are the constants of an enum. Each state has a table of guarded transitions and
+ * entry, exit and during actions, and may be nested in a parent state:
+ *
+ * <pre>
+ * enum Intake { IDLE, ACTIVE, SPINNING_UP, INTAKING, EJECTING }
+ *
+ * StateMachineSubsystem&lt;Intake&gt; intake = new StateMachineSubsystem&lt;&gt;(Intake.class, Intake.IDLE);
+ * intake.state(Intake.IDLE)
+ *         .transition(Intake.ACTIVE, gamepad::isIntakePressed);
+ * intake.state(Intake.ACTIVE)
+ *         .initial(Intake.SPINNING_UP)
+ *         .transition(Intake.IDLE, () -&gt; !gamepad.isIntakePressed());
+ * intake.state(Intake.SPINNING_UP).parent(Intake.ACTIVE)
+ *         .onEntry(roller::start)
+ *         .transitionAfter(Intake.INTAKING, 150);
+ * intake.state(Intake.INTAKING).parent(Intake.ACTIVE)
+ *         .transition(Intake.EJECTING, sensor::isWrongColor);
+ * intake.state(Intake.EJECTING).parent(Intake.ACTIVE)
+ *         .whileIn(new EjectCommand(roller));
+ * </pre>
+ *
+ * <p>The machine is always in a leaf state. Each {@link #periodic()} checks only the transitions
+ * of the active state and then of its ancestors, innermost first, so a transition on a parent
+ * applies to all of its children. The first transition whose guard is true is taken: states are
+ * exited from the active state up to the closest common ancestor of the target, the transition's
+ * action runs, and states are entered down to the target, following initial children to a leaf.
+ * At most one transition is taken per tick. Then the during actions of the active state and its
+ * ancestors run, outermost first.
+ *
+ * <p>The tables are compiled into arrays indexed by ordinal on the first tick; states cannot be
+ * configured after that.
+ *
+ * @param <S> the enum of states
+ */
+public class StateMachineSubsystem<S extends Enum<S>> extends SubsystemBase {
+
+    private static final Runnable[] NO_ACTIONS = new Runnable[0];
+    private static final Command[] NO_COMMANDS = new Command[0];
+
+    private static final class Transition {
+        final int m_target;
+        final BooleanSupplier m_guard;
+        final Runnable m_action;
+
+        Transition(int target, BooleanSupplier guard, Runnable action) {
+            m_target = target;
+            m_guard = guard;
+            m_action = action;
+        }
+    }
+
+    /**
+     * The configuration of one state. All methods return the configuration, for chaining.
+     */
+    public final class StateConfig {
+        private final int m_state;
+        private int m_parent = -1;
+        private int m_initial = -1;
+        private final List<Transition> m_transitions = new ArrayList<>();
+        private final List<Runnable> m_entry = new ArrayList<>();
+        private final List<Runnable> m_exit = new ArrayList<>();
+        private final List<Runnable> m_during = new ArrayList<>();
+        private final List<Command> m_commands = new ArrayList<>();
+
+        private StateConfig(int state) {
+            m_state = state;
+        }
+
+        /**
+         * Nests this state in a parent state.
+         *
+         * @param parent the parent state
+         * @return this configuration
+         */
+        public StateConfig parent(S parent) {
+            requireConfigurable();
+            for (int s = parent.ordinal(); s != -1; s = m_configs.get(s).m_parent) {
+                if (s == m_state) {
+                    throw new IllegalArgumentException(
+                            "State " + m_values[m_state] + " cannot be nested in its own child " + parent);
+                }
+            }
+            m_parent = parent.ordinal();
+            return this;
+        }
+
+        /**
+         * Sets the child entered when a transition targets this state. Without one, a state with
+         * children is entered as a leaf. The child must be nested in this state, directly or
+         * deeper, and every state between them is entered on the way; this is checked here if the
+         * child's parent is already set, and otherwise when the state machine starts.
+         *
+         * @param child the initial child state
+         * @return this configuration
+         * @throws IllegalArgumentException if the child is not nested in this state
+         */
+        public StateConfig initial(S child) {
+            requireConfigurable();
+            int c = child.ordinal();
+            if (c == m_state || (m_configs.get(c).m_parent != -1 && !isDescendant(c, m_state))) {
+                throw new IllegalArgumentException(
+                        "Initial state " + child + " is not a child of " + m_values[m_state]);
+            }
+            m_initial = c;
+            return this;
+        }
+
+        /**
+         * Adds a transition, checked in the order added.
+         *
+         * @param target the state to go to
+         * @param guard  the condition for the transition
+         * @return this configuration
+         */
+        public StateConfig transition(S target, BooleanSupplier guard) {
+            return transition(target, guard, null);
+        }
+
+        /**
+         * Adds a transition with an action that runs between exiting and entering states.
+         *
+         * @param target the state to go to
+         * @param guard  the condition for the transition
+         * @param action the action to run when the transition is taken
+         * @return this configuration
+         */
+        public StateConfig transition(S target, BooleanSupplier guard, Runnable action) {
+            requireConfigurable();
+            m_transitions.add(new Transition(target.ordinal(), guard, action));
+            return this;
+        }
+
+        /**
+         * Adds a transition taken once this state has been active for a period of time.
+         *
+         * @param target the state to go to
+         * @param millis the time to stay in this state, in milliseconds
+         * @return this configuration
+         */
+        public StateConfig transitionAfter(S target, long millis) {
+            long nanos = millis * 1_000_000L;
+            int state = m_state;
+            return transition(target, () -> System.nanoTime() - m_enteredNanos[state] >= nanos);
+        }
+
+        /**
+         * @param action an action to run when this state is entered
+         * @return this configuration
+         */
+        public StateConfig onEntry(Runnable action) {
+            requireConfigurable();
+            m_entry.add(action);
+            return this;
+        }
+
+        /**
+         * @param action an action to run when this state is exited
+         * @return this configuration
+         */
+        public StateConfig onExit(Runnable action) {
+            requireConfigurable();
+            m_exit.add(action);
+            return this;
+        }
+
+        /**
+         * @param action an action to run every tick while this state is active
+         * @return this configuration
+         */
+        public StateConfig during(Runnable action) {
+            requireConfigurable();
+            m_during.add(action);
+            return this;
+        }
+
+        /**
+         * Schedules a command when this state is entered, and cancels it when the state is exited
+         * if it is still running.
+         *
+         * @param command the command to run
+         * @return this configuration
+         */
+        public StateConfig whileIn(Command command) {
+            requireConfigurable();
+            m_commands.add(command);
+            return this;
+        }
+    }
+
+    private final S[] m_values;
+    private final List<StateConfig> m_configs = new ArrayList<>();
+    private final int m_initialState;
+
+    // compiled tables, indexed by ordinal
+    private Transition[][] m_transitions;
+    private Runnable[][] m_entry;
+    private Runnable[][] m_exit;
+    private Runnable[][] m_during;
+    private Command[][] m_commands;
+    private int[] m_parent;
+    private int[] m_initial;
+    private int[][] m_path;
+    private final long[] m_enteredNanos;
+
+    private boolean m_started;
+    private int m_active = -1;
+
+    /**
+     * Creates a state machine.
+     *
+     * @param states  the enum class of the states
+     * @param initial the state entered on the first tick
+     */
+    public StateMachineSubsystem(Class<S> states, S initial) {
+        m_values = states.getEnumConstants();
+        for (int i = 0; i < m_values.length; i++) {
+            m_configs.add(new StateConfig(i));
+        }
+        m_enteredNanos = new long[m_values.length];
+        m_initialState = initial.ordinal();
+    }
+
+    /**
+     * @param state the state to configure
+     * @return the configuration of the state
+     */
+    public StateConfig state(S state) {
+        return m_configs.get(state.ordinal());
+    }
+
+    /**
+     * @return the active leaf state, or null before the first tick
+     */
+    public S getState() {
+        return m_active == -1 ? null : m_values[m_active];
+    }
+
+    /**
+     * Whether the machine is in a state, either as the active state or as one of its ancestors.
+     *
+     * @param state the state
+     * @return whether the state is active
+     */
+    public boolean isIn(S state) {
+        int target = state.ordinal();
+        for (int s = m_active; s != -1; s = m_parent[s]) {
+            if (s == target) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param state the state
+     * @return a trigger that is active while the machine is in the state
+     */
+    public Trigger inState(S state) {
+        return new Trigger(() -> isIn(state));
+    }
+
+    /**
+     * @return the time since the active state was entered, in milliseconds
+     */
+    public long getMillisInState() {
+        return m_active == -1 ? 0 : (System.nanoTime() - m_enteredNanos[m_active]) / 1_000_000L;
+    }
+
+    /**
+     * Goes to a state immediately, running the same exit and entry actions as a transition.
+     *
+     * @param state the state to go to
+     */
+    public void transitionTo(S state) {
+        if (!m_started) {
+            start();
+        }
+        fire(state.ordinal(), null);
+    }
+
+    @Override
+    public void periodic() {
+        if (!m_started) {
+            start();
+        }
+
+        outer:
+        for (int s = m_active; s != -1; s = m_parent[s]) {
+            Transition[] transitions = m_transitions[s];
+            for (int i = 0; i < transitions.length; i++) {
+                Transition transition = transitions[i];
+                if (transition.m_guard.getAsBoolean()) {
+                    fire(transition.m_target, transition.m_action);
+                    break outer;
+                }
+            }
+        }
+
+        int[] path = m_path[m_active];
+        for (int i = 0; i < path.length; i++) {
+            Runnable[] during = m_during[path[i]];
+            for (int j = 0; j < during.length; j++) {
+                during[j].run();
+            }
+        }
+    }
+
+    private void requireConfigurable() {
+        if (m_started) {
+            throw new IllegalStateException("States cannot be configured once the state machine has started");
+        }
+    }
+
+    // Whether a state is nested in an ancestor, directly or deeper
+    private boolean isDescendant(int state, int ancestor) {
+        for (int s = m_configs.get(state).m_parent; s != -1; s = m_configs.get(s).m_parent) {
+            if (s == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void start() {
+        int n = m_values.length;
+        // An initial child may be configured before its parent is, so check them all here
+        for (int s = 0; s < n; s++) {
+            int initial = m_configs.get(s).m_initial;
+            if (initial != -1 && !isDescendant(initial, s)) {
+                throw new IllegalArgumentException(
+                        "Initial state " + m_values[initial] + " is not a child of " + m_values[s]);
+            }
+        }
+        m_transitions = new Transition[n][];
+        m_entry = new Runnable[n][];
+        m_exit = new Runnable[n][];
+        m_during = new Runnable[n][];
+        m_commands = new Command[n][];
+        m_parent = new int[n];
+        m_initial = new int[n];
+        m_path = new int[n][];
+        for (int s = 0; s < n; s++) {
+            StateConfig config = m_configs.get(s);
+            m_parent[s] = config.m_parent;
+            m_initial[s] = config.m_initial;
+            m_transitions[s] = config.m_transitions.toArray(new Transition[0]);
+            m_entry[s] = config.m_entry.isEmpty() ? NO_ACTIONS : config.m_entry.toArray(NO_ACTIONS);
+            m_exit[s] = config.m_exit.isEmpty() ? NO_ACTIONS : config.m_exit.toArray(NO_ACTIONS);
+            m_during[s] = config.m_during.isEmpty() ? NO_ACTIONS : config.m_during.toArray(NO_ACTIONS);
+            m_commands[s] = config.m_commands.isEmpty() ? NO_COMMANDS : config.m_commands.toArray(NO_COMMANDS);
+
+            int depth = 0;
+            for (int p = s; p != -1; p = m_configs.get(p).m_parent) {
+                depth++;
+            }
+            int[] path = new int[depth];
+            for (int p = s; p != -1; p = m_configs.get(p).m_parent) {
+                path[--depth] = p;
+            }
+            m_path[s] = path;
+        }
+        m_started = true;
+
+        int[] path = m_path[m_initialState];
+        for (int i = 0; i < path.length; i++) {
+            enter(path[i]);
+        }
+        m_active = enterInitialChildren(m_initialState);
+    }
+
+    private void fire(int target, Runnable action) {
+        int[] from = m_path[m_active];
+        int[] to = m_path[target];
+
+        // Length of the common prefix, excluding the target itself so that a transition to the
+        // active state or one of its ancestors exits and re-enters it
+        int common = 0;
+        while (common < from.length && common < to.length - 1 && from[common] == to[common]) {
+            common++;
+        }
+
+        for (int i = from.length - 1; i >= common; i--) {
+            exit(from[i]);
+        }
+        if (action != null) {
+            action.run();
+        }
+        for (int i = common; i < to.length; i++) {
+            enter(to[i]);
+        }
+        m_active = enterInitialChildren(target);
+    }
+
+    // Enters the initial children below a state, including the states between it and a deeper
+    // nested initial child
+    private int enterInitialChildren(int state) {
+        int s = state;
+        while (m_initial[s] != -1) {
+            int[] path = m_path[m_initial[s]];
+            for (int i = m_path[s].length; i < path.length; i++) {
+                enter(path[i]);
+            }
+            s = m_initial[s];
+        }
+        return s;
+    }
+
+    private void enter(int state) {
+        m_enteredNanos[state] = System.nanoTime();
+        Runnable[] entry = m_entry[state];
+        for (int i = 0; i < entry.length; i++) {
+            entry[i].run();
+        }
+        Command[] commands = m_commands[state];
+        for (int i = 0; i < commands.length; i++) {
+            CommandScheduler.getInstance().schedule(commands[i]);
+        }
+    }
+
+    private void exit(int state) {
+        Command[] commands = m_commands[state];
+        for (int i = 0; i < commands.length; i++) {
+            if (CommandScheduler.getInstance().isScheduled(commands[i])) {
+                CommandScheduler.getInstance().cancel(commands[i]);
+            }
+        }
+        Runnable[] exit = m_exit[state];
+        for (int i = 0; i < exit.length; i++) {
+            exit[i].run();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package org.firstinspires.ftc.library.command;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads traces written by {@link TraceRecorder} and reconstructs the scheduler's timeline.
+ *
+ * <p>Run it offline on a trace pulled from the Control Hub:
+ * <pre>
+ * java org.firstinspires.ftc.library.command.TraceDecoder trace-1700000000000.bin
+ * </pre>
+ * which prints every event with its time since the start of the trace, followed by the run
+ * spans of each command and the subsystem handoffs. {@link #replay(Listener)} feeds the events to
+ * custom analysis code in order.
+ */
+public class TraceDecoder {
+
+    /**
+     * A single decoded event.
+     */
+    public static class Event {
+        public final long timeNanos;
+        public final TraceRecorder.EventType type;
+        public final int id;
+        public final int otherId;
+
+        Event(long timeNanos, TraceRecorder.EventType type, int id, int otherId) {
+            this.timeNanos = timeNanos;
+            this.type = type;
+            this.id = id;
+            this.otherId = otherId;
+        }
+    }
+
+    /**
+     * A period during which a command was scheduled.
+     */
+    public static class Span {
+        public final int commandId;
+        public final long startNanos;
+        public long endNanos = -1;
+        public boolean interrupted;
+        public int executions;
+
+        Span(int commandId, long startNanos) {
+            this.commandId = commandId;
+            this.startNanos = startNanos;
+        }
+    }
+
+    /**
+     * Receives events in recorded order.
+     */
+    public interface Listener {
+        void onEvent(Event event, String name, String otherName);
+    }
+
+    private final Map<Integer, String> m_names = new HashMap<>();
+    private final List<Event> m_events = new ArrayList<>();
+    private long m_dropped;
+
+    /**
+     * Decodes a trace file.
+     *
+     * @param file the trace file
+     * @throws IOException if the file cannot be read or is not a trace
+     */
+    public TraceDecoder(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            read(in);
+        }
+    }
+
+    /**
+     * Decodes a trace from a stream.
+     *
+     * @param in the trace data
+     * @throws IOException if the data cannot be read or is not a trace
+     */
+    public TraceDecoder(InputStream in) throws IOException {
+        read(in);
+    }
+
+    private void read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != TraceRecorder.MAGIC) {
+            throw new IOException("Not a command trace");
+        }
+        int version = in.readInt();
+        if (version != TraceRecorder.VERSION) {
+            throw new IOException("Unsupported trace version " + version);
+        }
+
+        try {
+            while (true) {
+                byte tag = in.readByte();
+                if (tag == TraceRecorder.NAME) {
+                    m_names.put(in.readInt(), in.readUTF());
+                } else if (tag == TraceRecorder.EVENT) {
+                    long time = in.readLong();
+                    TraceRecorder.EventType type = TraceRecorder.typeOf(in.readByte());
+                    m_events.add(new Event(time, type, in.readInt(), in.readInt()));
+                } else if (tag == TraceRecorder.DROPPED) {
+                    m_dropped = in.readLong();
+                } else {
+                    throw new IOException("Corrupt trace, unknown record " + tag);
+                }
+            }
+        } catch (EOFException e) {
+            // A trace cut short by a crash still decodes up to its last complete record
+        }
+    }
+
+    public List<Event> getEvents() {
+        return m_events;
+    }
+
+    /**
+     * @param id an id from an event
+     * @return the name recorded for it
+     */
+    public String getName(int id) {
+        String name = m_names.get(id);
+        return name != null ? name : "#" + id;
+    }
+
+    /**
+     * @return the number of events the recorder dropped, or 0 if the trace was cut short
+     */
+    public long getDroppedCount() {
+        return m_dropped;
+    }
+
+    /**
+     * Feeds every event to a listener in recorded order.
+     *
+     * @param listener the listener
+     */
+    public void replay(Listener listener) {
+        for (Event event : m_events) {
+            listener.onEvent(event, getName(event.id),
+                    event.type == TraceRecorder.EventType.REQUIREMENT ? getName(event.otherId) : null);
+        }
+    }
+
+    /**
+     * Reconstructs when each command ran. Commands still running at the end of the trace have an
+     * end time of -1.
+     *
+     * @return the spans in order of their start
+     */
+    public List<Span> getSpans() {
+        List<Span> spans = new ArrayList<>();
+        Map<Integer, Span> open = new HashMap<>();
+        for (Event event : m_events) {
+            switch (event.type) {
+                case INITIALIZE: {
+                    Span span = new Span(event.id, event.timeNanos);
+                    spans.add(span);
+                    open.put(event.id, span);
+                    break;
+                }
+                case EXECUTE: {
+                    Span span = open.get(event.id);
+                    if (span != null) {
+                        span.executions++;
+                    }
+                    break;
+                }
+                case INTERRUPT:
+                case FINISH: {
+                    Span span = open.remove(event.id);
+                    if (span != null) {
+                        span.endNanos = event.timeNanos;
+                        span.interrupted = event.type == TraceRecorder.EventType.INTERRUPT;
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+        return spans;
+    }
+
+    /**
+     * Prints the timeline, the command spans and the subsystem handoffs.
+     */
+    public void print() {
+        long start = m_events.isEmpty() ? 0 : m_events.get(0).timeNanos;
+
+        replay((event, name, otherName) -> {
+            String time = String.format("%10.3f ms", (event.timeNanos - start) / 1E6);
+            if (otherName != null) {
+                System.out.println(time + "  " + event.type + "  " + name + " -> " + otherName);
+            } else {
+                System.out.println(time + "  " + event.type + "  " + name);
+            }
+        });
+
+        System.out.println();
+        System.out.println("Command spans:");
+        for (Span span : getSpans()) {
+            String end = span.endNanos < 0 ? "running"
+                    : String.format("%.3f ms%s", (span.endNanos - start) / 1E6,
+                    span.interrupted ? " (interrupted)" : "");
+            System.out.println(String.format("  %-40s %10.3f ms .. %s, %d executions",
+                    getName(span.commandId), (span.startNanos - start) / 1E6, end, span.executions));
+        }
+
+        System.out.println();
+        System.out.println("Subsystem handoffs:");
+        Map<Integer, Integer> owners = new LinkedHashMap<>();
+        for (Event event : m_events) {
+            if (event.type != TraceRecorder.EventType.REQUIREMENT) {
+                continue;
+            }
+            Integer previous = owners.put(event.otherId, event.id);
+            if (previous != null) {
+                System.out.println(String.format("  %10.3f ms  %s: %s -> %s",
+                        (event.timeNanos - start) / 1E6, getName(event.otherId),
+                        getName(previous), getName(event.id)));
+            }
+        }
+
+        if (m_dropped > 0) {
+            System.out.println();
+            System.out.println(m_dropped + " events were dropped while recording");
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: TraceDecoder <trace file>");
+            return;
+        }
+        new TraceDecoder(new File(args[0])).print();
+    }
+}
@@ -0,0 +1,337 @@
+package org.firstinspires.ftc.library.command;
+
+import org.firstinspires.ftc.library.command.button.Trigger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Records what the {@link CommandScheduler} does into a compact binary trace file, for working out
+ * after a match what happened in it.
+ *
+ * <p>The recorder attaches to the scheduler's {@code onCommandInitialize}, {@code onCommandExecute},
+ * {@code onCommandInterrupt} and {@code onCommandFinish} hooks. Every event is stamped with
+ * {@link System#nanoTime()} and written as two longs into a preallocated ring buffer, so recording
+ * costs a map lookup and a few array stores on the main loop. A background thread drains the buffer
+ * into the file. If the writer thread falls behind by a whole buffer, new events are dropped and
+ * counted rather than blocking the loop.
+ *
+ * <p>Besides command lifecycle events, the recorder logs which subsystems each command takes when
+ * it starts (so requirement handoffs can be reconstructed), rising and falling edges of traced
+ * triggers, and user marks. Read traces back with {@link TraceDecoder}.
+ */
+public class TraceRecorder {
+    public static final int MAGIC = 0x43545243; // "CTRC"
+    public static final int VERSION = 1;
+
+    /**
+     * Kinds of events in a trace.
+     */
+    public enum EventType {
+        INITIALIZE, EXECUTE, INTERRUPT, FINISH, REQUIREMENT, TRIGGER_RISING, TRIGGER_FALLING, MARK
+    }
+
+    // File record tags
+    static final byte NAME = 'N';
+    static final byte EVENT = 'E';
+    static final byte DROPPED = 'D';
+
+    private static final int ID_BITS = 28;
+    private static final long ID_MASK = (1L << ID_BITS) - 1;
+    private static final EventType[] TYPES = EventType.values();
+
+    private final long[] m_buffer;
+    private final int m_capacity;
+    private volatile long m_head;
+    private volatile long m_tail;
+    private long m_dropped;
+
+    private final Map<Object, Integer> m_ids = new IdentityHashMap<>();
+    private final Map<Integer, String> m_nameById = new HashMap<>();
+    private final Queue<Object[]> m_names = new ConcurrentLinkedQueue<>();
+    private int m_nextId;
+
+    private final File m_file;
+    private DataOutputStream m_out;
+    private Thread m_writer;
+    private volatile boolean m_recording;
+    private boolean m_recordExecute = true;
+    private CommandScheduler m_scheduler;
+
+    /**
+     * Creates a recorder with room for 16384 buffered events.
+     *
+     * @param file the file to write, e.g. under {@code /sdcard/FIRST/} on the Control Hub
+     */
+    public TraceRecorder(File file) {
+        this(file, 16384);
+    }
+
+    /**
+     * Creates a recorder.
+     *
+     * @param file     the file to write
+     * @param capacity the number of events the ring buffer holds
+     */
+    public TraceRecorder(File file, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Trace buffer capacity must be positive");
+        }
+        m_file = file;
+        m_capacity = capacity;
+        m_buffer = new long[capacity * 2];
+    }
+
+    /**
+     * @return a timestamped trace file in the FIRST folder of the Control Hub's storage
+     */
+    public static File defaultFile() {
+        return new File("/sdcard/FIRST/trace-" + System.currentTimeMillis() + ".bin");
+    }
+
+    /**
+     * Registers the recorder with the scheduler's hooks. The hooks stay registered for the life of
+     * the scheduler; they record only while the recorder is started.
+     *
+     * @param scheduler the scheduler to record
+     * @return this recorder, for chaining
+     */
+    public TraceRecorder attach(CommandScheduler scheduler) {
+        m_scheduler = scheduler;
+        scheduler.onCommandInitialize(command -> {
+            if (!m_recording) {
+                return;
+            }
+            int id = idOf(command);
+            record(EventType.INITIALIZE, id, 0);
+            for (Subsystem requirement : command.getRequirements()) {
+                record(EventType.REQUIREMENT, id, idOf(requirement));
+            }
+        });
+        scheduler.onCommandExecute(command -> {
+            if (m_recording && m_recordExecute) {
+                record(EventType.EXECUTE, idOf(command), 0);
+            }
+        });
+        scheduler.onCommandInterrupt(command -> {
+            if (m_recording) {
+                record(EventType.INTERRUPT, idOf(command), 0);
+            }
+        });
+        scheduler.onCommandFinish(command -> {
+            if (m_recording) {
+                record(EventType.FINISH, idOf(command), 0);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Records the rising and falling edges of a condition. The condition is polled with the
+     * button bindings of the scheduler the recorder is attached to, so attach it first.
+     *
+     * @param name      the name to show in the trace
+     * @param condition the condition to trace
+     * @return a trigger on the same condition, for binding commands
+     */
+    public Trigger traceTrigger(String name, BooleanSupplier condition) {
+        if (m_scheduler == null) {
+            throw new IllegalStateException("Attach the recorder to a scheduler before tracing triggers");
+        }
+        int id = idOf(condition, name);
+        m_scheduler.addButton(new Runnable() {
+            private boolean m_activeLast = condition.getAsBoolean();
+
+            @Override
+            public void run() {
+                boolean active = condition.getAsBoolean();
+                if (m_recording && active != m_activeLast) {
+                    record(active ? EventType.TRIGGER_RISING : EventType.TRIGGER_FALLING, id, 0);
+                }
+                m_activeLast = active;
+            }
+        });
+        return new Trigger(condition);
+    }
+
+    /**
+     * Records a user mark, such as the start of an autonomous phase.
+     *
+     * @param key  an object identifying the mark; the same key always gets the same id
+     * @param name the name to show in the trace
+     */
+    public void mark(Object key, String name) {
+        if (m_recording) {
+            record(EventType.MARK, idOf(key, name), 0);
+        }
+    }
+
+    /**
+     * Sets whether every execute call is recorded. Execute events are the bulk of a trace; turn
+     * them off to record only lifecycle changes.
+     *
+     * @param recordExecute whether to record execute events
+     */
+    public void setRecordExecute(boolean recordExecute) {
+        m_recordExecute = recordExecute;
+    }
+
+    /**
+     * Opens the file and starts recording.
+     *
+     * @throws IOException if the file cannot be opened
+     */
+    public synchronized void start() throws IOException {
+        if (m_recording) {
+            return;
+        }
+        File parent = m_file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create " + parent);
+        }
+        m_out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(m_file), 1 << 16));
+        m_out.writeInt(MAGIC);
+        m_out.writeInt(VERSION);
+
+        // Names assigned before this start may already have been written to an earlier file
+        m_names.clear();
+        for (Map.Entry<Integer, String> entry : m_nameById.entrySet()) {
+            m_names.add(new Object[]{entry.getKey(), entry.getValue()});
+        }
+
+        m_recording = true;
+        m_writer = new Thread(this::drainLoop, "TraceRecorder");
+        m_writer.setDaemon(true);
+        m_writer.setPriority(Thread.MIN_PRIORITY);
+        m_writer.start();
+    }
+
+    /**
+     * Stops recording, writes out everything buffered and closes the file.
+     */
+    public synchronized void stop() {
+        if (!m_recording) {
+            return;
+        }
+        m_recording = false;
+        try {
+            m_writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        m_writer = null;
+    }
+
+    public boolean isRecording() {
+        return m_recording;
+    }
+
+    /**
+     * @return the number of events dropped because the buffer was full
+     */
+    public long getDroppedCount() {
+        return m_dropped;
+    }
+
+    // Main loop side: two array stores and a volatile publish
+    private void record(EventType type, int a, int b) {
+        long head = m_head;
+        if (head - m_tail >= m_capacity) {
+            m_dropped++;
+            return;
+        }
+        int slot = (int) (head % m_capacity) * 2;
+        m_buffer[slot] = System.nanoTime();
+        m_buffer[slot + 1] = ((long) type.ordinal() << (2 * ID_BITS)) | ((a & ID_MASK) << ID_BITS) | (b & ID_MASK);
+        m_head = head + 1;
+    }
+
+    private int idOf(Object object) {
+        return idOf(object, null);
+    }
+
+    private int idOf(Object object, String name) {
+        Integer id = m_ids.get(object);
+        if (id == null) {
+            id = ++m_nextId;
+            m_ids.put(object, id);
+            if (name == null) {
+                name = nameOf(object);
+            }
+            m_nameById.put(id, name);
+            m_names.add(new Object[]{id, name});
+        }
+        return id;
+    }
+
+    private static String nameOf(Object object) {
+        if (object instanceof Command) {
+            return ((Command) object).getName();
+        }
+        if (object instanceof SubsystemBase) {
+            return ((SubsystemBase) object).getName();
+        }
+        String name = object.getClass().getSimpleName();
+        return name.isEmpty() ? object.getClass().getName() : name;
+    }
+
+    // Writer thread: drains names and events into the file until stopped
+    private void drainLoop() {
+        try {
+            while (m_recording) {
+                drain();
+                LockSupport.parkNanos(20_000_000L);
+            }
+            drain();
+            m_out.writeByte(DROPPED);
+            m_out.writeLong(m_dropped);
+        } catch (IOException e) {
+            m_recording = false;
+        } finally {
+            try {
+                m_out.close();
+            } catch (IOException ignored) {
+                // nothing left to do with a broken file
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        // Read the head first: every name an event up to it refers to is already queued
+        long tail = m_tail;
+        long head = m_head;
+
+        Object[] name;
+        while ((name = m_names.poll()) != null) {
+            m_out.writeByte(NAME);
+            m_out.writeInt((Integer) name[0]);
+            m_out.writeUTF((String) name[1]);
+        }
+
+        for (; tail < head; tail++) {
+            int slot = (int) (tail % m_capacity) * 2;
+            long packed = m_buffer[slot + 1];
+            m_out.writeByte(EVENT);
+            m_out.writeLong(m_buffer[slot]);
+            m_out.writeByte((int) (packed >>> (2 * ID_BITS)));
+            m_out.writeInt((int) ((packed >>> ID_BITS) & ID_MASK));
+            m_out.writeInt((int) (packed & ID_MASK));
+        }
+        m_tail = tail;
+        m_out.flush();
+    }
+
+    static EventType typeOf(int ordinal) {
+        return TYPES[ordinal];
+    }
+}
@@ -0,0 +1,368 @@
+package org.firstinspires.ftc.library.controller;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.dense.row.factory.LinearSolverFactory_DDRM;
+import org.ejml.interfaces.linsol.LinearSolverDense;
+
+/**
+ * A multi-state Kalman filter built on EJML. The process and measurement models supply their own
+ * Jacobians, so the same filter runs both linear models (constant Jacobians) and nonlinear ones
+ * (an extended Kalman filter).
+ *
+ * <p>All matrices used by {@link #predict} and {@link #correct} are allocated up front, and the
+ * workspace for each measurement size is allocated the first time that size is used, so the
+ * filter does not allocate in the loop. Measurements may arrive at any time and from any number
+ * of sources, each with its own covariance; call {@link #correct} whenever one is available.
+ *
+ * <p>{@link PoseKalmanFilter} and {@link MechanismKalmanFilter} are ready-made filters for a
+ * field pose and for a mechanism's position and velocity.
+ */
+public class ExtendedKalmanFilter {
+
+    /**
+     * Describes how the state evolves between measurements.
+     */
+    public interface Model {
+        /**
+         * Computes the state after a step of dt and the Jacobian of that step.
+         *
+         * @param x     the current state, which must not be modified
+         * @param u     the input, or null if the filter was predicted without one
+         * @param dt    the length of the step, in seconds
+         * @param xNext the matrix to write the next state into
+         * @param F     the matrix to write the Jacobian of the next state with respect to x into
+         */
+        void predict(DMatrixRMaj x, DMatrixRMaj u, double dt, DMatrixRMaj xNext, DMatrixRMaj F);
+
+        /**
+         * Computes the process noise covariance added over a step of dt.
+         *
+         * @param x  the state before the step
+         * @param u  the input, or null if the filter was predicted without one
+         * @param dt the length of the step, in seconds
+         * @param Q  the matrix to write the covariance into
+         */
+        void processNoise(DMatrixRMaj x, DMatrixRMaj u, double dt, DMatrixRMaj Q);
+    }
+
+    /**
+     * Describes what a sensor is expected to read for a given state.
+     */
+    public interface Measurement {
+        /**
+         * @return the number of values in the measurement
+         */
+        int size();
+
+        /**
+         * Computes the expected measurement and its Jacobian.
+         *
+         * @param x     the current state, which must not be modified
+         * @param zPred the matrix to write the expected measurement into
+         * @param H     the matrix to write the Jacobian of the measurement with respect to x into
+         */
+        void measure(DMatrixRMaj x, DMatrixRMaj zPred, DMatrixRMaj H);
+
+        /**
+         * Computes the difference between an actual and an expected measurement. Override this
+         * for measurements that need wrapping, such as angles.
+         *
+         * @param z     the actual measurement
+         * @param zPred the expected measurement
+         * @param y     the matrix to write the residual into
+         */
+        default void residual(DMatrixRMaj z, DMatrixRMaj zPred, DMatrixRMaj y) {
+            CommonOps_DDRM.subtract(z, zPred, y);
+        }
+    }
+
+    /**
+     * A linear model x' = Ax + Bu with a constant process noise rate. The process noise
+     * covariance added over a step is Q * dt.
+     */
+    public static class LinearModel implements Model {
+        private final DMatrixRMaj m_A;
+        private final DMatrixRMaj m_B;
+        private final DMatrixRMaj m_Q;
+
+        /**
+         * @param A the state transition matrix for one step
+         * @param B the input matrix, or null if the model has no inputs
+         * @param Q the process noise covariance per second
+         */
+        @SuppressWarnings("ParameterName")
+        public LinearModel(DMatrixRMaj A, DMatrixRMaj B, DMatrixRMaj Q) {
+            m_A = A;
+            m_B = B;
+            m_Q = Q;
+        }
+
+        @Override
+        public void predict(DMatrixRMaj x, DMatrixRMaj u, double dt, DMatrixRMaj xNext, DMatrixRMaj F) {
+            CommonOps_DDRM.mult(m_A, x, xNext);
+            if (m_B != null && u != null) {
+                CommonOps_DDRM.multAdd(m_B, u, xNext);
+            }
+            F.setTo(m_A);
+        }
+
+        @Override
+        public void processNoise(DMatrixRMaj x, DMatrixRMaj u, double dt, DMatrixRMaj Q) {
+            CommonOps_DDRM.scale(dt, m_Q, Q);
+        }
+    }
+
+    /**
+     * A linear measurement z = Hx.
+     */
+    public static class LinearMeasurement implements Measurement {
+        private final DMatrixRMaj m_H;
+
+        /**
+         * @param H the measurement matrix
+         */
+        @SuppressWarnings("ParameterName")
+        public LinearMeasurement(DMatrixRMaj H) {
+            m_H = H;
+        }
+
+        @Override
+        public int size() {
+            return m_H.numRows;
+        }
+
+        @Override
+        public void measure(DMatrixRMaj x, DMatrixRMaj zPred, DMatrixRMaj H) {
+            CommonOps_DDRM.mult(m_H, x, zPred);
+            H.setTo(m_H);
+        }
+    }
+
+    // Matrices that depend on the size of the measurement
+    private static final class Workspace {
+        final DMatrixRMaj zPred;
+        final DMatrixRMaj y;
+        final DMatrixRMaj H;
+        final DMatrixRMaj HP;
+        final DMatrixRMaj S;
+        final DMatrixRMaj KT;
+        final DMatrixRMaj K;
+        final DMatrixRMaj KR;
+        final DMatrixRMaj Sy;
+        final LinearSolverDense<DMatrixRMaj> solver;
+
+        Workspace(int states, int size) {
+            zPred = new DMatrixRMaj(size, 1);
+            y = new DMatrixRMaj(size, 1);
+            H = new DMatrixRMaj(size, states);
+            HP = new DMatrixRMaj(size, states);
+            S = new DMatrixRMaj(size, size);
+            KT = new DMatrixRMaj(size, states);
+            K = new DMatrixRMaj(states, size);
+            KR = new DMatrixRMaj(states, size);
+            Sy = new DMatrixRMaj(size, 1);
+            solver = LinearSolverFactory_DDRM.symmPosDef(size);
+        }
+    }
+
+    private final int m_states;
+    private final Model m_model;
+
+    private final DMatrixRMaj m_x;
+    private final DMatrixRMaj m_P;
+
+    private final DMatrixRMaj m_xNext;
+    private final DMatrixRMaj m_F;
+    private final DMatrixRMaj m_Q;
+    private final DMatrixRMaj m_temp;
+    private final DMatrixRMaj m_IKH;
+
+    private Workspace[] m_workspaces = new Workspace[4];
+
+    private double m_outlierThreshold = Double.POSITIVE_INFINITY;
+    private double m_lastDistance;
+
+    /**
+     * Creates a filter with a zero initial state and an identity initial covariance.
+     *
+     * @param states the number of states
+     * @param model  the process model
+     */
+    public ExtendedKalmanFilter(int states, Model model) {
+        if (states <= 0) {
+            throw new IllegalArgumentException("A Kalman filter needs at least one state");
+        }
+        m_states = states;
+        m_model = model;
+
+        m_x = new DMatrixRMaj(states, 1);
+        m_P = CommonOps_DDRM.identity(states);
+
+        m_xNext = new DMatrixRMaj(states, 1);
+        m_F = new DMatrixRMaj(states, states);
+        m_Q = new DMatrixRMaj(states, states);
+        m_temp = new DMatrixRMaj(states, states);
+        m_IKH = new DMatrixRMaj(states, states);
+    }
+
+    /**
+     * Resets the state and the covariance.
+     *
+     * @param x the initial state
+     * @param P the initial covariance
+     */
+    @SuppressWarnings("ParameterName")
+    public void reset(DMatrixRMaj x, DMatrixRMaj P) {
+        m_x.setTo(x);
+        m_P.setTo(P);
+    }
+
+    /**
+     * Advances the state by dt without an input.
+     *
+     * @param dt the time since the last prediction, in seconds
+     */
+    public void predict(double dt) {
+        predict(null, dt);
+    }
+
+    /**
+     * Advances the state by dt.
+     *
+     * @param u  the input applied over the step, or null
+     * @param dt the time since the last prediction, in seconds
+     */
+    public void predict(DMatrixRMaj u, double dt) {
+        m_model.processNoise(m_x, u, dt, m_Q);
+        m_model.predict(m_x, u, dt, m_xNext, m_F);
+        m_x.setTo(m_xNext);
+
+        // P = F P F^T + Q
+        CommonOps_DDRM.mult(m_F, m_P, m_temp);
+        CommonOps_DDRM.multTransB(m_temp, m_F, m_P);
+        CommonOps_DDRM.addEquals(m_P, m_Q);
+    }
+
+    /**
+     * Corrects the state with a measurement.
+     *
+     * @param measurement the measurement model
+     * @param z           the measured values
+     * @param R           the covariance of the measured values
+     * @return false if the measurement was rejected as an outlier or could not be applied
+     */
+    @SuppressWarnings("ParameterName")
+    public boolean correct(Measurement measurement, DMatrixRMaj z, DMatrixRMaj R) {
+        Workspace ws = workspace(measurement.size());
+
+        measurement.measure(m_x, ws.zPred, ws.H);
+        measurement.residual(z, ws.zPred, ws.y);
+
+        // S = H P H^T + R
+        CommonOps_DDRM.mult(ws.H, m_P, ws.HP);
+        CommonOps_DDRM.multTransB(ws.HP, ws.H, ws.S);
+        CommonOps_DDRM.addEquals(ws.S, R);
+
+        if (!ws.solver.setA(ws.S)) {
+            return false;
+        }
+
+        // Squared Mahalanobis distance of the residual, y^T S^-1 y
+        ws.solver.solve(ws.y, ws.Sy);
+        m_lastDistance = CommonOps_DDRM.dot(ws.y, ws.Sy);
+        if (m_lastDistance > m_outlierThreshold) {
+            return false;
+        }
+
+        // K = P H^T S^-1, computed as (S^-1 H P)^T since P and S are symmetric
+        ws.solver.solve(ws.HP, ws.KT);
+        CommonOps_DDRM.transpose(ws.KT, ws.K);
+
+        CommonOps_DDRM.multAdd(ws.K, ws.y, m_x);
+
+        // Joseph form, P = (I - KH) P (I - KH)^T + K R K^T, which keeps P symmetric and positive
+        CommonOps_DDRM.mult(-1, ws.K, ws.H, m_IKH);
+        for (int i = 0; i < m_states; i++) {
+            m_IKH.add(i, i, 1);
+        }
+        CommonOps_DDRM.mult(m_IKH, m_P, m_temp);
+        CommonOps_DDRM.multTransB(m_temp, m_IKH, m_P);
+        CommonOps_DDRM.mult(ws.K, R, ws.KR);
+        CommonOps_DDRM.multAddTransB(ws.KR, ws.K, m_P);
+
+        return true;
+    }
+
+    private Workspace workspace(int size) {
+        if (size >= m_workspaces.length) {
+            Workspace[] workspaces = new Workspace[size + 1];
+            System.arraycopy(m_workspaces, 0, workspaces, 0, m_workspaces.length);
+            m_workspaces = workspaces;
+        }
+        if (m_workspaces[size] == null) {
+            m_workspaces[size] = new Workspace(m_states, size);
+        }
+        return m_workspaces[size];
+    }
+
+    /**
+     * Sets the squared Mahalanobis distance above which measurements are rejected. For a
+     * measurement of k values, the chi-squared distribution with k degrees of freedom gives the
+     * threshold for a chosen confidence, e.g. 11.34 for 99% with three values.
+     *
+     * @param threshold the rejection threshold, or {@link Double#POSITIVE_INFINITY} to accept all
+     */
+    public void setOutlierThreshold(double threshold) {
+        m_outlierThreshold = threshold;
+    }
+
+    /**
+     * @return the squared Mahalanobis distance of the most recent measurement
+     */
+    public double getLastDistance() {
+        return m_lastDistance;
+    }
+
+    /**
+     * Returns the state estimate. The matrix is owned by the filter and updated in place.
+     *
+     * @return the state estimate
+     */
+    public DMatrixRMaj getState() {
+        return m_x;
+    }
+
+    /**
+     * @param index the index of the state
+     * @return the estimate of that state
+     */
+    public double getState(int index) {
+        return m_x.get(index, 0);
+    }
+
+    /**
+     * @param index the index of the state
+     * @param value the new estimate of that state
+     */
+    public void setState(int index, double value) {
+        m_x.set(index, 0, value);
+    }
+
+    /**
+     * Returns the covariance of the state estimate. The matrix is owned by the filter and
+     * updated in place.
+     *
+     * @return the covariance
+     */
+    public DMatrixRMaj getCovariance() {
+        return m_P;
+    }
+
+    /**
+     * @return the number of states
+     */
+    public int getStates() {
+        return m_states;
+    }
+}
@@ -0,0 +1,144 @@
+package org.firstinspires.ftc.library.controller;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * Estimates the position and velocity of a mechanism, such as a lift or an arm, from noisy
+ * position and velocity readings.
+ *
+ * <p>The state is [position, velocity]. Between readings, the mechanism is assumed to move at
+ * constant velocity, optionally plus a known commanded acceleration (e.g. from a profile
+ * setpoint), while disturbances act as white-noise acceleration. This gives a smoother velocity
+ * than differentiating encoder positions, without the lag of a low-pass filter.
+ */
+public class MechanismKalmanFilter {
+    private final ExtendedKalmanFilter m_filter;
+    private final ExtendedKalmanFilter.LinearMeasurement m_position;
+    private final ExtendedKalmanFilter.LinearMeasurement m_velocity;
+
+    private final DMatrixRMaj m_u = new DMatrixRMaj(1, 1);
+    private final DMatrixRMaj m_z = new DMatrixRMaj(1, 1);
+    private final DMatrixRMaj m_R = new DMatrixRMaj(1, 1);
+
+    /**
+     * Creates a mechanism filter.
+     *
+     * @param accelerationStdDev the standard deviation of unmodeled acceleration, in units per
+     *                           second squared
+     */
+    public MechanismKalmanFilter(double accelerationStdDev) {
+        m_filter = new ExtendedKalmanFilter(2, new ConstantVelocityModel(accelerationStdDev));
+        m_position = new ExtendedKalmanFilter.LinearMeasurement(
+                new DMatrixRMaj(1, 2, true, 1, 0));
+        m_velocity = new ExtendedKalmanFilter.LinearMeasurement(
+                new DMatrixRMaj(1, 2, true, 0, 1));
+    }
+
+    /**
+     * Resets the estimate to a known state with no uncertainty.
+     *
+     * @param position the position of the mechanism
+     * @param velocity the velocity of the mechanism
+     */
+    public void reset(double position, double velocity) {
+        m_filter.setState(0, position);
+        m_filter.setState(1, velocity);
+        m_filter.getCovariance().zero();
+    }
+
+    /**
+     * Advances the estimate assuming constant velocity.
+     *
+     * @param dt the time since the last prediction, in seconds
+     */
+    public void predict(double dt) {
+        predict(0, dt);
+    }
+
+    /**
+     * Advances the estimate with a known acceleration.
+     *
+     * @param acceleration the commanded acceleration, in units per second squared
+     * @param dt           the time since the last prediction, in seconds
+     */
+    public void predict(double acceleration, double dt) {
+        m_u.set(0, 0, acceleration);
+        m_filter.predict(m_u, dt);
+    }
+
+    /**
+     * Corrects the estimate with a position reading.
+     *
+     * @param position the measured position
+     * @param stdDev   the standard deviation of the reading
+     */
+    public void correctPosition(double position, double stdDev) {
+        correct(m_position, position, stdDev);
+    }
+
+    /**
+     * Corrects the estimate with a velocity reading.
+     *
+     * @param velocity the measured velocity
+     * @param stdDev   the standard deviation of the reading
+     */
+    public void correctVelocity(double velocity, double stdDev) {
+        correct(m_velocity, velocity, stdDev);
+    }
+
+    private void correct(ExtendedKalmanFilter.Measurement measurement, double value, double stdDev) {
+        m_z.set(0, 0, value);
+        m_R.set(0, 0, stdDev * stdDev);
+        m_filter.correct(measurement, m_z, m_R);
+    }
+
+    public double getPosition() {
+        return m_filter.getState(0);
+    }
+
+    public double getVelocity() {
+        return m_filter.getState(1);
+    }
+
+    /**
+     * @return the underlying filter, for access to the covariance
+     */
+    public ExtendedKalmanFilter getFilter() {
+        return m_filter;
+    }
+
+    // x' = x + v dt + a dt^2 / 2, v' = v + a dt, with white-noise acceleration
+    private static final class ConstantVelocityModel implements ExtendedKalmanFilter.Model {
+        private final double m_accelerationVariance;
+
+        ConstantVelocityModel(double accelerationStdDev) {
+            m_accelerationVariance = accelerationStdDev * accelerationStdDev;
+        }
+
+        @Override
+        @SuppressWarnings("ParameterName")
+        public void predict(DMatrixRMaj x, DMatrixRMaj u, double dt, DMatrixRMaj xNext, DMatrixRMaj F) {
+            double acceleration = u == null ? 0 : u.get(0, 0);
+            double position = x.get(0, 0);
+            double velocity = x.get(1, 0);
+
+            xNext.set(0, 0, position + velocity * dt + 0.5 * acceleration * dt * dt);
+            xNext.set(1, 0, velocity + acceleration * dt);
+
+            F.set(0, 0, 1);
+            F.set(0, 1, dt);
+            F.set(1, 0, 0);
+            F.set(1, 1, 1);
+        }
+
+        @Override
+        @SuppressWarnings("ParameterName")
+        public void processNoise(DMatrixRMaj x, DMatrixRMaj u, double dt, DMatrixRMaj Q) {
+            double dt2 = dt * dt;
+            Q.set(0, 0, m_accelerationVariance * dt2 * dt / 3);
+            Q.set(0, 1, m_accelerationVariance * dt2 / 2);
+            Q.set(1, 0, m_accelerationVariance * dt2 / 2);
+            Q.set(1, 1, m_accelerationVariance * dt);
+        }
+    }
+}
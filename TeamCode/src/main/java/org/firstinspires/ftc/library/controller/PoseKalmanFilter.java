@@ -0,0 +1,319 @@
+package org.firstinspires.ftc.library.controller;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.firstinspires.ftc.library.math.MathUtility;
+import org.firstinspires.ftc.library.math.geometry.Pose2d;
+import org.firstinspires.ftc.library.math.geometry.Rotation2d;
+import org.firstinspires.ftc.library.math.geometry.Twist2d;
+
+/**
+ * Estimates the field pose of the robot by fusing odometry with absolute pose measurements such
+ * as AprilTag detections.
+ *
+ * <p>The state is [x, y, heading]. Odometry drives the prediction as a robot-relative
+ * {@link Twist2d}, and its drift grows with the distance travelled and the angle turned. Absolute
+ * measurements correct the estimate with their own standard deviations, so a close, confident
+ * detection can be trusted more than a distant one.
+ *
+ * <p>The estimate starts with the uncertainty of the initial pose rather than none, so a wrongly
+ * seeded pose can be corrected by vision before the robot moves. The uncertainty also grows
+ * slowly with time, see {@link #setTimeDrift(double, double)}, so a robot standing still never
+ * becomes certain enough to ignore measurements.
+ */
+public class PoseKalmanFilter {
+    public static final double DEFAULT_INITIAL_TRANSLATION_STD_DEV = 0.1;
+    public static final double DEFAULT_INITIAL_HEADING_STD_DEV = 0.1;
+
+    private final ExtendedKalmanFilter m_filter;
+    private final OdometryModel m_model;
+    private final double m_initialTranslationStdDev;
+    private final double m_initialHeadingStdDev;
+    private final PoseMeasurement m_measurement = new PoseMeasurement();
+
+    private final DMatrixRMaj m_u = new DMatrixRMaj(3, 1);
+    private final DMatrixRMaj m_z = new DMatrixRMaj(3, 1);
+    private final DMatrixRMaj m_R = new DMatrixRMaj(3, 3);
+
+    /**
+     * Creates a pose filter whose initial pose has the default uncertainty,
+     * {@link #DEFAULT_INITIAL_TRANSLATION_STD_DEV} meters and
+     * {@link #DEFAULT_INITIAL_HEADING_STD_DEV} radians.
+     *
+     * @param initialPose                 the starting pose of the robot
+     * @param translationStdDevPerMeter   the odometry's translation drift, in meters per meter
+     *                                    travelled
+     * @param headingStdDevPerRadian      the odometry's heading drift, in radians per radian turned
+     */
+    public PoseKalmanFilter(Pose2d initialPose, double translationStdDevPerMeter,
+                            double headingStdDevPerRadian) {
+        this(initialPose, DEFAULT_INITIAL_TRANSLATION_STD_DEV, DEFAULT_INITIAL_HEADING_STD_DEV,
+                translationStdDevPerMeter, headingStdDevPerRadian);
+    }
+
+    /**
+     * Creates a pose filter.
+     *
+     * @param initialPose                 the starting pose of the robot
+     * @param initialTranslationStdDev    the standard deviation of the initial x and y, in meters;
+     *                                    also used by {@link #resetPose(Pose2d)}
+     * @param initialHeadingStdDev        the standard deviation of the initial heading, in radians;
+     *                                    also used by {@link #resetPose(Pose2d)}
+     * @param translationStdDevPerMeter   the odometry's translation drift, in meters per meter
+     *                                    travelled
+     * @param headingStdDevPerRadian      the odometry's heading drift, in radians per radian turned
+     */
+    public PoseKalmanFilter(Pose2d initialPose, double initialTranslationStdDev,
+                            double initialHeadingStdDev, double translationStdDevPerMeter,
+                            double headingStdDevPerRadian) {
+        m_model = new OdometryModel(translationStdDevPerMeter, headingStdDevPerRadian);
+        m_filter = new ExtendedKalmanFilter(3, m_model);
+        m_initialTranslationStdDev = initialTranslationStdDev;
+        m_initialHeadingStdDev = initialHeadingStdDev;
+        resetPose(initialPose);
+    }
+
+    /**
+     * Resets the estimate to a pose with the uncertainty given at construction.
+     *
+     * @param pose the new pose
+     */
+    public void resetPose(Pose2d pose) {
+        resetPose(pose, m_initialTranslationStdDev, m_initialHeadingStdDev);
+    }
+
+    /**
+     * Resets the estimate to a pose.
+     *
+     * @param pose              the new pose
+     * @param translationStdDev the standard deviation of its x and y, in meters
+     * @param headingStdDev     the standard deviation of its heading, in radians
+     */
+    public void resetPose(Pose2d pose, double translationStdDev, double headingStdDev) {
+        if (translationStdDev < 0 || headingStdDev < 0) {
+            throw new IllegalArgumentException("Standard deviations can't be negative");
+        }
+        m_filter.setState(0, pose.getX());
+        m_filter.setState(1, pose.getY());
+        m_filter.setState(2, pose.getHeading());
+        DMatrixRMaj covariance = m_filter.getCovariance();
+        covariance.zero();
+        covariance.set(0, 0, translationStdDev * translationStdDev);
+        covariance.set(1, 1, translationStdDev * translationStdDev);
+        covariance.set(2, 2, headingStdDev * headingStdDev);
+    }
+
+    /**
+     * Sets how fast the uncertainty grows with time, on top of the growth with distance and turn,
+     * for drift that odometry doesn't see such as wheel slip and the robot being bumped. The
+     * defaults are 0.01 meters and 0.005 radians per square root second.
+     *
+     * @param translationStdDevPerSqrtSecond the growth of the standard deviation of x and y
+     * @param headingStdDevPerSqrtSecond     the growth of the standard deviation of the heading
+     */
+    public void setTimeDrift(double translationStdDevPerSqrtSecond, double headingStdDevPerSqrtSecond) {
+        if (translationStdDevPerSqrtSecond < 0 || headingStdDevPerSqrtSecond < 0) {
+            throw new IllegalArgumentException("Standard deviations can't be negative");
+        }
+        m_model.m_translationTimeVariance = translationStdDevPerSqrtSecond * translationStdDevPerSqrtSecond;
+        m_model.m_headingTimeVariance = headingStdDevPerSqrtSecond * headingStdDevPerSqrtSecond;
+    }
+
+    /**
+     * Advances the estimate by an odometry update.
+     *
+     * @param twist the change in pose in the robot's frame since the previous update
+     */
+    public void predict(Twist2d twist) {
+        predict(twist.dx, twist.dy, twist.dtheta, 0);
+    }
+
+    /**
+     * Advances the estimate by an odometry update.
+     *
+     * @param twist the change in pose in the robot's frame since the previous update
+     * @param dt    the time since the previous update, in seconds
+     */
+    public void predict(Twist2d twist, double dt) {
+        predict(twist.dx, twist.dy, twist.dtheta, dt);
+    }
+
+    /**
+     * Advances the estimate by an odometry update.
+     *
+     * @param dx     the forward motion in the robot's frame
+     * @param dy     the sideways motion in the robot's frame
+     * @param dtheta the change in heading, in radians
+     */
+    public void predict(double dx, double dy, double dtheta) {
+        predict(dx, dy, dtheta, 0);
+    }
+
+    /**
+     * Advances the estimate by an odometry update.
+     *
+     * @param dx     the forward motion in the robot's frame
+     * @param dy     the sideways motion in the robot's frame
+     * @param dtheta the change in heading, in radians
+     * @param dt     the time since the previous update, in seconds
+     */
+    public void predict(double dx, double dy, double dtheta, double dt) {
+        m_u.set(0, 0, dx);
+        m_u.set(1, 0, dy);
+        m_u.set(2, 0, dtheta);
+        m_filter.predict(m_u, Math.max(dt, 0));
+    }
+
+    /**
+     * Corrects the estimate with an absolute pose measurement.
+     *
+     * @param pose          the measured pose
+     * @param xStdDev       the standard deviation of the measured x, in meters
+     * @param yStdDev       the standard deviation of the measured y, in meters
+     * @param headingStdDev the standard deviation of the measured heading, in radians
+     * @return false if the measurement was rejected
+     */
+    public boolean correct(Pose2d pose, double xStdDev, double yStdDev, double headingStdDev) {
+        return correct(pose.getX(), pose.getY(), pose.getHeading(), xStdDev, yStdDev, headingStdDev);
+    }
+
+    /**
+     * Corrects the estimate with an absolute pose measurement.
+     *
+     * @param x             the measured x, in meters
+     * @param y             the measured y, in meters
+     * @param heading       the measured heading, in radians
+     * @param xStdDev       the standard deviation of the measured x, in meters
+     * @param yStdDev       the standard deviation of the measured y, in meters
+     * @param headingStdDev the standard deviation of the measured heading, in radians
+     * @return false if the measurement was rejected
+     */
+    public boolean correct(double x, double y, double heading,
+                           double xStdDev, double yStdDev, double headingStdDev) {
+        m_z.set(0, 0, x);
+        m_z.set(1, 0, y);
+        m_z.set(2, 0, heading);
+        m_R.zero();
+        m_R.set(0, 0, xStdDev * xStdDev);
+        m_R.set(1, 1, yStdDev * yStdDev);
+        m_R.set(2, 2, headingStdDev * headingStdDev);
+
+        boolean accepted = m_filter.correct(m_measurement, m_z, m_R);
+        m_filter.setState(2, MathUtility.normalizeRadians(m_filter.getState(2), false));
+        return accepted;
+    }
+
+    /**
+     * Sets the squared Mahalanobis distance above which pose measurements are rejected.
+     *
+     * @param threshold the rejection threshold, e.g. 11.34 for 99% confidence
+     */
+    public void setOutlierThreshold(double threshold) {
+        m_filter.setOutlierThreshold(threshold);
+    }
+
+    /**
+     * @return the estimated pose
+     */
+    public Pose2d getPose() {
+        return new Pose2d(getX(), getY(), new Rotation2d(getHeading()));
+    }
+
+    public double getX() {
+        return m_filter.getState(0);
+    }
+
+    public double getY() {
+        return m_filter.getState(1);
+    }
+
+    public double getHeading() {
+        return m_filter.getState(2);
+    }
+
+    /**
+     * @return the underlying filter, for access to the covariance
+     */
+    public ExtendedKalmanFilter getFilter() {
+        return m_filter;
+    }
+
+    // Integrates the robot-relative twist along a constant-curvature arc, like Pose2d.exp
+    private static final class OdometryModel implements ExtendedKalmanFilter.Model {
+        private final double m_translationVariance;
+        private final double m_headingVariance;
+        double m_translationTimeVariance = 0.01 * 0.01;
+        double m_headingTimeVariance = 0.005 * 0.005;
+
+        OdometryModel(double translationStdDevPerMeter, double headingStdDevPerRadian) {
+            m_translationVariance = translationStdDevPerMeter * translationStdDevPerMeter;
+            m_headingVariance = headingStdDevPerRadian * headingStdDevPerRadian;
+        }
+
+        @Override
+        @SuppressWarnings("ParameterName")
+        public void predict(DMatrixRMaj x, DMatrixRMaj u, double dt, DMatrixRMaj xNext, DMatrixRMaj F) {
+            double heading = x.get(2, 0);
+            double dx = u.get(0, 0);
+            double dy = u.get(1, 0);
+            double dtheta = u.get(2, 0);
+
+            double s;
+            double c;
+            if (Math.abs(dtheta) < 1E-9) {
+                s = 1.0 - 1.0 / 6.0 * dtheta * dtheta;
+                c = 0.5 * dtheta;
+            } else {
+                s = Math.sin(dtheta) / dtheta;
+                c = (1 - Math.cos(dtheta)) / dtheta;
+            }
+            double localX = dx * s - dy * c;
+            double localY = dx * c + dy * s;
+
+            double cos = Math.cos(heading);
+            double sin = Math.sin(heading);
+
+            xNext.set(0, 0, x.get(0, 0) + localX * cos - localY * sin);
+            xNext.set(1, 0, x.get(1, 0) + localX * sin + localY * cos);
+            xNext.set(2, 0, MathUtility.normalizeRadians(heading + dtheta, false));
+
+            CommonOps_DDRM.setIdentity(F);
+            F.set(0, 2, -localX * sin - localY * cos);
+            F.set(1, 2, localX * cos - localY * sin);
+        }
+
+        @Override
+        @SuppressWarnings("ParameterName")
+        public void processNoise(DMatrixRMaj x, DMatrixRMaj u, double dt, DMatrixRMaj Q) {
+            double distance = Math.hypot(u.get(0, 0), u.get(1, 0));
+            double turn = Math.abs(u.get(2, 0));
+
+            Q.zero();
+            Q.set(0, 0, m_translationVariance * distance + m_translationTimeVariance * dt);
+            Q.set(1, 1, m_translationVariance * distance + m_translationTimeVariance * dt);
+            Q.set(2, 2, m_headingVariance * turn + m_headingTimeVariance * dt);
+        }
+    }
+
+    // An absolute measurement of the whole state, with the heading residual wrapped to +-pi
+    private static final class PoseMeasurement implements ExtendedKalmanFilter.Measurement {
+        @Override
+        public int size() {
+            return 3;
+        }
+
+        @Override
+        @SuppressWarnings("ParameterName")
+        public void measure(DMatrixRMaj x, DMatrixRMaj zPred, DMatrixRMaj H) {
+            zPred.setTo(x);
+            CommonOps_DDRM.setIdentity(H);
+        }
+
+        @Override
+        public void residual(DMatrixRMaj z, DMatrixRMaj zPred, DMatrixRMaj y) {
+            y.set(0, 0, z.get(0, 0) - zPred.get(0, 0));
+            y.set(1, 0, z.get(1, 0) - zPred.get(1, 0));
+            y.set(2, 0, MathUtility.normalizeRadians(z.get(2, 0) - zPred.get(2, 0), false));
+        }
+    }
+}
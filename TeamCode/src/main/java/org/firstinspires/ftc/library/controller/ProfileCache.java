@@ -0,0 +1,375 @@
+package org.firstinspires.ftc.library.controller;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least-recently-used cache of sampled motion profiles.
+ *
+ * <p>Mechanisms such as arms and lifts tend to move between the same handful of presets over and
+ * over. Rather than re-planning a {@link TrapezoidProfile} or {@link SCurveProfile} for every
+ * move, this cache stores each profile once as arrays of position, velocity and acceleration
+ * samples and serves later moves from those arrays.
+ *
+ * <p>Profiles are keyed by their start state, goal state and constraints. Start and goal are
+ * quantized to the configured resolutions, so moves that start or end within a resolution step of
+ * each other share an entry. The stored profile is planned between the quantized states; when it
+ * is sampled, the difference to the actual start and goal is blended in linearly over the
+ * profile, so the setpoint still begins at the actual start and ends exactly on the actual goal.
+ * Keep the position resolution well below the tolerance of the controller using the profile.
+ *
+ * <p>Memory is bounded by the capacity and the per-profile sample limit; profiles longer than
+ * {@code maxSamples * sampleTime} are sampled more coarsely instead of being rejected.
+ *
+ * <p>Set the cache on a
+ * {@link org.firstinspires.ftc.library.controller.wpilibcontroller.ProfiledPIDController} with
+ * {@code setProfileCache} to use it transparently. A cache may be shared between controllers that
+ * run on the same thread.
+ */
+public class ProfileCache {
+    public static final int DEFAULT_MAX_SAMPLES = 512;
+
+    private final int m_capacity;
+    private final double m_positionResolution;
+    private final double m_velocityResolution;
+    private final double m_sampleTime;
+    private final int m_maxSamples;
+
+    private final Map<Key, Profile> m_profiles;
+    private final Key m_lookupKey = new Key();
+
+    private long m_hits;
+    private long m_misses;
+
+    /**
+     * A motion profile stored as evenly spaced samples.
+     */
+    public static class Profile {
+        private final double m_initialPosition;
+        private final double m_initialVelocity;
+        private final double m_goalPosition;
+        private final double m_goalVelocity;
+        private final double m_totalTime;
+        private final double m_dt;
+        private final double[] m_position;
+        private final double[] m_velocity;
+        private final double[] m_acceleration;
+
+        Profile(double initialPosition, double initialVelocity, double goalPosition,
+                double goalVelocity, double totalTime, double dt,
+                double[] position, double[] velocity, double[] acceleration) {
+            m_initialPosition = initialPosition;
+            m_initialVelocity = initialVelocity;
+            m_goalPosition = goalPosition;
+            m_goalVelocity = goalVelocity;
+            m_totalTime = totalTime;
+            m_dt = dt;
+            m_position = position;
+            m_velocity = velocity;
+            m_acceleration = acceleration;
+        }
+
+        /**
+         * Samples the profile at a time t, shifted onto the actual start and goal of the move.
+         *
+         * @param t       The time since the beginning of the profile.
+         * @param initial The actual initial state of the move.
+         * @param goal    The actual goal state of the move.
+         * @return the profiled state
+         */
+        @SuppressWarnings("ParameterName")
+        public SCurveProfile.State calculate(double t, TrapezoidProfile.State initial,
+                                             TrapezoidProfile.State goal) {
+            return calculate(t, initial, goal, new SCurveProfile.State());
+        }
+
+        /**
+         * Samples the profile at a time t into a reused state, shifted onto the actual start and
+         * goal of the move. Does not allocate.
+         *
+         * @param t       The time since the beginning of the profile.
+         * @param initial The actual initial state of the move.
+         * @param goal    The actual goal state of the move.
+         * @param out     Receives the profiled state.
+         * @return out
+         */
+        @SuppressWarnings("ParameterName")
+        public SCurveProfile.State calculate(double t, TrapezoidProfile.State initial,
+                                             TrapezoidProfile.State goal, SCurveProfile.State out) {
+            if (t >= m_totalTime) {
+                return set(out, goal.position, goal.velocity, 0);
+            }
+            if (t <= 0) {
+                return set(out, initial.position, initial.velocity, 0);
+            }
+
+            int index = Math.min((int) (t / m_dt), m_position.length - 2);
+            double s = t / m_dt - index;
+            double s2 = s * s;
+            double s3 = s2 * s;
+
+            // Cubic Hermite interpolation of position using the sampled velocities as tangents
+            double position = (2 * s3 - 3 * s2 + 1) * m_position[index]
+                    + (s3 - 2 * s2 + s) * m_dt * m_velocity[index]
+                    + (-2 * s3 + 3 * s2) * m_position[index + 1]
+                    + (s3 - s2) * m_dt * m_velocity[index + 1];
+            double velocity = m_velocity[index] + s * (m_velocity[index + 1] - m_velocity[index]);
+            double acceleration = m_acceleration[index]
+                    + s * (m_acceleration[index + 1] - m_acceleration[index]);
+
+            double blend = t / m_totalTime;
+            position += (1 - blend) * (initial.position - m_initialPosition)
+                    + blend * (goal.position - m_goalPosition);
+            velocity += (1 - blend) * (initial.velocity - m_initialVelocity)
+                    + blend * (goal.velocity - m_goalVelocity);
+
+            return set(out, position, velocity, acceleration);
+        }
+
+        private static SCurveProfile.State set(SCurveProfile.State out, double position,
+                                               double velocity, double acceleration) {
+            out.position = position;
+            out.velocity = velocity;
+            out.acceleration = acceleration;
+            return out;
+        }
+
+        /**
+         * Returns the total time the profile takes to reach the goal.
+         */
+        public double totalTime() {
+            return m_totalTime;
+        }
+
+        /**
+         * Returns the number of samples stored for this profile.
+         */
+        public int size() {
+            return m_position.length;
+        }
+    }
+
+    /**
+     * Constructs a profile cache that samples at 5 milliseconds with up to
+     * {@link #DEFAULT_MAX_SAMPLES} samples per profile.
+     *
+     * @param capacity           the maximum number of profiles kept
+     * @param positionResolution the quantization step for start and goal positions
+     * @param velocityResolution the quantization step for start and goal velocities
+     */
+    public ProfileCache(int capacity, double positionResolution, double velocityResolution) {
+        this(capacity, positionResolution, velocityResolution, 0.005, DEFAULT_MAX_SAMPLES);
+    }
+
+    /**
+     * Constructs a profile cache.
+     *
+     * @param capacity           the maximum number of profiles kept
+     * @param positionResolution the quantization step for start and goal positions
+     * @param velocityResolution the quantization step for start and goal velocities
+     * @param sampleTime         the time between stored samples, in seconds
+     * @param maxSamples         the maximum number of samples stored for a single profile
+     */
+    public ProfileCache(int capacity, double positionResolution, double velocityResolution,
+                        double sampleTime, int maxSamples) {
+        if (capacity <= 0 || maxSamples < 2) {
+            throw new IllegalArgumentException(
+                    "ProfileCache needs a positive capacity and at least two samples per profile");
+        }
+        if (positionResolution <= 0 || velocityResolution <= 0 || sampleTime <= 0) {
+            throw new IllegalArgumentException("ProfileCache resolutions must be positive");
+        }
+
+        m_capacity = capacity;
+        m_positionResolution = positionResolution;
+        m_velocityResolution = velocityResolution;
+        m_sampleTime = sampleTime;
+        m_maxSamples = maxSamples;
+
+        m_profiles = new LinkedHashMap<Key, Profile>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Profile> eldest) {
+                return size() > m_capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the profile from the initial state to the goal under the given constraints,
+     * planning and storing it if it is not already cached. {@link SCurveProfile.Constraints}
+     * produce S-curve profiles, any other constraints produce trapezoid profiles.
+     *
+     * @param constraints The constraints on the profile, like maximum velocity.
+     * @param goal        The desired state when the profile is complete.
+     * @param initial     The initial state (usually the current state).
+     * @return the cached profile
+     */
+    public Profile get(TrapezoidProfile.Constraints constraints, TrapezoidProfile.State goal,
+                       TrapezoidProfile.State initial) {
+        double maxJerk = constraints instanceof SCurveProfile.Constraints
+                ? ((SCurveProfile.Constraints) constraints).maxJerk : 0;
+
+        m_lookupKey.set(
+                Math.round(initial.position / m_positionResolution),
+                Math.round(initial.velocity / m_velocityResolution),
+                Math.round(goal.position / m_positionResolution),
+                Math.round(goal.velocity / m_velocityResolution),
+                constraints.maxVelocity, constraints.maxAcceleration, maxJerk);
+
+        Profile profile = m_profiles.get(m_lookupKey);
+        if (profile != null) {
+            m_hits++;
+            return profile;
+        }
+
+        m_misses++;
+        profile = sample(constraints, maxJerk,
+                m_lookupKey.m_initialPosition * m_positionResolution,
+                m_lookupKey.m_initialVelocity * m_velocityResolution,
+                m_lookupKey.m_goalPosition * m_positionResolution,
+                m_lookupKey.m_goalVelocity * m_velocityResolution);
+        m_profiles.put(m_lookupKey.copy(), profile);
+        return profile;
+    }
+
+    // Plans the profile analytically and stores it as samples
+    private Profile sample(TrapezoidProfile.Constraints constraints, double maxJerk,
+                           double initialPosition, double initialVelocity,
+                           double goalPosition, double goalVelocity) {
+        TrapezoidProfile.State initial = new TrapezoidProfile.State(initialPosition, initialVelocity);
+        TrapezoidProfile.State goal = new TrapezoidProfile.State(goalPosition, goalVelocity);
+
+        SCurveProfile sCurve = null;
+        TrapezoidProfile trapezoid = null;
+        double totalTime;
+        if (maxJerk > 0) {
+            sCurve = new SCurveProfile(
+                    new SCurveProfile.Constraints(constraints.maxVelocity,
+                            constraints.maxAcceleration, maxJerk),
+                    goal, initial);
+            totalTime = sCurve.totalTime();
+        } else {
+            trapezoid = new TrapezoidProfile(constraints, goal, initial);
+            totalTime = trapezoid.totalTime();
+        }
+
+        int count = Math.max(2, Math.min(m_maxSamples, (int) Math.ceil(totalTime / m_sampleTime) + 1));
+        double dt = totalTime > 0 ? totalTime / (count - 1) : m_sampleTime;
+
+        double[] position = new double[count];
+        double[] velocity = new double[count];
+        double[] acceleration = new double[count];
+
+        for (int i = 0; i < count; i++) {
+            double t = i * dt;
+            if (sCurve != null) {
+                SCurveProfile.State state = sCurve.calculate(t);
+                position[i] = state.position;
+                velocity[i] = state.velocity;
+                acceleration[i] = state.acceleration;
+            } else {
+                TrapezoidProfile.State state = trapezoid.calculate(t);
+                position[i] = state.position;
+                velocity[i] = state.velocity;
+            }
+        }
+
+        // A trapezoid does not report acceleration, so recover it from the velocity samples
+        if (sCurve == null && count > 1) {
+            for (int i = 0; i < count - 1; i++) {
+                acceleration[i] = (velocity[i + 1] - velocity[i]) / dt;
+            }
+            acceleration[count - 1] = 0;
+        }
+
+        return new Profile(initialPosition, initialVelocity, position[count - 1],
+                velocity[count - 1], totalTime, dt, position, velocity, acceleration);
+    }
+
+    /**
+     * Removes all cached profiles and resets the hit and miss counters.
+     */
+    public void clear() {
+        m_profiles.clear();
+        m_hits = 0;
+        m_misses = 0;
+    }
+
+    /**
+     * @return the number of profiles currently cached
+     */
+    public int size() {
+        return m_profiles.size();
+    }
+
+    /**
+     * @return the number of lookups served from the cache
+     */
+    public long getHits() {
+        return m_hits;
+    }
+
+    /**
+     * @return the number of lookups that had to plan a new profile
+     */
+    public long getMisses() {
+        return m_misses;
+    }
+
+    // Quantized start and goal plus the exact constraints. A single mutable instance is reused for
+    // lookups so that cache hits do not allocate; stored keys are copies.
+    private static final class Key {
+        private long m_initialPosition;
+        private long m_initialVelocity;
+        private long m_goalPosition;
+        private long m_goalVelocity;
+        private double m_maxVelocity;
+        private double m_maxAcceleration;
+        private double m_maxJerk;
+
+        void set(long initialPosition, long initialVelocity, long goalPosition, long goalVelocity,
+                 double maxVelocity, double maxAcceleration, double maxJerk) {
+            m_initialPosition = initialPosition;
+            m_initialVelocity = initialVelocity;
+            m_goalPosition = goalPosition;
+            m_goalVelocity = goalVelocity;
+            m_maxVelocity = maxVelocity;
+            m_maxAcceleration = maxAcceleration;
+            m_maxJerk = maxJerk;
+        }
+
+        Key copy() {
+            Key key = new Key();
+            key.set(m_initialPosition, m_initialVelocity, m_goalPosition, m_goalVelocity,
+                    m_maxVelocity, m_maxAcceleration, m_maxJerk);
+            return key;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key rhs = (Key) other;
+            return m_initialPosition == rhs.m_initialPosition
+                    && m_initialVelocity == rhs.m_initialVelocity
+                    && m_goalPosition == rhs.m_goalPosition
+                    && m_goalVelocity == rhs.m_goalVelocity
+                    && Double.compare(m_maxVelocity, rhs.m_maxVelocity) == 0
+                    && Double.compare(m_maxAcceleration, rhs.m_maxAcceleration) == 0
+                    && Double.compare(m_maxJerk, rhs.m_maxJerk) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            long hash = m_initialPosition;
+            hash = 31 * hash + m_initialVelocity;
+            hash = 31 * hash + m_goalPosition;
+            hash = 31 * hash + m_goalVelocity;
+            hash = 31 * hash + Double.doubleToLongBits(m_maxVelocity);
+            hash = 31 * hash + Double.doubleToLongBits(m_maxAcceleration);
+            hash = 31 * hash + Double.doubleToLongBits(m_maxJerk);
+            return (int) (hash ^ (hash >>> 32));
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package org.firstinspires.ftc.library.controller;
+
+/**
+ * A jerk-limited (seven-segment, "S-curve") motion profile.
+ *
+ * <p>Where a {@link TrapezoidProfile} switches acceleration instantaneously at every phase
+ * transition, this profile ramps acceleration at a bounded jerk. The velocity curve becomes
+ * S-shaped, which keeps mechanisms such as lifts and arms from being excited at the corners of
+ * the move and usually allows a higher acceleration limit to be used.
+ *
+ * <p>The profile is made of up to seven segments: jerk up, constant acceleration, jerk down,
+ * cruise, jerk down, constant deceleration, jerk up. Segments that are not needed for a given
+ * move have zero length. Start and end velocities may be non-zero; start and end accelerations
+ * are always zero.
+ *
+ * <p>Usage mirrors {@link TrapezoidProfile}:
+ * <pre><code>
+ * SCurveProfile.Constraints constraints =
+ *   new SCurveProfile.Constraints(kMaxV, kMaxA, kMaxJ);
+ * SCurveProfile profile =
+ *   new SCurveProfile(constraints, new TrapezoidProfile.State(goal, 0), current);
+ * SCurveProfile.State setpoint = profile.calculate(timeSinceStart);
+ * </code></pre>
+ *
+ * <p>Because {@link Constraints} extends {@link TrapezoidProfile.Constraints}, passing them to a
+ * {@link org.firstinspires.ftc.library.controller.wpilibcontroller.ProfiledPIDController}
+ * makes that controller follow an S-curve instead of a trapezoid.
+ *
+ * <p>Planning (the constructor) solves for the peak velocity with a bounded bisection; sampling
+ * with {@link #calculate(double)} is closed-form.
+ */
+public class SCurveProfile {
+    private static final int kSolverIterations = 60;
+    private static final double kEpsilon = 1e-9;
+
+    // The direction of the profile, either 1 for forwards or -1 for inverted
+    private final int m_direction;
+
+    private final Constraints m_constraints;
+    private final State m_initial;
+    private final State m_goal;
+
+    // Segment durations: jerk time and total time of the acceleration phase, cruise time, and
+    // jerk time and total time of the deceleration phase
+    private double m_accelJerkTime;
+    private double m_accelTime;
+    private double m_cruiseTime;
+    private double m_decelJerkTime;
+    private double m_decelTime;
+    private double m_totalTime;
+
+    private double m_peakVelocity;
+    private double m_peakAcceleration;
+    private double m_peakDeceleration;
+
+    public static class Constraints extends TrapezoidProfile.Constraints {
+        @SuppressWarnings("MemberName")
+        public double maxJerk;
+
+        public Constraints() {
+        }
+
+        /**
+         * Construct constraints for an SCurveProfile.
+         *
+         * @param maxVelocity     maximum velocity
+         * @param maxAcceleration maximum acceleration
+         * @param maxJerk         maximum jerk
+         */
+        public Constraints(double maxVelocity, double maxAcceleration, double maxJerk) {
+            super(maxVelocity, maxAcceleration);
+            this.maxJerk = maxJerk;
+        }
+    }
+
+    public static class State extends TrapezoidProfile.State {
+        @SuppressWarnings("MemberName")
+        public double acceleration;
+
+        public State() {
+        }
+
+        public State(double position, double velocity) {
+            super(position, velocity);
+        }
+
+        public State(double position, double velocity, double acceleration) {
+            super(position, velocity);
+            this.acceleration = acceleration;
+        }
+    }
+
+    /**
+     * Construct an SCurveProfile.
+     *
+     * @param constraints The constraints on the profile, like maximum velocity.
+     * @param goal        The desired state when the profile is complete.
+     * @param initial     The initial state (usually the current state). Any acceleration carried
+     *                    by the initial state is ignored; the profile starts at zero acceleration.
+     */
+    public SCurveProfile(Constraints constraints, TrapezoidProfile.State goal,
+                         TrapezoidProfile.State initial) {
+        if (constraints.maxVelocity <= 0 || constraints.maxAcceleration <= 0
+                || constraints.maxJerk <= 0) {
+            throw new IllegalArgumentException("SCurveProfile constraints must be positive");
+        }
+
+        m_direction = initial.position > goal.position ? -1 : 1;
+        m_constraints = constraints;
+        m_initial = direct(initial.position, initial.velocity, 0);
+        m_goal = direct(goal.position, goal.velocity, 0);
+
+        m_initial.velocity = Math.min(m_initial.velocity, m_constraints.maxVelocity);
+        m_goal.velocity = Math.min(m_goal.velocity, m_constraints.maxVelocity);
+
+        plan();
+    }
+
+    /**
+     * Construct an SCurveProfile.
+     *
+     * @param constraints The constraints on the profile, like maximum velocity.
+     * @param goal        The desired state when the profile is complete.
+     */
+    public SCurveProfile(Constraints constraints, TrapezoidProfile.State goal) {
+        this(constraints, goal, new TrapezoidProfile.State(0, 0));
+    }
+
+    private void plan() {
+        double distance = m_goal.position - m_initial.position;
+        double startVelocity = m_initial.velocity;
+        double endVelocity = m_goal.velocity;
+
+        // Even a direct ramp between the boundary velocities overshoots the goal, so the goal
+        // velocity cannot be met. Settle for the closest end velocity that lands on the goal.
+        // The ramp distance grows as the end velocity moves away from the start velocity, so the
+        // bound on the start velocity's side always lands on or before the goal.
+        if (rampDistance(startVelocity, endVelocity) > distance) {
+            boolean decelerating = startVelocity > endVelocity;
+            double low = Math.min(startVelocity, endVelocity);
+            double high = Math.max(startVelocity, endVelocity);
+            for (int i = 0; i < kSolverIterations; i++) {
+                assert low <= high : "S-curve end velocity search interval is inverted";
+                double mid = (low + high) / 2.0;
+                boolean overshoots = rampDistance(startVelocity, mid) > distance;
+                // Move the bound on the far side from the start velocity in if mid overshoots,
+                // otherwise the bound on the start velocity's side out
+                if (overshoots == decelerating) {
+                    low = mid;
+                } else {
+                    high = mid;
+                }
+            }
+            endVelocity = decelerating ? high : low;
+            m_goal.velocity = endVelocity;
+        }
+
+        double minPeak = Math.max(startVelocity, endVelocity);
+        double maxPeak = m_constraints.maxVelocity;
+        double peak;
+        double cruiseDistance = 0;
+
+        if (peakDistance(maxPeak, startVelocity, endVelocity) <= distance) {
+            peak = maxPeak;
+            cruiseDistance = distance - peakDistance(maxPeak, startVelocity, endVelocity);
+        } else if (peakDistance(minPeak, startVelocity, endVelocity) >= distance) {
+            peak = minPeak;
+        } else {
+            double low = minPeak;
+            double high = maxPeak;
+            for (int i = 0; i < kSolverIterations; i++) {
+                double mid = (low + high) / 2.0;
+                if (peakDistance(mid, startVelocity, endVelocity) > distance) {
+                    high = mid;
+                } else {
+                    low = mid;
+                }
+            }
+            peak = low;
+        }
+
+        m_peakVelocity = peak;
+        m_accelJerkTime = rampJerkTime(peak - startVelocity);
+        m_accelTime = rampTime(peak - startVelocity);
+        m_decelJerkTime = rampJerkTime(peak - endVelocity);
+        m_decelTime = rampTime(peak - endVelocity);
+        m_cruiseTime = peak > kEpsilon ? cruiseDistance / peak : 0;
+        m_totalTime = m_accelTime + m_cruiseTime + m_decelTime;
+
+        m_peakAcceleration = m_constraints.maxJerk * m_accelJerkTime;
+        m_peakDeceleration = -m_constraints.maxJerk * m_decelJerkTime;
+    }
+
+    /**
+     * Calculate the correct position, velocity and acceleration for the profile at a time t
+     * where the beginning of the profile was at time t = 0.
+     *
+     * @param t The time since the beginning of the profile.
+     */
+    @SuppressWarnings("ParameterName")
+    public State calculate(double t) {
+        final double jerk = m_constraints.maxJerk;
+        final double p0 = m_initial.position;
+        final double v0 = m_initial.velocity;
+        final double p1 = m_goal.position;
+        final double v1 = m_goal.velocity;
+        final double vp = m_peakVelocity;
+
+        double position;
+        double velocity;
+        double acceleration;
+
+        if (t <= 0) {
+            position = p0;
+            velocity = v0;
+            acceleration = 0;
+        } else if (t < m_accelJerkTime) {
+            position = p0 + v0 * t + jerk * t * t * t / 6.0;
+            velocity = v0 + jerk * t * t / 2.0;
+            acceleration = jerk * t;
+        } else if (t < m_accelTime - m_accelJerkTime) {
+            double tj = m_accelJerkTime;
+            position = p0 + v0 * t + m_peakAcceleration / 6.0 * (3 * t * t - 3 * tj * t + tj * tj);
+            velocity = v0 + m_peakAcceleration * (t - tj / 2.0);
+            acceleration = m_peakAcceleration;
+        } else if (t < m_accelTime) {
+            double remaining = m_accelTime - t;
+            position = p0 + (vp + v0) * m_accelTime / 2.0 - vp * remaining
+                    + jerk * remaining * remaining * remaining / 6.0;
+            velocity = vp - jerk * remaining * remaining / 2.0;
+            acceleration = jerk * remaining;
+        } else if (t < m_accelTime + m_cruiseTime) {
+            position = p0 + (vp + v0) * m_accelTime / 2.0 + vp * (t - m_accelTime);
+            velocity = vp;
+            acceleration = 0;
+        } else if (t < m_totalTime) {
+            double decelStart = p1 - (vp + v1) * m_decelTime / 2.0;
+            double elapsed = t - (m_totalTime - m_decelTime);
+            double remaining = m_totalTime - t;
+            double tj = m_decelJerkTime;
+
+            if (elapsed < tj) {
+                position = decelStart + vp * elapsed - jerk * elapsed * elapsed * elapsed / 6.0;
+                velocity = vp - jerk * elapsed * elapsed / 2.0;
+                acceleration = -jerk * elapsed;
+            } else if (remaining > tj) {
+                position = decelStart + vp * elapsed + m_peakDeceleration / 6.0
+                        * (3 * elapsed * elapsed - 3 * tj * elapsed + tj * tj);
+                velocity = vp + m_peakDeceleration * (elapsed - tj / 2.0);
+                acceleration = m_peakDeceleration;
+            } else {
+                position = p1 - v1 * remaining - jerk * remaining * remaining * remaining / 6.0;
+                velocity = v1 + jerk * remaining * remaining / 2.0;
+                acceleration = -jerk * remaining;
+            }
+        } else {
+            position = p1;
+            velocity = v1;
+            acceleration = 0;
+        }
+
+        return direct(position, velocity, acceleration);
+    }
+
+    /**
+     * Returns the time left until a target distance in the profile is reached.
+     *
+     * @param target The target distance.
+     */
+    public double timeLeftUntil(double target) {
+        double directed = target * m_direction;
+        if (directed <= m_initial.position) {
+            return 0;
+        }
+        if (directed >= m_goal.position) {
+            return m_totalTime;
+        }
+
+        double low = 0;
+        double high = m_totalTime;
+        for (int i = 0; i < kSolverIterations; i++) {
+            double mid = (low + high) / 2.0;
+            if (calculate(mid).position * m_direction < directed) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Returns the total time the profile takes to reach the goal.
+     */
+    public double totalTime() {
+        return m_totalTime;
+    }
+
+    /**
+     * Returns true if the profile has reached the goal.
+     *
+     * <p>The profile has reached the goal if the time since the profile started
+     * has exceeded the profile's total time.
+     *
+     * @param t The time since the beginning of the profile.
+     */
+    @SuppressWarnings("ParameterName")
+    public boolean isFinished(double t) {
+        return t >= totalTime();
+    }
+
+    /**
+     * Returns the peak velocity reached by the profile, which is the cruise velocity if the
+     * profile has a cruise segment.
+     */
+    public double getPeakVelocity() {
+        return m_peakVelocity * m_direction;
+    }
+
+    // Jerk-up (and jerk-down) time of a velocity ramp of the given size
+    private double rampJerkTime(double deltaVelocity) {
+        double change = Math.abs(deltaVelocity);
+        double jerk = m_constraints.maxJerk;
+        double accel = m_constraints.maxAcceleration;
+
+        if (change * jerk < accel * accel) {
+            return Math.sqrt(change / jerk);
+        }
+        return accel / jerk;
+    }
+
+    // Total time of a velocity ramp of the given size
+    private double rampTime(double deltaVelocity) {
+        double change = Math.abs(deltaVelocity);
+        double jerk = m_constraints.maxJerk;
+        double accel = m_constraints.maxAcceleration;
+
+        if (change * jerk < accel * accel) {
+            return 2 * Math.sqrt(change / jerk);
+        }
+        return accel / jerk + change / accel;
+    }
+
+    // A jerk-limited ramp is point-symmetric, so its average velocity is the midpoint
+    private double rampDistance(double fromVelocity, double toVelocity) {
+        return (fromVelocity + toVelocity) / 2.0 * rampTime(toVelocity - fromVelocity);
+    }
+
+    // Distance covered by ramping up to the peak velocity and back down, without cruising
+    private double peakDistance(double peak, double startVelocity, double endVelocity) {
+        return rampDistance(startVelocity, peak) + rampDistance(peak, endVelocity);
+    }
+
+    // Flip the sign of the state if the profile is inverted
+    private State direct(double position, double velocity, double acceleration) {
+        return new State(position * m_direction, velocity * m_direction,
+                acceleration * m_direction);
+    }
+}
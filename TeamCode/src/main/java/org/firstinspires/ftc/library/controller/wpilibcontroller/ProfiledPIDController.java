@@ -7,12 +7,23 @@
 
 package org.firstinspires.ftc.library.controller.wpilibcontroller;
 
+import org.firstinspires.ftc.library.controller.ProfileCache;
+import org.firstinspires.ftc.library.controller.SCurveProfile;
 import org.firstinspires.ftc.library.controller.TrapezoidProfile;
 import org.firstinspires.ftc.library.controller.PIDController;
 
 /**
  * Implements a PID control loop whose setpoint is constrained by a trapezoid
  * profile.
+ *
+ * <p>If the constraints are {@link SCurveProfile.Constraints}, the setpoint follows a
+ * jerk-limited {@link SCurveProfile} instead, and {@link #getSetpoint()} returns an
+ * {@link SCurveProfile.State} carrying the profiled acceleration. Since an S-curve cannot be
+ * re-planned from its own setpoint every loop without losing its acceleration ramp, the
+ * S-curve is planned once per goal (or constraint change) and then sampled over time.
+ *
+ * <p>With a {@link ProfileCache} set, both kinds of profile are planned once per goal and served
+ * from the cache, so repeated moves between the same presets skip planning entirely.
  */
 @SuppressWarnings("PMD.TooManyMethods")
 public class ProfiledPIDController {
@@ -21,6 +32,16 @@ public class ProfiledPIDController {
     private TrapezoidProfile.State m_setpoint = new TrapezoidProfile.State();
     private TrapezoidProfile.Constraints m_constraints;
 
+    private SCurveProfile m_sCurveProfile;
+    private ProfileCache m_profileCache;
+    private ProfileCache.Profile m_cachedProfile;
+    // Sampled into on every cached calculate, so the cache path doesn't allocate
+    private final SCurveProfile.State m_cachedSetpoint = new SCurveProfile.State();
+    private double m_profileTime;
+    private final TrapezoidProfile.State m_plannedInitial = new TrapezoidProfile.State();
+    private final TrapezoidProfile.State m_plannedGoal = new TrapezoidProfile.State();
+    private final SCurveProfile.Constraints m_plannedConstraints = new SCurveProfile.Constraints();
+
     /**
      * Allocates a ProfiledPIDController with the given constants for Kp, Ki, and
      * Kd.
@@ -161,7 +182,19 @@ public class ProfiledPIDController {
     }
 
     /**
-     * Returns the current setpoint of the ProfiledPIDController.
+     * Sets the cache to take profiles from, or null to plan every profile analytically.
+     *
+     * @param profileCache The profile cache, which may be shared between controllers.
+     */
+    public void setProfileCache(ProfileCache profileCache) {
+        m_profileCache = profileCache;
+        m_cachedProfile = null;
+        m_sCurveProfile = null;
+    }
+
+    /**
+     * Returns the current setpoint of the ProfiledPIDController. With a {@link ProfileCache} set,
+     * the returned state is updated in place by the next {@link #calculate(double)}.
      *
      * @return The current setpoint.
      */
@@ -219,11 +252,65 @@ public class ProfiledPIDController {
      * @param measurement The current measurement of the process variable.
      */
     public double calculate(double measurement) {
-        TrapezoidProfile profile = new TrapezoidProfile(m_constraints, m_goal, m_setpoint);
-        m_setpoint = profile.calculate(getPeriod());
+        if (m_profileCache != null) {
+            m_setpoint = calculateCached();
+        } else if (m_constraints instanceof SCurveProfile.Constraints) {
+            m_setpoint = calculateSCurve((SCurveProfile.Constraints) m_constraints);
+        } else {
+            TrapezoidProfile profile = new TrapezoidProfile(m_constraints, m_goal, m_setpoint);
+            m_setpoint = profile.calculate(getPeriod());
+        }
         return m_controller.calculate(measurement, m_setpoint.position);
     }
 
+    // Re-plans only when the goal or the constraints change, otherwise advances along the
+    // current profile
+    private SCurveProfile.State calculateSCurve(SCurveProfile.Constraints constraints) {
+        if (updatePlannedGoal() || m_sCurveProfile == null) {
+            m_sCurveProfile = new SCurveProfile(constraints, m_goal, m_setpoint);
+            m_profileTime = 0;
+        }
+
+        m_profileTime += getPeriod();
+        return m_sCurveProfile.calculate(m_profileTime);
+    }
+
+    // Same as calculateSCurve, but the profile comes from the cache
+    private SCurveProfile.State calculateCached() {
+        if (updatePlannedGoal() || m_cachedProfile == null) {
+            m_cachedProfile = m_profileCache.get(m_constraints, m_goal, m_setpoint);
+            m_profileTime = 0;
+
+            m_plannedInitial.position = m_setpoint.position;
+            m_plannedInitial.velocity = m_setpoint.velocity;
+        }
+
+        m_profileTime += getPeriod();
+        return m_cachedProfile.calculate(m_profileTime, m_plannedInitial, m_plannedGoal,
+                m_cachedSetpoint);
+    }
+
+    // Records the goal and constraints the current profile is planned for, returning true if
+    // they differ from the previous ones
+    private boolean updatePlannedGoal() {
+        double maxJerk = m_constraints instanceof SCurveProfile.Constraints
+                ? ((SCurveProfile.Constraints) m_constraints).maxJerk : 0;
+
+        if (m_goal.equals(m_plannedGoal)
+                && m_constraints.maxVelocity == m_plannedConstraints.maxVelocity
+                && m_constraints.maxAcceleration == m_plannedConstraints.maxAcceleration
+                && maxJerk == m_plannedConstraints.maxJerk) {
+            return false;
+        }
+
+        m_plannedGoal.position = m_goal.position;
+        m_plannedGoal.velocity = m_goal.velocity;
+        m_plannedConstraints.maxVelocity = m_constraints.maxVelocity;
+        m_plannedConstraints.maxAcceleration = m_constraints.maxAcceleration;
+        m_plannedConstraints.maxJerk = maxJerk;
+        return true;
+    }
+
     /**
      * Returns the next output of the PID controller.
      *
@@ -274,6 +361,8 @@ public class ProfiledPIDController {
     public void reset(TrapezoidProfile.State measurement) {
         m_controller.reset();
         m_setpoint = measurement;
+        m_sCurveProfile = null;
+        m_cachedProfile = null;
     }
 
     /**
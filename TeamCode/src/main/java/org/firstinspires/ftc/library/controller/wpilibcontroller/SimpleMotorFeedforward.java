@@ -58,6 +58,25 @@ public class SimpleMotorFeedforward {
         return ks * Math.signum(velocity) + kv * velocity + ka * acceleration;
     }
 
+    /**
+     * Calculates the feedforward of several motors, such as the wheels of a drivetrain, each with
+     * its own gains. Does not allocate.
+     *
+     * @param feedforwards  the feedforward of each motor
+     * @param velocities    the velocity setpoint of each motor
+     * @param accelerations the acceleration setpoint of each motor, or null for zero
+     * @param out           receives the feedforward of each motor
+     * @return out
+     */
+    public static double[] calculate(SimpleMotorFeedforward[] feedforwards, double[] velocities,
+                                     double[] accelerations, double[] out) {
+        for (int i = 0; i < feedforwards.length; i++) {
+            out[i] = feedforwards[i].calculate(velocities[i],
+                    accelerations != null ? accelerations[i] : 0);
+        }
+        return out;
+    }
+
     // Rearranging the main equation from the calculate() method yields the
     // formulas for the methods below:
 
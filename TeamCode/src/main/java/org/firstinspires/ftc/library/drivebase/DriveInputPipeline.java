@@ -0,0 +1,203 @@
+package org.firstinspires.ftc.library.drivebase;
+
+import com.qualcomm.robotcore.hardware.Gamepad;
+
+import org.firstinspires.ftc.library.gamepad.GamepadEx;
+import org.firstinspires.ftc.library.gamepad.SlewRateLimiter;
+import org.firstinspires.ftc.library.math.geometry.Rotation2d;
+
+/**
+ * Turns joystick input into drive commands, from the gamepad to the wheel powers, without
+ * allocating.
+ *
+ * <p>Each call reads the sticks once and runs them through these stages:
+ * <ol>
+ *     <li>a deadband, applied to the translation stick as a circle so diagonals aren't cut off,
+ *     and rescaled so the output starts from zero at its edge;</li>
+ *     <li>a response curve, the magnitude raised to a power, for finer control at low speeds;</li>
+ *     <li>optional {@link SlewRateLimiter}s, in the driver's frame so turning the robot doesn't
+ *     use up the translation limit;</li>
+ *     <li>a rotation into the robot frame by the heading, using the sine and cosine the
+ *     {@link Rotation2d} already holds;</li>
+ *     <li>the mecanum wheel mix, scaled so no power exceeds 1, into an array reused every call.</li>
+ * </ol>
+ * The robot-relative commands are also kept, for drives other than mecanum.
+ *
+ * <pre>
+ * DriveInputPipeline pipeline = new DriveInputPipeline()
+ *         .setTranslationCurve(0.05, 2)
+ *         .setRotationCurve(0.05, 3)
+ *         .setSlewRateLimiters(new SlewRateLimiter(4), new SlewRateLimiter(4), null);
+ *
+ * double[] powers = pipeline.calculate(driverGamepad, odometry.getPose().getRotation());
+ * frontLeft.set(powers[0]);
+ * frontRight.set(powers[1]);
+ * backLeft.set(powers[2]);
+ * backRight.set(powers[3]);
+ * </pre>
+ */
+public class DriveInputPipeline {
+
+    private double m_translationDeadband = 0.05;
+    private double m_translationExponent = 1;
+    private double m_rotationDeadband = 0.05;
+    private double m_rotationExponent = 1;
+    private SlewRateLimiter m_forwardLimiter;
+    private SlewRateLimiter m_strafeLimiter;
+    private SlewRateLimiter m_turnLimiter;
+
+    private double m_forward;
+    private double m_strafe;
+    private double m_turn;
+    private final double[] m_powers = new double[4];
+
+    /**
+     * Sets the shaping of the translation stick.
+     *
+     * @param deadband the stick deflection below which the output is zero, from 0 to 1
+     * @param exponent the power the deflection is raised to, at least 1
+     * @return this pipeline, for chaining
+     */
+    public DriveInputPipeline setTranslationCurve(double deadband, double exponent) {
+        checkCurve(deadband, exponent);
+        m_translationDeadband = deadband;
+        m_translationExponent = exponent;
+        return this;
+    }
+
+    /**
+     * Sets the shaping of the rotation stick.
+     *
+     * @param deadband the stick deflection below which the output is zero, from 0 to 1
+     * @param exponent the power the deflection is raised to, at least 1
+     * @return this pipeline, for chaining
+     */
+    public DriveInputPipeline setRotationCurve(double deadband, double exponent) {
+        checkCurve(deadband, exponent);
+        m_rotationDeadband = deadband;
+        m_rotationExponent = exponent;
+        return this;
+    }
+
+    /**
+     * Sets the slew rate limiters applied after the response curves. Don't also set them on the
+     * {@link GamepadEx}.
+     *
+     * @param forward the limiter of the forward command, or null
+     * @param strafe  the limiter of the strafe command, or null
+     * @param turn    the limiter of the turn command, or null
+     * @return this pipeline, for chaining
+     */
+    public DriveInputPipeline setSlewRateLimiters(SlewRateLimiter forward, SlewRateLimiter strafe,
+                                                  SlewRateLimiter turn) {
+        m_forwardLimiter = forward;
+        m_strafeLimiter = strafe;
+        m_turnLimiter = turn;
+        return this;
+    }
+
+    /**
+     * Runs the pipeline on the left stick for translation and the right stick for rotation.
+     *
+     * @param gamepad the driver's gamepad
+     * @param heading the robot's heading on the field, counterclockwise positive; pass
+     *                {@link Rotation2d#Rotation2d()} to drive robot-centric
+     * @return the front left, front right, back left and back right wheel powers, in an array
+     * that is reused by the next call
+     */
+    public double[] calculate(GamepadEx gamepad, Rotation2d heading) {
+        Gamepad raw = gamepad.gamepad;
+        return calculate(-raw.left_stick_y, raw.left_stick_x, raw.right_stick_x,
+                heading.getCos(), heading.getSin());
+    }
+
+    /**
+     * Runs the pipeline.
+     *
+     * @param forward the forward stick deflection, away from the driver
+     * @param strafe  the strafe stick deflection, to the driver's right
+     * @param turn    the turn stick deflection, clockwise
+     * @param cos     the cosine of the robot's heading on the field
+     * @param sin     the sine of the robot's heading on the field
+     * @return the front left, front right, back left and back right wheel powers, in an array
+     * that is reused by the next call
+     */
+    public double[] calculate(double forward, double strafe, double turn, double cos, double sin) {
+        // Deadband and response curve, radially on the translation stick
+        double magnitude = Math.min(Math.hypot(forward, strafe), 1);
+        double shaped = shape(magnitude, m_translationDeadband, m_translationExponent);
+        double scale = magnitude > 0 ? shaped / magnitude : 0;
+        double fieldForward = forward * scale;
+        double fieldStrafe = strafe * scale;
+        double rotation = Math.copySign(shape(Math.min(Math.abs(turn), 1), m_rotationDeadband,
+                m_rotationExponent), turn);
+
+        if (m_forwardLimiter != null) {
+            fieldForward = m_forwardLimiter.calculate(fieldForward);
+        }
+        if (m_strafeLimiter != null) {
+            fieldStrafe = m_strafeLimiter.calculate(fieldStrafe);
+        }
+        if (m_turnLimiter != null) {
+            rotation = m_turnLimiter.calculate(rotation);
+        }
+
+        // Rotate the driver's frame into the robot frame; strafe is to the right, so the leftward
+        // component is its negation
+        double fieldLeft = -fieldStrafe;
+        m_forward = fieldForward * cos + fieldLeft * sin;
+        m_strafe = -(-fieldForward * sin + fieldLeft * cos);
+        m_turn = rotation;
+
+        m_powers[0] = m_forward + m_strafe + m_turn;
+        m_powers[1] = m_forward - m_strafe - m_turn;
+        m_powers[2] = m_forward - m_strafe + m_turn;
+        m_powers[3] = m_forward + m_strafe - m_turn;
+        double max = Math.max(Math.max(Math.abs(m_powers[0]), Math.abs(m_powers[1])),
+                Math.max(Math.abs(m_powers[2]), Math.abs(m_powers[3])));
+        if (max > 1) {
+            for (int i = 0; i < 4; i++) {
+                m_powers[i] /= max;
+            }
+        }
+        return m_powers;
+    }
+
+    /**
+     * @return the robot-relative forward command of the last call, from -1 to 1
+     */
+    public double getForward() {
+        return m_forward;
+    }
+
+    /**
+     * @return the robot-relative strafe command of the last call, to the right, from -1 to 1
+     */
+    public double getStrafe() {
+        return m_strafe;
+    }
+
+    /**
+     * @return the turn command of the last call, clockwise, from -1 to 1
+     */
+    public double getTurn() {
+        return m_turn;
+    }
+
+    private static double shape(double magnitude, double deadband, double exponent) {
+        if (magnitude <= deadband) {
+            return 0;
+        }
+        double scaled = (magnitude - deadband) / (1 - deadband);
+        return exponent == 1 ? scaled : Math.pow(scaled, exponent);
+    }
+
+    private static void checkCurve(double deadband, double exponent) {
+        if (deadband < 0 || deadband >= 1) {
+            throw new IllegalArgumentException("The deadband must be at least 0 and less than 1");
+        }
+        if (exponent < 1) {
+            throw new IllegalArgumentException("The response exponent must be at least 1");
+        }
+    }
+}
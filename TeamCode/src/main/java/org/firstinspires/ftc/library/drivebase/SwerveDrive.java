@@ -0,0 +1,393 @@
+package org.firstinspires.ftc.library.drivebase;
+
+import org.firstinspires.ftc.library.command.SubsystemBase;
+import org.firstinspires.ftc.library.controller.wpilibcontroller.SimpleMotorFeedforward;
+import org.firstinspires.ftc.library.hardware.CachingVoltageSensor;
+import org.firstinspires.ftc.library.hardware.GyroEx;
+import org.firstinspires.ftc.library.kinematics.wpilibkinematics.ChassisSpeeds;
+import org.firstinspires.ftc.library.kinematics.wpilibkinematics.SwerveDriveKinematics;
+import org.firstinspires.ftc.library.kinematics.wpilibkinematics.SwerveDriveOdometry;
+import org.firstinspires.ftc.library.kinematics.wpilibkinematics.SwerveModuleState;
+import org.firstinspires.ftc.library.math.MathUtility;
+import org.firstinspires.ftc.library.math.geometry.Pose2d;
+import org.firstinspires.ftc.library.math.geometry.Rotation2d;
+import org.firstinspires.ftc.library.math.geometry.Translation2d;
+
+/**
+ * A swerve drivetrain subsystem.
+ *
+ * <p>Every {@link #periodic()} reads all absolute encoders, drive encoders and the gyro once, into
+ * arrays the rest of the tick works from, and updates a {@link SwerveDriveOdometry} with the
+ * distance each wheel travelled, leaving out modules that skid. Commands then call
+ * {@link #drive(double, double, double, boolean)} or {@link #setModuleStates(double[], double[])},
+ * which turn the request into module targets and write the outputs straight away. On ticks where
+ * no command drives, periodic keeps steering to the last targets, so the steering control runs
+ * exactly once per tick either way.
+ *
+ * <p>Steering runs through one bank of PID gains shared by all modules, with a static friction
+ * term, on the angle error wrapped to the shortest direction. Targets are optimized so no module
+ * turns more than a quarter turn, and each drive speed is scaled by the cosine of its module's
+ * angle error so a module pointing the wrong way doesn't push the robot off course. The drive
+ * motors get a {@link SimpleMotorFeedforward} plus an optional proportional velocity correction,
+ * compensated for battery voltage when a {@link CachingVoltageSensor} is set.
+ *
+ * <pre>
+ * SwerveDrive drive = new SwerveDrive(imu, 1.5,
+ *         new SwerveModule(new Translation2d(0.15, 0.15), frontLeftMotor, frontLeftServo),
+ *         new SwerveModule(new Translation2d(0.15, -0.15), frontRightMotor, frontRightServo),
+ *         new SwerveModule(new Translation2d(-0.15, 0.15), backLeftMotor, backLeftServo),
+ *         new SwerveModule(new Translation2d(-0.15, -0.15), backRightMotor, backRightServo))
+ *         .setSteeringCoefficients(0.6, 0, 0.01, 0.04)
+ *         .setDriveFeedforward(new SimpleMotorFeedforward(0.6, 7.5));
+ * </pre>
+ */
+public class SwerveDrive extends SubsystemBase {
+
+    private final SwerveModule[] m_modules;
+    private final int m_numModules;
+    private final GyroEx m_gyro;
+    private final SwerveDriveKinematics m_kinematics;
+    private final SwerveDriveOdometry m_odometry;
+    private final double m_maxSpeed;
+
+    // Measurements, read once per tick
+    private final double[] m_angles;
+    private final double[] m_velocities;
+    private final double[] m_distances;
+    private Rotation2d m_gyroAngle;
+
+    // Targets
+    private final double[] m_targetSpeeds;
+    private final double[] m_targetAngles;
+    private final ChassisSpeeds m_discretized = new ChassisSpeeds();
+
+    // Steering controller bank
+    private double m_steerP;
+    private double m_steerI;
+    private double m_steerD;
+    private double m_steerS;
+    private double m_steerTolerance = Math.toRadians(1);
+    private double m_integralLimit = 1;
+    private final double[] m_previousErrors;
+    private final double[] m_integrals;
+
+    // Drive control
+    private SimpleMotorFeedforward m_driveFeedforward;
+    private double m_driveP;
+    private CachingVoltageSensor m_voltageSensor;
+
+    private long m_lastPeriodicNanos;
+    private long m_lastControlNanos;
+    private double m_periodSeconds = 0.02;
+    private boolean m_controlled;
+
+    /**
+     * Creates a swerve drive starting at the origin.
+     *
+     * @param gyro                     the gyro, already initialized
+     * @param maxSpeedMetersPerSecond  the fastest any module can drive
+     * @param modules                  the modules
+     */
+    public SwerveDrive(GyroEx gyro, double maxSpeedMetersPerSecond, SwerveModule... modules) {
+        if (modules.length < 2) {
+            throw new IllegalArgumentException("A swerve drive requires at least two modules");
+        }
+        if (maxSpeedMetersPerSecond <= 0) {
+            throw new IllegalArgumentException("The max speed must be positive");
+        }
+        m_modules = modules.clone();
+        m_numModules = modules.length;
+        m_gyro = gyro;
+        m_maxSpeed = maxSpeedMetersPerSecond;
+
+        Translation2d[] locations = new Translation2d[m_numModules];
+        for (int i = 0; i < m_numModules; i++) {
+            locations[i] = modules[i].getLocation();
+        }
+        m_kinematics = new SwerveDriveKinematics(locations);
+        m_odometry = new SwerveDriveOdometry(m_kinematics, gyro.getRotation2d());
+
+        m_angles = new double[m_numModules];
+        m_velocities = new double[m_numModules];
+        m_distances = new double[m_numModules];
+        m_targetSpeeds = new double[m_numModules];
+        m_targetAngles = new double[m_numModules];
+        m_previousErrors = new double[m_numModules];
+        m_integrals = new double[m_numModules];
+
+        // Full power at the max speed until a measured feedforward is set
+        m_driveFeedforward = new SimpleMotorFeedforward(0, CachingVoltageSensor.nominalVoltage / m_maxSpeed);
+
+        readSensors();
+        m_odometry.resetPosition(new Pose2d(), m_gyroAngle, m_distances, m_angles);
+        System.arraycopy(m_angles, 0, m_targetAngles, 0, m_numModules);
+    }
+
+    /**
+     * Sets the gains of the steering controllers of all modules. The output is servo power per
+     * radian of angle error.
+     *
+     * @param kp the proportional gain
+     * @param ki the integral gain
+     * @param kd the derivative gain
+     * @param ks the power added in the direction of the error to overcome static friction
+     * @return this drive, for chaining
+     */
+    public SwerveDrive setSteeringCoefficients(double kp, double ki, double kd, double ks) {
+        m_steerP = kp;
+        m_steerI = ki;
+        m_steerD = kd;
+        m_steerS = ks;
+        return this;
+    }
+
+    /**
+     * @param toleranceRadians the angle error within which a module stops steering
+     * @return this drive, for chaining
+     */
+    public SwerveDrive setSteeringTolerance(double toleranceRadians) {
+        m_steerTolerance = toleranceRadians;
+        return this;
+    }
+
+    /**
+     * @param limit the largest magnitude of the steering integral, in radian seconds
+     * @return this drive, for chaining
+     */
+    public SwerveDrive setSteeringIntegralLimit(double limit) {
+        m_integralLimit = limit;
+        return this;
+    }
+
+    /**
+     * @param feedforward the feedforward of the drive motors, in volts for meters per second
+     * @return this drive, for chaining
+     */
+    public SwerveDrive setDriveFeedforward(SimpleMotorFeedforward feedforward) {
+        m_driveFeedforward = feedforward;
+        return this;
+    }
+
+    /**
+     * @param kp the proportional gain of the drive velocity correction, in volts per meter per
+     *           second of error
+     * @return this drive, for chaining
+     */
+    public SwerveDrive setDriveVelocityP(double kp) {
+        m_driveP = kp;
+        return this;
+    }
+
+    /**
+     * @param voltageSensor the sensor the drive outputs are compensated with, or null to assume
+     *                      the nominal voltage
+     * @return this drive, for chaining
+     */
+    public SwerveDrive setVoltageSensor(CachingVoltageSensor voltageSensor) {
+        m_voltageSensor = voltageSensor;
+        return this;
+    }
+
+    /**
+     * Reads the sensors, updates the odometry, and steers to the last targets if no command drove
+     * the last tick.
+     */
+    @Override
+    public void periodic() {
+        long now = System.nanoTime();
+        if (m_lastPeriodicNanos != 0) {
+            m_periodSeconds = (now - m_lastPeriodicNanos) / 1E9;
+        }
+        m_lastPeriodicNanos = now;
+
+        readSensors();
+        m_odometry.update(m_gyroAngle, m_distances, m_angles);
+
+        if (!m_controlled) {
+            control();
+        }
+        m_controlled = false;
+    }
+
+    /**
+     * Drives the robot. The speeds are discretized over the loop period so the robot doesn't skew
+     * while it translates and rotates at the same time.
+     *
+     * @param vxMetersPerSecond     the forward velocity
+     * @param vyMetersPerSecond     the leftward velocity
+     * @param omegaRadiansPerSecond the counterclockwise angular velocity
+     * @param fieldRelative         whether the velocities are relative to the field rather than the
+     *                              robot
+     */
+    public void drive(double vxMetersPerSecond, double vyMetersPerSecond,
+                      double omegaRadiansPerSecond, boolean fieldRelative) {
+        double vx = vxMetersPerSecond;
+        double vy = vyMetersPerSecond;
+        if (fieldRelative) {
+            Rotation2d heading = m_odometry.getPoseMeters().getRotation();
+            double cos = heading.getCos();
+            double sin = heading.getSin();
+            vx = vxMetersPerSecond * cos + vyMetersPerSecond * sin;
+            vy = -vxMetersPerSecond * sin + vyMetersPerSecond * cos;
+        }
+        ChassisSpeeds.discretize(vx, vy, omegaRadiansPerSecond, m_periodSeconds, m_discretized);
+        m_kinematics.toModuleStates(m_discretized.vxMetersPerSecond, m_discretized.vyMetersPerSecond,
+                m_discretized.omegaRadiansPerSecond, m_targetSpeeds, m_targetAngles);
+        applyTargets();
+    }
+
+    /**
+     * Drives the robot at robot-relative chassis speeds.
+     *
+     * @param speeds the chassis speeds
+     */
+    public void drive(ChassisSpeeds speeds) {
+        drive(speeds.vxMetersPerSecond, speeds.vyMetersPerSecond, speeds.omegaRadiansPerSecond, false);
+    }
+
+    /**
+     * Sets the module targets directly. The arrays are copied.
+     *
+     * @param speeds the speed of each module, in meters per second
+     * @param angles the angle of each module, in radians
+     */
+    public void setModuleStates(double[] speeds, double[] angles) {
+        System.arraycopy(speeds, 0, m_targetSpeeds, 0, m_numModules);
+        System.arraycopy(angles, 0, m_targetAngles, 0, m_numModules);
+        applyTargets();
+    }
+
+    /**
+     * Stops the drive motors, leaving the modules at their angles.
+     */
+    public void stop() {
+        for (int i = 0; i < m_numModules; i++) {
+            m_targetSpeeds[i] = 0;
+        }
+        control();
+        m_controlled = true;
+    }
+
+    /**
+     * @return the estimated pose of the robot
+     */
+    public Pose2d getPose() {
+        return m_odometry.getPoseMeters();
+    }
+
+    /**
+     * @param pose the pose the robot is at
+     */
+    public void resetPose(Pose2d pose) {
+        m_odometry.resetPosition(pose, m_gyroAngle, m_distances, m_angles);
+    }
+
+    /**
+     * @param module the index of the module
+     * @return whether the odometry found the module skidding this tick
+     */
+    public boolean isModuleSkidding(int module) {
+        return m_odometry.isSkidding(module);
+    }
+
+    /**
+     * Computes the robot-relative chassis speeds from the measured module states.
+     *
+     * @param out receives the chassis speeds
+     * @return out
+     */
+    public ChassisSpeeds getChassisSpeeds(ChassisSpeeds out) {
+        return m_kinematics.toChassisSpeeds(m_velocities, m_angles, out);
+    }
+
+    /**
+     * @param module the index of the module
+     * @return the angle of the module read this tick, in radians
+     */
+    public double getModuleAngle(int module) {
+        return m_angles[module];
+    }
+
+    /**
+     * @param module the index of the module
+     * @return the wheel speed of the module read this tick, in meters per second
+     */
+    public double getModuleVelocity(int module) {
+        return m_velocities[module];
+    }
+
+    /**
+     * @return the modules, in the order they were given
+     */
+    public SwerveModule[] getModules() {
+        return m_modules.clone();
+    }
+
+    /**
+     * @return the kinematics of the drive
+     */
+    public SwerveDriveKinematics getKinematics() {
+        return m_kinematics;
+    }
+
+    /**
+     * @return the fastest any module can drive, in meters per second
+     */
+    public double getMaxSpeed() {
+        return m_maxSpeed;
+    }
+
+    private void readSensors() {
+        for (int i = 0; i < m_numModules; i++) {
+            SwerveModule module = m_modules[i];
+            m_angles[i] = module.readAngle();
+            m_velocities[i] = module.readVelocity();
+            m_distances[i] = module.readDistance();
+        }
+        m_gyroAngle = m_gyro.getRotation2d();
+    }
+
+    private void applyTargets() {
+        SwerveDriveKinematics.normalizeWheelSpeeds(m_targetSpeeds, m_maxSpeed);
+        SwerveModuleState.optimize(m_targetSpeeds, m_targetAngles, m_angles);
+        control();
+        m_controlled = true;
+    }
+
+    private void control() {
+        long now = System.nanoTime();
+        double dt = m_lastControlNanos != 0 ? (now - m_lastControlNanos) / 1E9 : 0;
+        m_lastControlNanos = now;
+        double voltage = m_voltageSensor != null
+                ? m_voltageSensor.getVoltage() : CachingVoltageSensor.nominalVoltage;
+
+        for (int i = 0; i < m_numModules; i++) {
+            double error = MathUtility.normalizeRadians(m_targetAngles[i] - m_angles[i], false);
+
+            double steerPower = 0;
+            if (Math.abs(error) > m_steerTolerance) {
+                double derivative = 0;
+                if (dt > 0) {
+                    m_integrals[i] = MathUtility.clamp(m_integrals[i] + error * dt,
+                            -m_integralLimit, m_integralLimit);
+                    derivative = (error - m_previousErrors[i]) / dt;
+                }
+                steerPower = m_steerP * error + m_steerI * m_integrals[i] + m_steerD * derivative
+                        + Math.copySign(m_steerS, error);
+            } else {
+                m_integrals[i] = 0;
+            }
+            m_previousErrors[i] = error;
+
+            double speed = m_targetSpeeds[i] * Math.cos(error);
+            double volts = m_driveFeedforward.calculate(speed);
+            if (speed != 0) {
+                volts += m_driveP * (speed - m_velocities[i]);
+            }
+
+            SwerveModule module = m_modules[i];
+            module.setSteeringPower(MathUtility.clamp(steerPower, -1, 1));
+            module.setDrivePower(MathUtility.clamp(volts / voltage, -1, 1));
+        }
+    }
+}
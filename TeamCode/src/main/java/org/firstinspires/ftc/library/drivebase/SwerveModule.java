@@ -0,0 +1,122 @@
+package org.firstinspires.ftc.library.drivebase;
+
+import org.firstinspires.ftc.library.hardware.AnalogEncoder;
+import org.firstinspires.ftc.library.hardware.motors.CRServoEx;
+import org.firstinspires.ftc.library.hardware.motors.Motor;
+import org.firstinspires.ftc.library.hardware.motors.MotorEx;
+import org.firstinspires.ftc.library.math.geometry.Translation2d;
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+
+/**
+ * One module of a {@link SwerveDrive}: a drive motor, a continuous rotation servo that steers it,
+ * and the absolute analog encoder on the servo.
+ *
+ * <p>A module only reads and writes its hardware; the {@link SwerveDrive} it belongs to reads
+ * every module once per tick and runs the steering and drive control for all of them. The servo
+ * and motor are put in raw power mode, so the servo's own positional control is not used and the
+ * encoder is not read a second time.
+ *
+ * <p>The hardware methods are protected so a subclass can stand in for the hardware, for
+ * instance with a simple model of the module for testing the drive off the robot.
+ */
+public class SwerveModule {
+
+    private final Translation2d m_location;
+    private final MotorEx m_drive;
+    private final CRServoEx m_steer;
+    private final AnalogEncoder m_encoder;
+
+    /**
+     * Creates a module.
+     *
+     * @param locationMeters the location of the module relative to the robot center
+     * @param drive          the drive motor, with its distance per pulse set in meters per tick
+     * @param steer          the steering servo, with its absolute encoder set
+     */
+    public SwerveModule(Translation2d locationMeters, MotorEx drive, CRServoEx steer) {
+        if (steer.getAbsoluteEncoder() == null) {
+            throw new IllegalArgumentException("The steering servo of a swerve module must have an absolute encoder");
+        }
+        m_location = locationMeters;
+        m_drive = drive;
+        m_steer = steer;
+        m_encoder = steer.getAbsoluteEncoder();
+        m_drive.setRunMode(Motor.RunMode.RawPower);
+        m_steer.setRunMode(CRServoEx.RunMode.RawPower);
+    }
+
+    /**
+     * Creates a module without hardware, for subclasses that override the hardware methods.
+     *
+     * @param locationMeters the location of the module relative to the robot center
+     */
+    protected SwerveModule(Translation2d locationMeters) {
+        m_location = locationMeters;
+        m_drive = null;
+        m_steer = null;
+        m_encoder = null;
+    }
+
+    /**
+     * @return the location of the module relative to the robot center, in meters
+     */
+    public Translation2d getLocation() {
+        return m_location;
+    }
+
+    /**
+     * @return the drive motor, or null for a module without hardware
+     */
+    public MotorEx getDriveMotor() {
+        return m_drive;
+    }
+
+    /**
+     * @return the steering servo, or null for a module without hardware
+     */
+    public CRServoEx getSteeringServo() {
+        return m_steer;
+    }
+
+    /**
+     * Reads the absolute encoder.
+     *
+     * @return the angle of the module, in radians
+     */
+    protected double readAngle() {
+        return AngleUnit.RADIANS.fromUnit(m_encoder.getAngleUnit(), m_encoder.getCurrentPosition());
+    }
+
+    /**
+     * Reads the drive encoder's velocity.
+     *
+     * @return the speed of the wheel, in meters per second
+     */
+    protected double readVelocity() {
+        return m_drive.getRate();
+    }
+
+    /**
+     * Reads the drive encoder's position.
+     *
+     * @return the distance the wheel has travelled, in meters
+     */
+    protected double readDistance() {
+        return m_drive.getDistance();
+    }
+
+    /**
+     * @param power the power of the drive motor, from -1 to 1
+     */
+    protected void setDrivePower(double power) {
+        m_drive.set(power);
+    }
+
+    /**
+     * @param power the power of the steering servo, from -1 to 1; positive turns the module
+     *              towards greater angles
+     */
+    protected void setSteeringPower(double power) {
+        m_steer.set(power);
+    }
+}
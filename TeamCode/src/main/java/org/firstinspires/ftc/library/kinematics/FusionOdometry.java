@@ -0,0 +1,422 @@
+package org.firstinspires.ftc.library.kinematics;
+
+import org.firstinspires.ftc.library.math.MathUtility;
+import org.firstinspires.ftc.library.math.geometry.Pose2d;
+import org.firstinspires.ftc.library.math.geometry.Rotation2d;
+
+import java.util.Arrays;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Odometry that fuses any number of heading and translation sources into one pose, such as dead
+ * wheels, drive encoders, an IMU and a Pinpoint.
+ *
+ * <p>Every update reads each source once and takes its change since the last update. Heading
+ * sources give a heading; translation sources give a position in their own field frame along
+ * with the heading they measured it in, so their change can be turned into a robot-relative
+ * displacement regardless of how far their own heading has drifted. An {@link Odometry} can be a
+ * translation source directly, and is updated first.
+ *
+ * <p>The changes are fused by inverse-variance weighting. A source whose change is more than the
+ * outlier gate's number of standard deviations from the fused change is rejected and the change
+ * is fused again without it, until no source is rejected or one is left. The cost is bounded by
+ * the square of the number of sources, and updates don't allocate. The residual of each source
+ * from the fused change is kept for diagnostics. Two sources that disagree can only be told apart
+ * by their variances, so give a kind of measurement three sources where outliers matter.
+ *
+ * <pre>
+ * FusionOdometry odometry = new FusionOdometry(new Pose2d())
+ *         .setBeforeUpdate(pinpoint::update)
+ *         .addHeadingSource("imu", imu::getHeading, 1e-6)
+ *         .addHeadingSource("pinpoint", () -&gt; pinpoint.getHeading(AngleUnit.RADIANS), 4e-6)
+ *         .addTranslationSource("deadWheels", holonomicOdometry, 0.01)
+ *         .addTranslationSource("pinpoint", () -&gt; pinpoint.getPosX(DistanceUnit.INCH),
+ *                 () -&gt; pinpoint.getPosY(DistanceUnit.INCH),
+ *                 () -&gt; pinpoint.getHeading(AngleUnit.RADIANS), 0.01);
+ * </pre>
+ *
+ * <p>The sources should read through a bulk cache, which the {@code CommandScheduler} refreshes
+ * once per loop when bulk reading is set to manual, so that all sources see the same instant and
+ * each hub is read once.
+ */
+public class FusionOdometry extends Odometry {
+
+    private double x, y, heading;
+    private boolean poseDirty;
+    private boolean started;
+    private double outlierGate = 3.0;
+    private Runnable beforeUpdate;
+
+    // heading sources
+    private int headingCount;
+    private String[] headingNames = new String[0];
+    private DoubleSupplier[] m_headings = new DoubleSupplier[0];
+    private double[] headingVariances = new double[0];
+    private double[] prevHeadings = new double[0];
+    private double[] headingDeltas = new double[0];
+    private double[] headingResiduals = new double[0];
+    private boolean[] headingRejected = new boolean[0];
+
+    // translation sources
+    private int translationCount;
+    private String[] translationNames = new String[0];
+    private Odometry[] m_odometries = new Odometry[0];
+    private DoubleSupplier[] m_xs = new DoubleSupplier[0];
+    private DoubleSupplier[] m_ys = new DoubleSupplier[0];
+    private DoubleSupplier[] m_translationHeadings = new DoubleSupplier[0];
+    private double[] translationVariances = new double[0];
+    private double[] prevXs = new double[0];
+    private double[] prevYs = new double[0];
+    private double[] prevTranslationHeadings = new double[0];
+    private double[] deltaXs = new double[0];
+    private double[] deltaYs = new double[0];
+    private double[] translationResiduals = new double[0];
+    private boolean[] translationRejected = new boolean[0];
+
+    private double fusedX, fusedY;
+
+    public FusionOdometry(Pose2d initialPose) {
+        super(initialPose);
+        x = initialPose.getX();
+        y = initialPose.getY();
+        heading = initialPose.getHeading();
+    }
+
+    /**
+     * Adds a source of the robot's heading.
+     *
+     * @param name     the name of the source, for diagnostics
+     * @param heading  the heading, in radians
+     * @param variance the variance of the source's change in heading over one update, in
+     *                 radians squared
+     * @return this odometry, for chaining
+     */
+    public FusionOdometry addHeadingSource(String name, DoubleSupplier heading, double variance) {
+        requireNew(name, headingNames, headingCount, variance);
+        int i = headingCount++;
+        headingNames = Arrays.copyOf(headingNames, headingCount);
+        m_headings = Arrays.copyOf(m_headings, headingCount);
+        headingVariances = Arrays.copyOf(headingVariances, headingCount);
+        prevHeadings = Arrays.copyOf(prevHeadings, headingCount);
+        headingDeltas = Arrays.copyOf(headingDeltas, headingCount);
+        headingResiduals = Arrays.copyOf(headingResiduals, headingCount);
+        headingRejected = Arrays.copyOf(headingRejected, headingCount);
+        headingNames[i] = name;
+        m_headings[i] = heading;
+        headingVariances[i] = variance;
+        started = false;
+        return this;
+    }
+
+    /**
+     * Adds a source of the robot's translation.
+     *
+     * @param name     the name of the source, for diagnostics
+     * @param x        the x coordinate in the source's field frame
+     * @param y        the y coordinate in the source's field frame
+     * @param heading  the heading the source measures in, in radians
+     * @param variance the variance of each coordinate of the source's displacement over one
+     *                 update, in units squared
+     * @return this odometry, for chaining
+     */
+    public FusionOdometry addTranslationSource(String name, DoubleSupplier x, DoubleSupplier y,
+                                               DoubleSupplier heading, double variance) {
+        return addTranslationSource(name, null, x, y, heading, variance);
+    }
+
+    /**
+     * Adds an odometry as a source of the robot's translation. It is updated before every fused
+     * update, so it shouldn't be updated anywhere else.
+     *
+     * @param name     the name of the source, for diagnostics
+     * @param odometry the odometry, using its supplier version
+     * @param variance the variance of each coordinate of the source's displacement over one
+     *                 update, in units squared
+     * @return this odometry, for chaining
+     */
+    public FusionOdometry addTranslationSource(String name, Odometry odometry, double variance) {
+        return addTranslationSource(name, odometry, odometry::getX, odometry::getY,
+                odometry::getHeading, variance);
+    }
+
+    private FusionOdometry addTranslationSource(String name, Odometry odometry, DoubleSupplier x,
+                                                DoubleSupplier y, DoubleSupplier heading,
+                                                double variance) {
+        requireNew(name, translationNames, translationCount, variance);
+        int i = translationCount++;
+        translationNames = Arrays.copyOf(translationNames, translationCount);
+        m_odometries = Arrays.copyOf(m_odometries, translationCount);
+        m_xs = Arrays.copyOf(m_xs, translationCount);
+        m_ys = Arrays.copyOf(m_ys, translationCount);
+        m_translationHeadings = Arrays.copyOf(m_translationHeadings, translationCount);
+        translationVariances = Arrays.copyOf(translationVariances, translationCount);
+        prevXs = Arrays.copyOf(prevXs, translationCount);
+        prevYs = Arrays.copyOf(prevYs, translationCount);
+        prevTranslationHeadings = Arrays.copyOf(prevTranslationHeadings, translationCount);
+        deltaXs = Arrays.copyOf(deltaXs, translationCount);
+        deltaYs = Arrays.copyOf(deltaYs, translationCount);
+        translationResiduals = Arrays.copyOf(translationResiduals, translationCount);
+        translationRejected = Arrays.copyOf(translationRejected, translationCount);
+        translationNames[i] = name;
+        m_odometries[i] = odometry;
+        m_xs[i] = x;
+        m_ys[i] = y;
+        m_translationHeadings[i] = heading;
+        translationVariances[i] = variance;
+        started = false;
+        return this;
+    }
+
+    /**
+     * @param sigmas the number of standard deviations from the fused change beyond which a
+     *               source is rejected
+     * @return this odometry, for chaining
+     */
+    public FusionOdometry setOutlierGate(double sigmas) {
+        if (sigmas <= 0) {
+            throw new IllegalArgumentException("The outlier gate must be positive");
+        }
+        outlierGate = sigmas;
+        return this;
+    }
+
+    /**
+     * @param beforeUpdate an action run before the sources are read, such as updating a
+     *                     Pinpoint, or null
+     * @return this odometry, for chaining
+     */
+    public FusionOdometry setBeforeUpdate(Runnable beforeUpdate) {
+        this.beforeUpdate = beforeUpdate;
+        return this;
+    }
+
+    /**
+     * Reads every source once and integrates the fused change. The first update only records
+     * where the sources start.
+     */
+    @Override
+    public void updatePose() {
+        if (headingCount == 0 || translationCount == 0) {
+            throw new IllegalStateException("Fusion odometry requires a heading source and a translation source");
+        }
+        if (beforeUpdate != null) {
+            beforeUpdate.run();
+        }
+        for (int i = 0; i < translationCount; i++) {
+            if (m_odometries[i] != null) {
+                m_odometries[i].updatePose();
+            }
+        }
+
+        for (int i = 0; i < headingCount; i++) {
+            double sourceHeading = m_headings[i].getAsDouble();
+            headingDeltas[i] = MathUtility.normalizeRadians(sourceHeading - prevHeadings[i], false);
+            prevHeadings[i] = sourceHeading;
+        }
+        for (int i = 0; i < translationCount; i++) {
+            double sourceX = m_xs[i].getAsDouble();
+            double sourceY = m_ys[i].getAsDouble();
+            double sourceHeading = m_translationHeadings[i].getAsDouble();
+            double dx = sourceX - prevXs[i];
+            double dy = sourceY - prevYs[i];
+            // Into the robot frame at the middle of the step, in the source's own heading
+            double mid = prevTranslationHeadings[i]
+                    + MathUtility.normalizeRadians(sourceHeading - prevTranslationHeadings[i], false) / 2;
+            double cos = Math.cos(mid);
+            double sin = Math.sin(mid);
+            deltaXs[i] = dx * cos + dy * sin;
+            deltaYs[i] = -dx * sin + dy * cos;
+            prevXs[i] = sourceX;
+            prevYs[i] = sourceY;
+            prevTranslationHeadings[i] = sourceHeading;
+        }
+
+        if (!started) {
+            started = true;
+            return;
+        }
+
+        double dw = fuseHeading();
+        fuseTranslation();
+
+        double mid = heading + dw / 2;
+        double cos = Math.cos(mid);
+        double sin = Math.sin(mid);
+        x += fusedX * cos - fusedY * sin;
+        y += fusedX * sin + fusedY * cos;
+        heading = MathUtility.normalizeRadians(heading + dw, false);
+        poseDirty = true;
+    }
+
+    @Override
+    public void updatePose(Pose2d pose) {
+        robotPose = pose;
+        x = pose.getX();
+        y = pose.getY();
+        heading = pose.getHeading();
+        poseDirty = false;
+    }
+
+    @Override
+    public Pose2d getPose() {
+        if (poseDirty) {
+            robotPose = new Pose2d(x, y, new Rotation2d(heading));
+            poseDirty = false;
+        }
+        return robotPose;
+    }
+
+    @Override
+    public double getX() {
+        return x;
+    }
+
+    @Override
+    public double getY() {
+        return y;
+    }
+
+    @Override
+    public double getHeading() {
+        return heading;
+    }
+
+    @Override
+    public void rotatePose(double byAngle) {
+        heading = MathUtility.normalizeRadians(heading + byAngle, false);
+        poseDirty = true;
+    }
+
+    /**
+     * @param name the name of a heading source
+     * @return the source's change in heading minus the fused change in the last update, in
+     * radians
+     */
+    public double getHeadingResidual(String name) {
+        return headingResiduals[indexOf(name, headingNames, headingCount)];
+    }
+
+    /**
+     * @param name the name of a heading source
+     * @return whether the source was rejected as an outlier in the last update
+     */
+    public boolean isHeadingRejected(String name) {
+        return headingRejected[indexOf(name, headingNames, headingCount)];
+    }
+
+    /**
+     * @param name the name of a translation source
+     * @return the distance between the source's displacement and the fused displacement in the
+     * last update
+     */
+    public double getTranslationResidual(String name) {
+        return translationResiduals[indexOf(name, translationNames, translationCount)];
+    }
+
+    /**
+     * @param name the name of a translation source
+     * @return whether the source was rejected as an outlier in the last update
+     */
+    public boolean isTranslationRejected(String name) {
+        return translationRejected[indexOf(name, translationNames, translationCount)];
+    }
+
+    private double fuseHeading() {
+        for (int i = 0; i < headingCount; i++) {
+            headingRejected[i] = false;
+        }
+        double fused;
+        int accepted = headingCount;
+        while (true) {
+            double sum = 0;
+            double sumWeights = 0;
+            for (int i = 0; i < headingCount; i++) {
+                if (!headingRejected[i]) {
+                    sum += headingDeltas[i] / headingVariances[i];
+                    sumWeights += 1 / headingVariances[i];
+                }
+            }
+            fused = sum / sumWeights;
+
+            int worst = -1;
+            double worstDeviation = outlierGate;
+            for (int i = 0; i < headingCount; i++) {
+                double deviation = Math.abs(headingDeltas[i] - fused) / Math.sqrt(headingVariances[i]);
+                if (!headingRejected[i] && deviation > worstDeviation) {
+                    worst = i;
+                    worstDeviation = deviation;
+                }
+            }
+            if (worst == -1 || accepted == 1) {
+                break;
+            }
+            headingRejected[worst] = true;
+            accepted--;
+        }
+        for (int i = 0; i < headingCount; i++) {
+            headingResiduals[i] = headingDeltas[i] - fused;
+        }
+        return fused;
+    }
+
+    private void fuseTranslation() {
+        for (int i = 0; i < translationCount; i++) {
+            translationRejected[i] = false;
+        }
+        int accepted = translationCount;
+        while (true) {
+            double sumX = 0;
+            double sumY = 0;
+            double sumWeights = 0;
+            for (int i = 0; i < translationCount; i++) {
+                if (!translationRejected[i]) {
+                    sumX += deltaXs[i] / translationVariances[i];
+                    sumY += deltaYs[i] / translationVariances[i];
+                    sumWeights += 1 / translationVariances[i];
+                }
+            }
+            fusedX = sumX / sumWeights;
+            fusedY = sumY / sumWeights;
+
+            int worst = -1;
+            double worstDeviation = outlierGate;
+            for (int i = 0; i < translationCount; i++) {
+                double deviation = Math.hypot(deltaXs[i] - fusedX, deltaYs[i] - fusedY)
+                        / Math.sqrt(translationVariances[i]);
+                if (!translationRejected[i] && deviation > worstDeviation) {
+                    worst = i;
+                    worstDeviation = deviation;
+                }
+            }
+            if (worst == -1 || accepted == 1) {
+                break;
+            }
+            translationRejected[worst] = true;
+            accepted--;
+        }
+        for (int i = 0; i < translationCount; i++) {
+            translationResiduals[i] = Math.hypot(deltaXs[i] - fusedX, deltaYs[i] - fusedY);
+        }
+    }
+
+    private static void requireNew(String name, String[] names, int count, double variance) {
+        if (variance <= 0) {
+            throw new IllegalArgumentException("The variance of a source must be positive");
+        }
+        for (int i = 0; i < count; i++) {
+            if (names[i].equals(name)) {
+                throw new IllegalArgumentException("A source named " + name + " was already added");
+            }
+        }
+    }
+
+    private static int indexOf(String name, String[] names, int count) {
+        for (int i = 0; i < count; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("There is no source named " + name);
+    }
+
+}
@@ -1,19 +1,37 @@
 package org.firstinspires.ftc.library.kinematics;
 
+import org.firstinspires.ftc.library.math.MathUtility;
 import org.firstinspires.ftc.library.math.geometry.Pose2d;
 import org.firstinspires.ftc.library.math.geometry.Rotation2d;
-import org.firstinspires.ftc.library.math.geometry.Twist2d;
 
 import java.util.function.DoubleSupplier;
 
+/**
+ * Odometry for three dead wheels: two parallel wheels a track width apart and a perpendicular
+ * wheel a center wheel offset behind the center of rotation.
+ *
+ * <p>Each update integrates the wheel deltas along a constant-curvature arc (the pose
+ * exponential), which stays exact during fast turns where a straight-line step would drift. The
+ * integration works on primitive fields and does not allocate; the {@link Pose2d} is only built
+ * when {@link #getPose()} is called. Use an {@link OdometryThread} to run the updates faster than
+ * the main loop.
+ *
+ * <p>An IMU heading can optionally be fused with the heading from the encoders, see
+ * {@link #setImuHeading(DoubleSupplier, double)}.
+ */
 public class HolonomicOdometry extends Odometry {
 
     private double prevLeftEncoder, prevRightEncoder, prevHorizontalEncoder;
-    private Rotation2d previousAngle;
+    private double prevImuHeading;
     private double centerWheelOffset;
 
+    private double x, y, heading;
+    private boolean poseDirty;
+
     // the suppliers
     DoubleSupplier m_left, m_right, m_horizontal;
+    DoubleSupplier m_imuHeading;
+    private double imuWeight;
 
     public HolonomicOdometry(DoubleSupplier leftEncoder, DoubleSupplier rightEncoder,
                              DoubleSupplier horizontalEncoder, double trackWidth, double centerWheelOffset) {
@@ -25,14 +43,72 @@ public class HolonomicOdometry extends Odometry {
 
     public HolonomicOdometry(Pose2d initialPose, double trackwidth, double centerWheelOffset) {
         super(initialPose, trackwidth);
-        previousAngle = initialPose.getRotation();
         this.centerWheelOffset = centerWheelOffset;
+        x = initialPose.getX();
+        y = initialPose.getY();
+        heading = initialPose.getHeading();
     }
 
     public HolonomicOdometry(double trackwidth, double centerWheelOffset) {
         this(new Pose2d(), trackwidth, centerWheelOffset);
     }
 
+    /**
+     * Fuses an IMU heading into the odometry. Each update, the change in heading is a weighted
+     * blend of the IMU's change and the encoders' change.
+     *
+     * @param imuHeading the IMU heading in radians, or null to use only the encoders
+     * @param weight     the weight of the IMU, from 0 (encoders only) to 1 (IMU only)
+     */
+    public void setImuHeading(DoubleSupplier imuHeading, double weight) {
+        if (weight < 0 || weight > 1) {
+            throw new IllegalArgumentException("IMU weight must be between 0 and 1");
+        }
+        m_imuHeading = imuHeading;
+        imuWeight = weight;
+        if (imuHeading != null) {
+            prevImuHeading = imuHeading.getAsDouble();
+        }
+    }
+
+    /**
+     * Changes the track width, such as to one estimated by an {@link OdometryCalibrator}. Takes
+     * effect from the next update.
+     *
+     * @param trackWidth the distance between the parallel wheels
+     */
+    public void setTrackWidth(double trackWidth) {
+        if (trackWidth <= 0) {
+            throw new IllegalArgumentException("Track width must be positive");
+        }
+        this.trackWidth = trackWidth;
+    }
+
+    /**
+     * @return the distance between the parallel wheels
+     */
+    public double getTrackWidth() {
+        return trackWidth;
+    }
+
+    /**
+     * Changes the center wheel offset, such as to one estimated by an
+     * {@link OdometryCalibrator}. Takes effect from the next update.
+     *
+     * @param centerWheelOffset the distance of the perpendicular wheel behind the center of
+     *                          rotation
+     */
+    public void setCenterWheelOffset(double centerWheelOffset) {
+        this.centerWheelOffset = centerWheelOffset;
+    }
+
+    /**
+     * @return the distance of the perpendicular wheel behind the center of rotation
+     */
+    public double getCenterWheelOffset() {
+        return centerWheelOffset;
+    }
+
     /**
      * This handles all the calculations for you.
      */
@@ -43,12 +119,18 @@ public class HolonomicOdometry extends Odometry {
 
     @Override
     public void updatePose(Pose2d pose) {
-        previousAngle = pose.getRotation();
         robotPose = pose;
+        x = pose.getX();
+        y = pose.getY();
+        heading = pose.getHeading();
+        poseDirty = false;
 
         prevLeftEncoder = 0;
         prevRightEncoder = 0;
         prevHorizontalEncoder = 0;
+        if (m_imuHeading != null) {
+            prevImuHeading = m_imuHeading.getAsDouble();
+        }
     }
 
     public void update(double leftEncoderPos, double rightEncoderPos, double horizontalEncoderPos) {
@@ -56,28 +138,71 @@ public class HolonomicOdometry extends Odometry {
         double deltaRightEncoder = rightEncoderPos - prevRightEncoder;
         double deltaHorizontalEncoder = horizontalEncoderPos - prevHorizontalEncoder;
 
-        Rotation2d angle = previousAngle.plus(
-                new Rotation2d(
-                        (deltaLeftEncoder - deltaRightEncoder) / trackWidth
-                )
-        );
-
         prevLeftEncoder = leftEncoderPos;
         prevRightEncoder = rightEncoderPos;
         prevHorizontalEncoder = horizontalEncoderPos;
 
-        double dw = (angle.minus(previousAngle).getRadians());
+        double dw = (deltaLeftEncoder - deltaRightEncoder) / trackWidth;
+        if (m_imuHeading != null) {
+            double imuHeading = m_imuHeading.getAsDouble();
+            double imuDelta = MathUtility.normalizeRadians(imuHeading - prevImuHeading, false);
+            prevImuHeading = imuHeading;
+            dw = imuWeight * imuDelta + (1 - imuWeight) * dw;
+        }
 
         double dx = (deltaLeftEncoder + deltaRightEncoder) / 2;
         double dy = deltaHorizontalEncoder - (centerWheelOffset * dw);
 
-        Twist2d twist2d = new Twist2d(dx, dy, dw);
+        // Pose exponential, see Pose2d.exp
+        double s;
+        double c;
+        if (Math.abs(dw) < 1E-9) {
+            s = 1.0 - 1.0 / 6.0 * dw * dw;
+            c = 0.5 * dw;
+        } else {
+            s = Math.sin(dw) / dw;
+            c = (1 - Math.cos(dw)) / dw;
+        }
+        double localX = dx * s - dy * c;
+        double localY = dx * c + dy * s;
+
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+        x += localX * cos - localY * sin;
+        y += localX * sin + localY * cos;
+        heading = MathUtility.normalizeRadians(heading + dw, false);
+
+        poseDirty = true;
+    }
 
-        Pose2d newPose = robotPose.exp(twist2d);
+    @Override
+    public Pose2d getPose() {
+        if (poseDirty) {
+            robotPose = new Pose2d(x, y, new Rotation2d(heading));
+            poseDirty = false;
+        }
+        return robotPose;
+    }
 
-        previousAngle = angle;
+    @Override
+    public double getX() {
+        return x;
+    }
+
+    @Override
+    public double getY() {
+        return y;
+    }
 
-        robotPose = new Pose2d(newPose.getTranslation(), angle);
+    @Override
+    public double getHeading() {
+        return heading;
+    }
+
+    @Override
+    public void rotatePose(double byAngle) {
+        heading = MathUtility.normalizeRadians(heading + byAngle, false);
+        poseDirty = true;
     }
 
 }
@@ -42,6 +42,27 @@ public abstract class Odometry {
         return robotPose;
     }
 
+    /**
+     * @return the x coordinate of the robot
+     */
+    public double getX() {
+        return getPose().getX();
+    }
+
+    /**
+     * @return the y coordinate of the robot
+     */
+    public double getY() {
+        return getPose().getY();
+    }
+
+    /**
+     * @return the heading of the robot in radians
+     */
+    public double getHeading() {
+        return getPose().getHeading();
+    }
+
     /**
      * Rotates the position of the robot by a given angle
      *
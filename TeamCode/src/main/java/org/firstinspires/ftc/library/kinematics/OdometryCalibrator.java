@@ -0,0 +1,313 @@
+package org.firstinspires.ftc.library.kinematics;
+
+import org.firstinspires.ftc.library.math.MathUtility;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * Estimates the track width and center wheel offset of three dead wheels while the robot drives
+ * normally, by comparing the wheel deltas to the IMU's change in heading. This replaces repeated
+ * calibration runs and follows the geometry as the wheels wear.
+ *
+ * <p>Each update takes the change of every encoder and of the IMU heading dθ. For rigid wheels
+ * that don't slip, the difference of the parallel wheels is {@code trackWidth * dθ} whatever the
+ * robot's translation, and the perpendicular wheel reads {@code centerWheelOffset * dθ} plus the
+ * robot's strafe. Both parameters are fitted by recursive least squares with a forgetting factor,
+ * so old samples fade out and the estimates follow slow changes.
+ *
+ * <p>The strafe can't be told apart from the offset by the sensors alone, so the offset only
+ * learns from samples where the robot is mostly turning, judged by the parallel wheels' forward
+ * travel. Strafing while turning in place, such as orbiting a target, biases it. Samples with too
+ * little turning are skipped for both parameters, as the IMU's noise would dominate them.
+ *
+ * <p>The heading must increase in the same direction as {@link HolonomicOdometry}'s, which turns
+ * towards the right wheel when the left wheel travels further.
+ *
+ * <pre>
+ * OdometryCalibrator calibrator = new OdometryCalibrator(left::getDistance,
+ *         right::getDistance, horizontal::getDistance, imu::getHeading, 13.5, 2.0);
+ *
+ * // every loop
+ * calibrator.update();
+ * if (calibrator.isConverged()) {
+ *     calibrator.applyTo(odometry);
+ * }
+ * </pre>
+ */
+public class OdometryCalibrator {
+
+    private final DoubleSupplier m_left, m_right, m_horizontal, m_imuHeading;
+
+    private double forgettingFactor = 0.999;
+    private double minTurn = 0.002;
+    private double maxTranslationRatio = 0.25;
+    private int minSamples = 50;
+    private double tolerance = 0.01;
+
+    private final Estimate trackWidth = new Estimate();
+    private final Estimate centerWheelOffset = new Estimate();
+
+    private double prevLeft, prevRight, prevHorizontal, prevImuHeading;
+    private boolean started;
+
+    /**
+     * Creates a calibrator that reads its sensors itself, see {@link #update()}.
+     *
+     * @param leftEncoder       the distance of the left parallel wheel
+     * @param rightEncoder      the distance of the right parallel wheel
+     * @param horizontalEncoder the distance of the perpendicular wheel
+     * @param imuHeading        the IMU heading, in radians
+     * @param trackWidth        the initial guess of the track width
+     * @param centerWheelOffset the initial guess of the center wheel offset
+     */
+    public OdometryCalibrator(DoubleSupplier leftEncoder, DoubleSupplier rightEncoder,
+                              DoubleSupplier horizontalEncoder, DoubleSupplier imuHeading,
+                              double trackWidth, double centerWheelOffset) {
+        m_left = leftEncoder;
+        m_right = rightEncoder;
+        m_horizontal = horizontalEncoder;
+        m_imuHeading = imuHeading;
+        reset(trackWidth, centerWheelOffset);
+    }
+
+    /**
+     * Creates a calibrator that is given its readings, see
+     * {@link #update(double, double, double, double)}.
+     *
+     * @param trackWidth        the initial guess of the track width
+     * @param centerWheelOffset the initial guess of the center wheel offset
+     */
+    public OdometryCalibrator(double trackWidth, double centerWheelOffset) {
+        this(null, null, null, null, trackWidth, centerWheelOffset);
+    }
+
+    /**
+     * Sets how quickly old samples are forgotten. The estimates average over roughly
+     * {@code 1 / (1 - factor)} samples.
+     *
+     * @param factor the weight kept by the previous samples at each sample, from 0.9 to 1, where 1
+     *               never forgets
+     * @return this calibrator, for chaining
+     */
+    public OdometryCalibrator setForgettingFactor(double factor) {
+        if (factor < 0.9 || factor > 1) {
+            throw new IllegalArgumentException("The forgetting factor must be between 0.9 and 1");
+        }
+        forgettingFactor = factor;
+        return this;
+    }
+
+    /**
+     * Sets which samples are used.
+     *
+     * @param minTurn             the smallest change in heading, in radians, of a sample that is
+     *                            used
+     * @param maxTranslationRatio the largest forward travel of a sample used for the center wheel
+     *                            offset, as a fraction of the track width's arc over the turn
+     * @return this calibrator, for chaining
+     */
+    public OdometryCalibrator setSampleGate(double minTurn, double maxTranslationRatio) {
+        if (minTurn < 0 || maxTranslationRatio < 0) {
+            throw new IllegalArgumentException("The sample gate can't be negative");
+        }
+        this.minTurn = minTurn;
+        this.maxTranslationRatio = maxTranslationRatio;
+        return this;
+    }
+
+    /**
+     * Sets when the estimates are considered converged.
+     *
+     * @param minSamples the number of samples each estimate needs
+     * @param tolerance  the largest standard deviation of the track width, as a fraction of it;
+     *                   the center wheel offset's standard deviation must be within the same
+     *                   distance
+     * @return this calibrator, for chaining
+     */
+    public OdometryCalibrator setConvergence(int minSamples, double tolerance) {
+        if (minSamples < 1 || tolerance <= 0) {
+            throw new IllegalArgumentException("The convergence criteria must be positive");
+        }
+        this.minSamples = minSamples;
+        this.tolerance = tolerance;
+        return this;
+    }
+
+    /**
+     * Starts over from new guesses. The next update only takes its readings as the reference.
+     *
+     * @param trackWidth        the initial guess of the track width
+     * @param centerWheelOffset the initial guess of the center wheel offset
+     */
+    public void reset(double trackWidth, double centerWheelOffset) {
+        if (trackWidth <= 0) {
+            throw new IllegalArgumentException("Track width must be positive");
+        }
+        this.trackWidth.reset(trackWidth);
+        this.centerWheelOffset.reset(centerWheelOffset);
+        started = false;
+    }
+
+    /**
+     * Reads the suppliers and updates the estimates.
+     */
+    public void update() {
+        update(m_left.getAsDouble(), m_right.getAsDouble(), m_horizontal.getAsDouble(),
+                m_imuHeading.getAsDouble());
+    }
+
+    /**
+     * Updates the estimates from new readings.
+     *
+     * @param leftEncoderPos       the distance of the left parallel wheel
+     * @param rightEncoderPos      the distance of the right parallel wheel
+     * @param horizontalEncoderPos the distance of the perpendicular wheel
+     * @param imuHeading           the IMU heading, in radians
+     */
+    public void update(double leftEncoderPos, double rightEncoderPos, double horizontalEncoderPos,
+                       double imuHeading) {
+        double deltaLeft = leftEncoderPos - prevLeft;
+        double deltaRight = rightEncoderPos - prevRight;
+        double deltaHorizontal = horizontalEncoderPos - prevHorizontal;
+        double dTheta = MathUtility.normalizeRadians(imuHeading - prevImuHeading, false);
+        prevLeft = leftEncoderPos;
+        prevRight = rightEncoderPos;
+        prevHorizontal = horizontalEncoderPos;
+        prevImuHeading = imuHeading;
+        if (!started) {
+            started = true;
+            return;
+        }
+        if (Math.abs(dTheta) < minTurn) {
+            return;
+        }
+
+        trackWidth.update(dTheta, deltaLeft - deltaRight, forgettingFactor);
+
+        double forward = (deltaLeft + deltaRight) / 2;
+        if (Math.abs(forward) <= maxTranslationRatio * Math.abs(dTheta) * trackWidth.value / 2) {
+            centerWheelOffset.update(dTheta, deltaHorizontal, forgettingFactor);
+        }
+    }
+
+    /**
+     * Sets the odometry's track width and center wheel offset to the estimates.
+     *
+     * @param odometry the odometry to calibrate
+     */
+    public void applyTo(HolonomicOdometry odometry) {
+        odometry.setTrackWidth(trackWidth.value);
+        odometry.setCenterWheelOffset(centerWheelOffset.value);
+    }
+
+    /**
+     * @return the estimated track width
+     */
+    public double getTrackWidth() {
+        return trackWidth.value;
+    }
+
+    /**
+     * @return the estimated center wheel offset
+     */
+    public double getCenterWheelOffset() {
+        return centerWheelOffset.value;
+    }
+
+    /**
+     * @return the standard deviation of the track width estimate, or infinity before two samples
+     */
+    public double getTrackWidthStdDev() {
+        return trackWidth.stdDev();
+    }
+
+    /**
+     * @return the standard deviation of the center wheel offset estimate, or infinity before two
+     * samples
+     */
+    public double getCenterWheelOffsetStdDev() {
+        return centerWheelOffset.stdDev();
+    }
+
+    /**
+     * @return the root mean square of the recent prediction errors of the parallel wheels'
+     * difference, in distance per sample
+     */
+    public double getTrackWidthResidual() {
+        return Math.sqrt(trackWidth.residualVariance);
+    }
+
+    /**
+     * @return the root mean square of the recent prediction errors of the perpendicular wheel, in
+     * distance per sample
+     */
+    public double getCenterWheelOffsetResidual() {
+        return Math.sqrt(centerWheelOffset.residualVariance);
+    }
+
+    /**
+     * @return the number of samples the track width was fitted to
+     */
+    public int getTrackWidthSamples() {
+        return trackWidth.samples;
+    }
+
+    /**
+     * @return the number of samples the center wheel offset was fitted to
+     */
+    public int getCenterWheelOffsetSamples() {
+        return centerWheelOffset.samples;
+    }
+
+    /**
+     * @return whether both estimates have enough samples and are within the tolerance
+     */
+    public boolean isConverged() {
+        double limit = tolerance * trackWidth.value;
+        return trackWidth.samples >= minSamples && centerWheelOffset.samples >= minSamples
+                && trackWidth.stdDev() <= limit && centerWheelOffset.stdDev() <= limit;
+    }
+
+    /**
+     * Recursive least squares fit of one parameter, measurement = value * regressor.
+     */
+    private static class Estimate {
+        // large, so the initial guess is quickly outweighed by the samples
+        private static final double INITIAL_COVARIANCE = 1e6;
+
+        double value;
+        // covariance of the value, in units of the measurement noise variance
+        double covariance;
+        double residualVariance;
+        int samples;
+
+        void reset(double initialValue) {
+            value = initialValue;
+            covariance = INITIAL_COVARIANCE;
+            residualVariance = 0;
+            samples = 0;
+        }
+
+        void update(double regressor, double measurement, double forgettingFactor) {
+            double error = measurement - value * regressor;
+            double denominator = forgettingFactor + regressor * covariance * regressor;
+            double gain = covariance * regressor / denominator;
+            value += gain * error;
+            covariance = (covariance - gain * regressor * covariance) / forgettingFactor;
+
+            // The a priori error is larger than the noise by the denominator's share of the
+            // uncertainty in the value, so divide it back out. The first error is only against
+            // the initial guess.
+            double noise = error * error * forgettingFactor / denominator;
+            samples++;
+            if (samples > 1) {
+                residualVariance += Math.max(1.0 / (samples - 1), 1 - forgettingFactor)
+                        * (noise - residualVariance);
+            }
+        }
+
+        double stdDev() {
+            return samples < 2 ? Double.POSITIVE_INFINITY : Math.sqrt(covariance * residualVariance);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package org.firstinspires.ftc.library.kinematics;
+
+import org.firstinspires.ftc.library.math.geometry.Pose2d;
+import org.firstinspires.ftc.library.math.geometry.Rotation2d;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs an {@link Odometry} on a dedicated thread at a fixed rate, independent of the main loop.
+ *
+ * <p>Integrating odometry more often shortens each step, which reduces the integration error
+ * during fast turns. The latest pose is published as primitives behind a sequence counter, so
+ * the main loop always reads a consistent x, y and heading without locking or allocating.
+ *
+ * <p>While the thread runs it owns the odometry: read the pose from {@link #getPose()} rather than
+ * from the odometry, and don't call {@link Odometry#updatePose()} from the main loop (e.g. through
+ * an {@code OdometrySubsystem}). If the encoders are read through a bulk cache in manual mode,
+ * pass a {@code beforeUpdate} action that refreshes it, otherwise the thread will see the same
+ * cached values until the main loop clears the cache.
+ *
+ * <p>If an update throws, such as a hardware read failing, the thread stops and
+ * {@link #getPose(double[])} rethrows the exception instead of returning the stale pose.
+ */
+public class OdometryThread {
+    private final Odometry m_odometry;
+    private final Runnable m_beforeUpdate;
+    private final long m_periodNanos;
+
+    private Thread m_thread;
+    private volatile boolean m_running;
+    private volatile RuntimeException m_error;
+
+    // Seqlock: odd while the writer is publishing
+    private volatile long m_sequence;
+    private volatile double m_x, m_y, m_heading;
+    private volatile long m_timestampNanos;
+    private volatile double m_frequency;
+    private PoseHistory m_history;
+
+    /**
+     * @param odometry  the odometry to update, using its supplier version
+     * @param frequency the update rate, in hertz
+     */
+    public OdometryThread(Odometry odometry, double frequency) {
+        this(odometry, frequency, null);
+    }
+
+    /**
+     * @param odometry     the odometry to update, using its supplier version
+     * @param frequency    the update rate, in hertz
+     * @param beforeUpdate an action run before every update, such as clearing the bulk cache, or
+     *                     null
+     */
+    public OdometryThread(Odometry odometry, double frequency, Runnable beforeUpdate) {
+        if (frequency <= 0) {
+            throw new IllegalArgumentException("Odometry frequency must be positive");
+        }
+        m_odometry = odometry;
+        m_beforeUpdate = beforeUpdate;
+        m_periodNanos = (long) (1E9 / frequency);
+        publish(System.nanoTime());
+    }
+
+    /**
+     * Starts the thread, clearing the exception it stopped with, if any. Does nothing if it is
+     * already running.
+     */
+    public synchronized void start() {
+        if (m_running) {
+            return;
+        }
+        m_running = true;
+        m_error = null;
+        m_thread = new Thread(this::run, "OdometryThread");
+        m_thread.setDaemon(true);
+        m_thread.setPriority(Thread.MAX_PRIORITY);
+        m_thread.start();
+    }
+
+    /**
+     * Stops the thread and waits for it to finish its current update.
+     */
+    public synchronized void stop() {
+        m_running = false;
+        if (m_thread != null) {
+            m_thread.interrupt();
+            try {
+                m_thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            m_thread = null;
+        }
+    }
+
+    /**
+     * Records every published pose into a history, which the update thread then writes. Set it
+     * before starting the thread.
+     *
+     * @param history the history, or null to stop recording
+     */
+    public synchronized void setPoseHistory(PoseHistory history) {
+        if (m_running) {
+            throw new IllegalStateException("The pose history must be set while the odometry thread is stopped");
+        }
+        m_history = history;
+    }
+
+    /**
+     * @return whether the thread is running, false once it stopped because an update threw
+     */
+    public boolean isRunning() {
+        return m_running;
+    }
+
+    /**
+     * @return the exception that stopped the thread, or null
+     */
+    public RuntimeException getError() {
+        return m_error;
+    }
+
+    private void run() {
+        long next = System.nanoTime();
+        long last = next;
+        try {
+            while (m_running && !Thread.currentThread().isInterrupted()) {
+                if (m_beforeUpdate != null) {
+                    m_beforeUpdate.run();
+                }
+                m_odometry.updatePose();
+
+                long now = System.nanoTime();
+                publish(now);
+                if (now > last) {
+                    m_frequency = 1E9 / (now - last);
+                }
+                last = now;
+
+                next += m_periodNanos;
+                long remaining = next - System.nanoTime();
+                if (remaining > 0) {
+                    LockSupport.parkNanos(remaining);
+                } else {
+                    // Fell behind, don't try to catch up with a burst of updates
+                    next = System.nanoTime();
+                }
+            }
+        } catch (RuntimeException e) {
+            m_error = e;
+        } finally {
+            m_running = false;
+        }
+    }
+
+    private void publish(long timestampNanos) {
+        // Read the odometry first, so a throwing getter can't leave the sequence odd
+        double x = m_odometry.getX();
+        double y = m_odometry.getY();
+        double heading = m_odometry.getHeading();
+        long sequence = m_sequence;
+        m_sequence = sequence + 1;
+        m_x = x;
+        m_y = y;
+        m_heading = heading;
+        m_timestampNanos = timestampNanos;
+        m_sequence = sequence + 2;
+        if (m_history != null) {
+            m_history.add(timestampNanos / 1E9, m_x, m_y, m_heading);
+        }
+    }
+
+    /**
+     * Resets the odometry to a pose. The odometry is reset on the caller's thread while the
+     * update thread is paused, so it is safe to call while running.
+     *
+     * @param pose the new pose
+     */
+    public synchronized void resetPose(Pose2d pose) {
+        boolean wasRunning = m_running;
+        stop();
+        m_odometry.updatePose(pose);
+        if (m_history != null) {
+            m_history.clear();
+        }
+        publish(System.nanoTime());
+        if (wasRunning) {
+            start();
+        }
+    }
+
+    /**
+     * Copies the latest pose into an array without allocating.
+     *
+     * @param out an array of at least three values, filled with x, y and heading in radians
+     * @return the time the pose was published, in {@link System#nanoTime()} nanoseconds
+     * @throws IllegalStateException if the thread stopped because an update threw, with that
+     *                               exception as the cause
+     */
+    public long getPose(double[] out) {
+        RuntimeException error = m_error;
+        if (error != null) {
+            throw new IllegalStateException("The odometry thread stopped because an update threw", error);
+        }
+        long sequence;
+        long timestamp;
+        do {
+            sequence = m_sequence;
+            out[0] = m_x;
+            out[1] = m_y;
+            out[2] = m_heading;
+            timestamp = m_timestampNanos;
+        } while ((sequence & 1) != 0 || sequence != m_sequence);
+        return timestamp;
+    }
+
+    /**
+     * @return the latest pose
+     * @throws IllegalStateException if the thread stopped because an update threw, with that
+     *                               exception as the cause
+     */
+    public Pose2d getPose() {
+        double[] pose = new double[3];
+        getPose(pose);
+        return new Pose2d(pose[0], pose[1], new Rotation2d(pose[2]));
+    }
+
+    /**
+     * @return the measured update rate, in hertz
+     */
+    public double getFrequency() {
+        return m_frequency;
+    }
+}
@@ -0,0 +1,371 @@
+package org.firstinspires.ftc.library.kinematics;
+
+import org.firstinspires.ftc.library.controller.PoseKalmanFilter;
+import org.firstinspires.ftc.library.math.geometry.Pose2d;
+import org.firstinspires.ftc.library.math.geometry.Twist2d;
+
+import java.util.Arrays;
+
+/**
+ * Fuses an {@link Odometry} with latency-compensated vision measurements.
+ *
+ * <p>Camera pipelines report a pose some tens of milliseconds after the frame was captured, and
+ * the robot has moved since. Applying the measurement as if it were current drags the estimate
+ * back to where the robot was, which shows up as jitter when driving fast. This estimator keeps a
+ * fixed-size history of timestamped odometry poses together with the state of a
+ * {@link PoseKalmanFilter}. A vision pose is applied at its capture time: the filter is rewound to
+ * the history entry just before it, advanced by the interpolated odometry up to the capture time,
+ * corrected, and then replayed forward through the newer odometry.
+ *
+ * <p>Cameras with different latencies deliver their frames out of order, so the accepted vision
+ * measurements are kept too, sorted by capture time, and the replay re-applies every one newer
+ * than the entry it starts from. A late frame then doesn't undo the corrections of frames
+ * captured after it. A measurement captured after the newest odometry is applied at the time of
+ * that odometry.
+ *
+ * <p>The starting pose carries an uncertainty, so vision can correct a wrongly seeded pose
+ * before the robot moves; see {@link PoseKalmanFilter} for how it grows afterwards.
+ *
+ * <p>Timestamps are in seconds on the {@link System#nanoTime()} clock, see {@link #now()}.
+ */
+public class PoseEstimator {
+    private final Odometry m_odometry;
+    private final PoseKalmanFilter m_filter;
+
+    private final Entry[] m_history;
+    private int m_start;
+    private int m_size;
+
+    // Accepted vision measurements within the history, oldest first, grown as needed
+    private Vision[] m_vision = new Vision[8];
+    private int m_visionCount;
+
+    private Pose2d m_lastOdometryPose;
+    private double m_lastTimestamp = Double.NaN;
+
+    // An odometry pose and the filter state after it was applied, before the vision measurements
+    // captured at the same time
+    private static final class Entry {
+        double timestamp;
+        Pose2d odometryPose;
+        final double[] state = new double[3];
+        final double[] covariance = new double[9];
+    }
+
+    private static final class Vision {
+        double timestamp;
+        Pose2d pose;
+        double xStdDev, yStdDev, headingStdDev;
+    }
+
+    /**
+     * Creates a pose estimator that keeps 50 history entries, a second of odometry at a 50 Hz loop,
+     * and gives the starting pose the default uncertainty of a {@link PoseKalmanFilter}.
+     *
+     * @param odometry                  the odometry to fuse, updated by this estimator
+     * @param translationStdDevPerMeter the odometry's translation drift, in meters per meter
+     * @param headingStdDevPerRadian    the odometry's heading drift, in radians per radian
+     */
+    public PoseEstimator(Odometry odometry, double translationStdDevPerMeter,
+                         double headingStdDevPerRadian) {
+        this(odometry, translationStdDevPerMeter, headingStdDevPerRadian, 50);
+    }
+
+    /**
+     * Creates a pose estimator whose starting pose has the default uncertainty of a
+     * {@link PoseKalmanFilter}.
+     *
+     * @param odometry                  the odometry to fuse, updated by this estimator
+     * @param translationStdDevPerMeter the odometry's translation drift, in meters per meter
+     * @param headingStdDevPerRadian    the odometry's heading drift, in radians per radian
+     * @param historySize               the number of odometry updates kept for replay; vision
+     *                                  older than the oldest entry is rejected
+     */
+    public PoseEstimator(Odometry odometry, double translationStdDevPerMeter,
+                         double headingStdDevPerRadian, int historySize) {
+        this(odometry, PoseKalmanFilter.DEFAULT_INITIAL_TRANSLATION_STD_DEV,
+                PoseKalmanFilter.DEFAULT_INITIAL_HEADING_STD_DEV, translationStdDevPerMeter,
+                headingStdDevPerRadian, historySize);
+    }
+
+    /**
+     * Creates a pose estimator.
+     *
+     * @param odometry                  the odometry to fuse, updated by this estimator
+     * @param initialTranslationStdDev  the standard deviation of the starting x and y; also used
+     *                                  by {@link #resetPose(Pose2d)}
+     * @param initialHeadingStdDev      the standard deviation of the starting heading, in radians;
+     *                                  also used by {@link #resetPose(Pose2d)}
+     * @param translationStdDevPerMeter the odometry's translation drift, in meters per meter
+     * @param headingStdDevPerRadian    the odometry's heading drift, in radians per radian
+     * @param historySize               the number of odometry updates kept for replay; vision
+     *                                  older than the oldest entry is rejected
+     */
+    public PoseEstimator(Odometry odometry, double initialTranslationStdDev,
+                         double initialHeadingStdDev, double translationStdDevPerMeter,
+                         double headingStdDevPerRadian, int historySize) {
+        if (historySize < 2) {
+            throw new IllegalArgumentException("PoseEstimator needs at least two history entries");
+        }
+        m_odometry = odometry;
+        m_lastOdometryPose = odometry.getPose();
+        m_filter = new PoseKalmanFilter(m_lastOdometryPose, initialTranslationStdDev,
+                initialHeadingStdDev, translationStdDevPerMeter, headingStdDevPerRadian);
+
+        m_history = new Entry[historySize];
+        for (int i = 0; i < historySize; i++) {
+            m_history[i] = new Entry();
+        }
+    }
+
+    /**
+     * @return the current time in seconds, on the same clock as vision capture timestamps
+     */
+    public static double now() {
+        return System.nanoTime() / 1E9;
+    }
+
+    /**
+     * Updates the odometry and advances the estimate. Call this once per loop.
+     *
+     * @return the estimated pose
+     */
+    public Pose2d update() {
+        return update(now());
+    }
+
+    /**
+     * Updates the odometry and advances the estimate.
+     *
+     * @param timestamp the time of the odometry reading, in seconds
+     * @return the estimated pose
+     */
+    public Pose2d update(double timestamp) {
+        m_odometry.updatePose();
+        Pose2d odometryPose = m_odometry.getPose();
+
+        double dt = Double.isNaN(m_lastTimestamp) ? 0 : timestamp - m_lastTimestamp;
+        m_filter.predict(m_lastOdometryPose.log(odometryPose), dt);
+        m_lastOdometryPose = odometryPose;
+        if (Double.isNaN(m_lastTimestamp) || timestamp > m_lastTimestamp) {
+            m_lastTimestamp = timestamp;
+        }
+
+        Entry entry;
+        if (m_size > 0 && timestamp <= entry(m_size - 1).timestamp) {
+            // Same or earlier timestamp, keep the history ordered by replacing the newest entry.
+            // The vision captured at its time is now part of its state and can't be replayed.
+            entry = entry(m_size - 1);
+            while (m_visionCount > 0 && m_vision[m_visionCount - 1].timestamp >= entry.timestamp) {
+                m_vision[--m_visionCount] = null;
+            }
+        } else if (m_size < m_history.length) {
+            entry = m_history[(m_start + m_size) % m_history.length];
+            m_size++;
+            entry.timestamp = timestamp;
+        } else {
+            entry = m_history[m_start];
+            m_start = (m_start + 1) % m_history.length;
+            entry.timestamp = timestamp;
+        }
+        entry.odometryPose = odometryPose;
+        save(entry);
+
+        return getEstimatedPose();
+    }
+
+    /**
+     * Applies a vision pose measurement at the time its frame was captured.
+     *
+     * @param visionPose       the measured field pose of the robot
+     * @param captureTimestamp the time the frame was captured, in seconds
+     * @param xStdDev          the standard deviation of the measured x
+     * @param yStdDev          the standard deviation of the measured y
+     * @param headingStdDev    the standard deviation of the measured heading, in radians
+     * @return false if the measurement is older than the history or was rejected as an outlier
+     */
+    public boolean addVisionMeasurement(Pose2d visionPose, double captureTimestamp,
+                                        double xStdDev, double yStdDev, double headingStdDev) {
+        if (m_size == 0 || captureTimestamp < entry(0).timestamp) {
+            return false;
+        }
+        captureTimestamp = Math.min(captureTimestamp, entry(m_size - 1).timestamp);
+
+        // Measurements older than the history are part of its oldest state
+        int expired = 0;
+        while (expired < m_visionCount && m_vision[expired].timestamp < entry(0).timestamp) {
+            expired++;
+        }
+        removeVision(0, expired);
+        int added = insertVision(visionPose, captureTimestamp, xStdDev, yStdDev, headingStdDev);
+
+        int index = floorIndex(captureTimestamp);
+        Entry floor = entry(index);
+        restore(floor);
+        int next = 0;
+        while (m_vision[next].timestamp < floor.timestamp) {
+            next++;
+        }
+
+        // Replay the odometry and the vision recorded since the floor entry in time order, an
+        // entry before the vision captured at its time
+        boolean accepted = true;
+        Pose2d previous = floor.odometryPose;
+        double previousTimestamp = floor.timestamp;
+        int i = index + 1;
+        while (i < m_size || next < m_visionCount) {
+            if (next < m_visionCount && (i == m_size || m_vision[next].timestamp < entry(i).timestamp)) {
+                Vision vision = m_vision[next];
+                if (i < m_size) {
+                    Pose2d odometryPose = interpolate(entry(i - 1), entry(i), vision.timestamp);
+                    m_filter.predict(previous.log(odometryPose), vision.timestamp - previousTimestamp);
+                    previous = odometryPose;
+                    previousTimestamp = vision.timestamp;
+                }
+                boolean corrected = m_filter.correct(vision.pose, vision.xStdDev, vision.yStdDev,
+                        vision.headingStdDev);
+                if (next == added) {
+                    accepted = corrected;
+                }
+                next++;
+            } else {
+                Entry entry = entry(i);
+                m_filter.predict(previous.log(entry.odometryPose), entry.timestamp - previousTimestamp);
+                save(entry);
+                previous = entry.odometryPose;
+                previousTimestamp = entry.timestamp;
+                i++;
+            }
+        }
+        if (!accepted) {
+            removeVision(added, 1);
+        }
+        return accepted;
+    }
+
+    /**
+     * Resets the odometry and the estimate to a pose with the starting uncertainty, and clears
+     * the history.
+     *
+     * @param pose the new pose of the robot
+     */
+    public void resetPose(Pose2d pose) {
+        m_filter.resetPose(pose);
+        resetHistory(pose);
+    }
+
+    /**
+     * Resets the odometry and the estimate to a pose and clears the history.
+     *
+     * @param pose              the new pose of the robot
+     * @param translationStdDev the standard deviation of its x and y
+     * @param headingStdDev     the standard deviation of its heading, in radians
+     */
+    public void resetPose(Pose2d pose, double translationStdDev, double headingStdDev) {
+        m_filter.resetPose(pose, translationStdDev, headingStdDev);
+        resetHistory(pose);
+    }
+
+    private void resetHistory(Pose2d pose) {
+        m_odometry.updatePose(pose);
+        m_lastOdometryPose = m_odometry.getPose();
+        m_lastTimestamp = Double.NaN;
+        m_start = 0;
+        m_size = 0;
+        Arrays.fill(m_vision, 0, m_visionCount, null);
+        m_visionCount = 0;
+    }
+
+    /**
+     * Sets the squared Mahalanobis distance above which vision measurements are rejected.
+     *
+     * @param threshold the rejection threshold, e.g. 11.34 for 99% confidence
+     */
+    public void setOutlierThreshold(double threshold) {
+        m_filter.setOutlierThreshold(threshold);
+    }
+
+    /**
+     * @return the fused pose of the robot
+     */
+    public Pose2d getEstimatedPose() {
+        return m_filter.getPose();
+    }
+
+    /**
+     * @return the raw odometry pose
+     */
+    public Pose2d getOdometryPose() {
+        return m_lastOdometryPose;
+    }
+
+    // Returns the entry at a chronological index, 0 being the oldest
+    private Entry entry(int index) {
+        return m_history[(m_start + index) % m_history.length];
+    }
+
+    // Returns the chronological index of the newest entry at or before the timestamp
+    private int floorIndex(double timestamp) {
+        int low = 0;
+        int high = m_size - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (entry(mid).timestamp <= timestamp) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    // The odometry pose at a time between two entries
+    private static Pose2d interpolate(Entry from, Entry to, double timestamp) {
+        if (to.timestamp <= from.timestamp) {
+            return from.odometryPose;
+        }
+        double fraction = (timestamp - from.timestamp) / (to.timestamp - from.timestamp);
+        Twist2d twist = from.odometryPose.log(to.odometryPose);
+        return from.odometryPose.exp(new Twist2d(
+                twist.dx * fraction, twist.dy * fraction, twist.dtheta * fraction));
+    }
+
+    // Inserts a vision measurement after those captured at the same time, and returns its index
+    private int insertVision(Pose2d pose, double timestamp, double xStdDev, double yStdDev,
+                             double headingStdDev) {
+        if (m_visionCount == m_vision.length) {
+            m_vision = Arrays.copyOf(m_vision, m_visionCount * 2);
+        }
+        int index = m_visionCount;
+        while (index > 0 && m_vision[index - 1].timestamp > timestamp) {
+            index--;
+        }
+        System.arraycopy(m_vision, index, m_vision, index + 1, m_visionCount - index);
+        m_visionCount++;
+
+        Vision vision = new Vision();
+        m_vision[index] = vision;
+        vision.timestamp = timestamp;
+        vision.pose = pose;
+        vision.xStdDev = xStdDev;
+        vision.yStdDev = yStdDev;
+        vision.headingStdDev = headingStdDev;
+        return index;
+    }
+
+    private void removeVision(int index, int count) {
+        System.arraycopy(m_vision, index + count, m_vision, index, m_visionCount - index - count);
+        Arrays.fill(m_vision, m_visionCount - count, m_visionCount, null);
+        m_visionCount -= count;
+    }
+
+    private void save(Entry entry) {
+        System.arraycopy(m_filter.getFilter().getState().data, 0, entry.state, 0, 3);
+        System.arraycopy(m_filter.getFilter().getCovariance().data, 0, entry.covariance, 0, 9);
+    }
+
+    private void restore(Entry entry) {
+        System.arraycopy(entry.state, 0, m_filter.getFilter().getState().data, 0, 3);
+        System.arraycopy(entry.covariance, 0, m_filter.getFilter().getCovariance().data, 0, 9);
+    }
+}
@@ -0,0 +1,250 @@
+package org.firstinspires.ftc.library.kinematics;
+
+import org.firstinspires.ftc.library.math.MathUtility;
+import org.firstinspires.ftc.library.math.geometry.Pose2d;
+import org.firstinspires.ftc.library.math.geometry.Rotation2d;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size history of timestamped poses, for looking up where the robot was when a camera
+ * frame was captured or a game piece left the shooter.
+ *
+ * <p>Samples are kept as primitives in a ring buffer, so memory is bounded and neither recording
+ * nor querying allocates. A query finds the two samples around its timestamp by binary search and
+ * interpolates between them along the constant-curvature arc joining them (the pose logarithm and
+ * exponential), which stays accurate while the robot turns.
+ *
+ * <p>One thread records, such as the main loop or an {@link OdometryThread}, and any number of
+ * threads may query without locking. A query that raced with the recorder overwriting the samples
+ * it used is retried.
+ *
+ * <p>Timestamps are in seconds on the {@link System#nanoTime()} clock, see
+ * {@link PoseEstimator#now()}.
+ */
+public class PoseHistory {
+    private static final int FIELDS = 4;
+
+    private final int m_capacity;
+    // timestamp, x, y and heading of each slot, as raw long bits
+    private final AtomicLongArray m_samples;
+
+    // Sequence numbers of samples: every sample below m_written is complete, and the recorder may
+    // be writing m_writing. Only samples from m_first on are valid.
+    private volatile long m_written;
+    private volatile long m_writing;
+    private volatile long m_first;
+
+    /**
+     * @param capacity the number of samples kept; the oldest is overwritten when it is full
+     */
+    public PoseHistory(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("A pose history needs at least two samples");
+        }
+        m_capacity = capacity;
+        m_samples = new AtomicLongArray(capacity * FIELDS);
+    }
+
+    /**
+     * Records a pose. Only one thread may record.
+     *
+     * @param timestamp the time of the pose, in seconds
+     * @param x         the x coordinate
+     * @param y         the y coordinate
+     * @param heading   the heading, in radians
+     * @return false if the timestamp was not after the newest sample's, in which case the pose is
+     * not recorded
+     */
+    public boolean add(double timestamp, double x, double y, double heading) {
+        long sequence = m_written;
+        if (sequence > m_first && timestamp <= get(sequence - 1, 0)) {
+            return false;
+        }
+        m_writing = sequence;
+        int base = (int) (sequence % m_capacity) * FIELDS;
+        m_samples.set(base, Double.doubleToRawLongBits(timestamp));
+        m_samples.set(base + 1, Double.doubleToRawLongBits(x));
+        m_samples.set(base + 2, Double.doubleToRawLongBits(y));
+        m_samples.set(base + 3, Double.doubleToRawLongBits(heading));
+        m_written = sequence + 1;
+        return true;
+    }
+
+    /**
+     * Records a pose. Only one thread may record.
+     *
+     * @param timestamp the time of the pose, in seconds
+     * @param pose      the pose
+     * @return false if the timestamp was not after the newest sample's
+     */
+    public boolean add(double timestamp, Pose2d pose) {
+        return add(timestamp, pose.getX(), pose.getY(), pose.getHeading());
+    }
+
+    /**
+     * Forgets every sample, such as after the pose is reset. Only the recording thread may call
+     * this.
+     */
+    public void clear() {
+        m_first = m_written;
+    }
+
+    /**
+     * @return the number of samples held
+     */
+    public int size() {
+        return (int) Math.min(m_written - m_first, m_capacity);
+    }
+
+    /**
+     * @return the number of samples kept
+     */
+    public int getCapacity() {
+        return m_capacity;
+    }
+
+    /**
+     * Copies the newest sample into an array without allocating.
+     *
+     * @param out an array of at least three values, filled with x, y and heading in radians
+     * @return the timestamp of the sample, or NaN if the history is empty
+     */
+    public double getLatest(double[] out) {
+        while (true) {
+            long written = m_written;
+            if (written <= m_first) {
+                return Double.NaN;
+            }
+            long sequence = written - 1;
+            double timestamp = get(sequence, 0);
+            out[0] = get(sequence, 1);
+            out[1] = get(sequence, 2);
+            out[2] = get(sequence, 3);
+            if (isIntact(sequence)) {
+                return timestamp;
+            }
+        }
+    }
+
+    /**
+     * Looks up the pose at a time, interpolating between the samples around it, without
+     * allocating. A time after the newest sample gives the newest pose.
+     *
+     * @param timestamp the time, in seconds
+     * @param out       an array of at least three values, filled with x, y and heading in radians
+     * @return false if the history is empty or the time is before the oldest sample, in which
+     * case out is unchanged
+     */
+    public boolean sample(double timestamp, double[] out) {
+        while (true) {
+            long written = m_written;
+            long oldest = Math.max(m_first, written - m_capacity);
+            if (written <= oldest || timestamp < get(oldest, 0)) {
+                if (isIntact(oldest)) {
+                    return false;
+                }
+                continue;
+            }
+
+            // Newest sample at or before the timestamp
+            long low = oldest;
+            long high = written - 1;
+            while (low < high) {
+                long mid = (low + high + 1) >>> 1;
+                if (get(mid, 0) <= timestamp) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+
+            double t0 = get(low, 0);
+            double x0 = get(low, 1);
+            double y0 = get(low, 2);
+            double h0 = get(low, 3);
+            if (low == written - 1 || timestamp == t0) {
+                if (isIntact(low) && t0 <= timestamp) {
+                    out[0] = x0;
+                    out[1] = y0;
+                    out[2] = h0;
+                    return true;
+                }
+                continue;
+            }
+            double t1 = get(low + 1, 0);
+            double x1 = get(low + 1, 1);
+            double y1 = get(low + 1, 2);
+            double h1 = get(low + 1, 3);
+            // A sample overwritten during the search can misdirect it, so check that the samples
+            // used are intact and bracket the timestamp
+            if (!isIntact(low) || t0 > timestamp || t1 <= timestamp) {
+                continue;
+            }
+            interpolate(x0, y0, h0, x1, y1, h1, (timestamp - t0) / (t1 - t0), out);
+            return true;
+        }
+    }
+
+    /**
+     * Looks up the pose at a time, as {@link #sample(double, double[])} does.
+     *
+     * @param timestamp the time, in seconds
+     * @return the pose, or null if the history is empty or the time is before the oldest sample
+     */
+    public Pose2d sample(double timestamp) {
+        double[] pose = new double[3];
+        if (!sample(timestamp, pose)) {
+            return null;
+        }
+        return new Pose2d(pose[0], pose[1], new Rotation2d(pose[2]));
+    }
+
+    private double get(long sequence, int field) {
+        return Double.longBitsToDouble(m_samples.get((int) (sequence % m_capacity) * FIELDS + field));
+    }
+
+    // Whether the samples from a sequence number on were not overwritten while they were read,
+    // checked after reading them
+    private boolean isIntact(long sequence) {
+        return m_writing < sequence + m_capacity;
+    }
+
+    // Moves a fraction of the way from pose 0 to pose 1 along the arc between them, as
+    // Pose2d.exp(Pose2d.log(...) * fraction) does
+    private static void interpolate(double x0, double y0, double h0, double x1, double y1,
+                                    double h1, double fraction, double[] out) {
+        double cos0 = Math.cos(h0);
+        double sin0 = Math.sin(h0);
+        // Pose 1 relative to pose 0
+        double dx = (x1 - x0) * cos0 + (y1 - y0) * sin0;
+        double dy = -(x1 - x0) * sin0 + (y1 - y0) * cos0;
+        double dtheta = MathUtility.normalizeRadians(h1 - h0, false);
+
+        // Logarithm
+        double halfDtheta = dtheta / 2.0;
+        double cosMinusOne = Math.cos(dtheta) - 1;
+        double halfThetaByTanOfHalfDtheta = Math.abs(cosMinusOne) < 1E-9
+                ? 1.0 - 1.0 / 12.0 * dtheta * dtheta
+                : -(halfDtheta * Math.sin(dtheta)) / cosMinusOne;
+        double twistX = (dx * halfThetaByTanOfHalfDtheta + dy * halfDtheta) * fraction;
+        double twistY = (dy * halfThetaByTanOfHalfDtheta - dx * halfDtheta) * fraction;
+        double twistTheta = dtheta * fraction;
+
+        // Exponential
+        double s;
+        double c;
+        if (Math.abs(twistTheta) < 1E-9) {
+            s = 1.0 - 1.0 / 6.0 * twistTheta * twistTheta;
+            c = 0.5 * twistTheta;
+        } else {
+            s = Math.sin(twistTheta) / twistTheta;
+            c = (1 - Math.cos(twistTheta)) / twistTheta;
+        }
+        double localX = twistX * s - twistY * c;
+        double localY = twistX * c + twistY * s;
+        out[0] = x0 + localX * cos0 - localY * sin0;
+        out[1] = y0 + localX * sin0 + localY * cos0;
+        out[2] = MathUtility.normalizeRadians(h0 + twistTheta, false);
+    }
+}
@@ -84,10 +84,80 @@ public class ChassisSpeeds {
         );
     }
 
+    /**
+     * Converts field-relative speeds into robot-relative speeds, as
+     * {@link #fromFieldRelativeSpeeds(double, double, double, Rotation2d)} does, writing the result
+     * into a reusable ChassisSpeeds.
+     *
+     * @param vxMetersPerSecond     The component of speed in the x direction relative to the field.
+     * @param vyMetersPerSecond     The component of speed in the y direction relative to the field.
+     * @param omegaRadiansPerSecond The angular rate of the robot.
+     * @param robotAngle            The angle of the robot as measured by a gyroscope.
+     * @param out                   Receives the robot-relative speeds; may be reused every loop.
+     * @return out
+     */
+    public static ChassisSpeeds fromFieldRelativeSpeeds(
+            double vxMetersPerSecond, double vyMetersPerSecond,
+            double omegaRadiansPerSecond, Rotation2d robotAngle, ChassisSpeeds out) {
+        double cos = robotAngle.getCos();
+        double sin = robotAngle.getSin();
+        out.vxMetersPerSecond = vxMetersPerSecond * cos + vyMetersPerSecond * sin;
+        out.vyMetersPerSecond = -vxMetersPerSecond * sin + vyMetersPerSecond * cos;
+        out.omegaRadiansPerSecond = omegaRadiansPerSecond;
+        return out;
+    }
+
     public static ChassisSpeeds fromFieldRelativeSpeeds(ChassisSpeeds robotCentricSpeeds, Rotation2d robotAngle) {
         return fromFieldRelativeSpeeds(robotCentricSpeeds.vxMetersPerSecond, robotCentricSpeeds.vyMetersPerSecond, robotCentricSpeeds.omegaRadiansPerSecond, robotAngle);
     }
 
+    /**
+     * Corrects a chassis speed for the robot rotating during a loop period. Commanding a speed
+     * with both translation and rotation for a whole period makes the robot skew in the direction
+     * of rotation, because the translation is applied in a frame that rotates during the period.
+     * This returns the constant speed that, held for the period, ends at the pose the original
+     * speed describes.
+     *
+     * @param vxMetersPerSecond     Forward velocity.
+     * @param vyMetersPerSecond     Sideways velocity.
+     * @param omegaRadiansPerSecond Angular velocity.
+     * @param dtSeconds             The duration of the loop period.
+     * @param out                   Receives the discretized speed; may be reused every loop.
+     * @return out
+     */
+    public static ChassisSpeeds discretize(double vxMetersPerSecond, double vyMetersPerSecond,
+                                           double omegaRadiansPerSecond, double dtSeconds,
+                                           ChassisSpeeds out) {
+        double dx = vxMetersPerSecond * dtSeconds;
+        double dy = vyMetersPerSecond * dtSeconds;
+        double dtheta = omegaRadiansPerSecond * dtSeconds;
+
+        // The twist whose exponential is the pose (dx, dy, dtheta), as in Pose2d.log
+        double halfDtheta = dtheta / 2.0;
+        double cosMinusOne = Math.cos(dtheta) - 1;
+        double halfThetaByTanOfHalfDtheta = Math.abs(cosMinusOne) < 1E-9
+                ? 1.0 - 1.0 / 12.0 * dtheta * dtheta
+                : -(halfDtheta * Math.sin(dtheta)) / cosMinusOne;
+
+        out.vxMetersPerSecond = (dx * halfThetaByTanOfHalfDtheta + dy * halfDtheta) / dtSeconds;
+        out.vyMetersPerSecond = (dy * halfThetaByTanOfHalfDtheta - dx * halfDtheta) / dtSeconds;
+        out.omegaRadiansPerSecond = omegaRadiansPerSecond;
+        return out;
+    }
+
+    /**
+     * Corrects a chassis speed for the robot rotating during a loop period. See
+     * {@link #discretize(double, double, double, double, ChassisSpeeds)}.
+     *
+     * @param continuousSpeeds The speed to correct.
+     * @param dtSeconds        The duration of the loop period.
+     * @return The discretized speed.
+     */
+    public static ChassisSpeeds discretize(ChassisSpeeds continuousSpeeds, double dtSeconds) {
+        return discretize(continuousSpeeds.vxMetersPerSecond, continuousSpeeds.vyMetersPerSecond,
+                continuousSpeeds.omegaRadiansPerSecond, dtSeconds, new ChassisSpeeds());
+    }
+
     @Override
     public String toString() {
         return String.format("ChassisSpeeds(Vx: %.2f m/s, Vy: %.2f m/s, Omega: %.2f rad/s)",
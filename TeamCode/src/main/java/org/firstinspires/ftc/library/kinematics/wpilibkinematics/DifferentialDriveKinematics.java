@@ -0,0 +1,110 @@
+/*----------------------------------------------------------------------------*/
+/* Copyright (c) 2019 FIRST. All Rights Reserved.                             */
+/* Open Source Software - may be modified and shared by FRC teams. The code   */
+/* must be accompanied by the FIRST BSD license file in the root directory of */
+/* the project.                                                               */
+/*----------------------------------------------------------------------------*/
+
+package org.firstinspires.ftc.library.kinematics.wpilibkinematics;
+
+import org.firstinspires.ftc.library.math.MathUtility;
+
+/**
+ * Helper class that converts a chassis velocity (dx and dtheta components) to
+ * left and right wheel velocities for a differential drive.
+ *
+ * <p>Inverse kinematics converts a desired chassis speed into left and right
+ * velocity components whereas forward kinematics converts left and right
+ * component velocities into a linear and angular chassis speed.
+ *
+ * <p>The methods that take and fill {@code double[]} arrays, in the order left, right, don't
+ * allocate.
+ */
+@SuppressWarnings("MemberName")
+public class DifferentialDriveKinematics {
+    public final double trackWidthMeters;
+
+    /**
+     * Constructs a differential drive kinematics object.
+     *
+     * @param trackWidthMeters The track width of the drivetrain. Theoretically, this is
+     *                         the distance between the left wheels and right wheels.
+     *                         However, the empirical value may be larger than the physical
+     *                         measured value due to scrubbing effects.
+     */
+    public DifferentialDriveKinematics(double trackWidthMeters) {
+        if (trackWidthMeters <= 0) {
+            throw new IllegalArgumentException("The track width must be positive");
+        }
+        this.trackWidthMeters = trackWidthMeters;
+    }
+
+    /**
+     * Returns a chassis speed from left and right component velocities using
+     * forward kinematics.
+     *
+     * @param wheelSpeeds The left and right velocities.
+     * @return The chassis speed.
+     */
+    public ChassisSpeeds toChassisSpeeds(DifferentialDriveWheelSpeeds wheelSpeeds) {
+        return new ChassisSpeeds(
+                (wheelSpeeds.leftMetersPerSecond + wheelSpeeds.rightMetersPerSecond) / 2, 0,
+                (wheelSpeeds.rightMetersPerSecond - wheelSpeeds.leftMetersPerSecond) / trackWidthMeters);
+    }
+
+    /**
+     * Computes the chassis speed from left and right wheel velocities, writing it into a reusable
+     * ChassisSpeeds.
+     *
+     * @param wheelSpeeds the left and right velocities
+     * @param out         receives the chassis speed
+     * @return out
+     */
+    public ChassisSpeeds toChassisSpeeds(double[] wheelSpeeds, ChassisSpeeds out) {
+        out.vxMetersPerSecond = (wheelSpeeds[0] + wheelSpeeds[1]) / 2;
+        out.vyMetersPerSecond = 0;
+        out.omegaRadiansPerSecond = (wheelSpeeds[1] - wheelSpeeds[0]) / trackWidthMeters;
+        return out;
+    }
+
+    /**
+     * Returns left and right component velocities from a chassis speed using
+     * inverse kinematics. The sideways component of the chassis speed is ignored.
+     *
+     * @param chassisSpeeds The linear and angular (dx and dtheta) components that
+     *                      represent the chassis' speed.
+     * @return The left and right velocities.
+     */
+    public DifferentialDriveWheelSpeeds toWheelSpeeds(ChassisSpeeds chassisSpeeds) {
+        double[] speeds = toWheelSpeeds(chassisSpeeds.vxMetersPerSecond,
+                chassisSpeeds.omegaRadiansPerSecond, new double[2]);
+        return new DifferentialDriveWheelSpeeds(speeds[0], speeds[1]);
+    }
+
+    /**
+     * Computes left and right wheel velocities into an array.
+     *
+     * @param vxMetersPerSecond     the forward velocity of the robot
+     * @param omegaRadiansPerSecond the angular velocity of the robot
+     * @param out                   receives the left and right velocities
+     * @return out
+     */
+    public double[] toWheelSpeeds(double vxMetersPerSecond, double omegaRadiansPerSecond,
+                                  double[] out) {
+        out[0] = vxMetersPerSecond - trackWidthMeters / 2 * omegaRadiansPerSecond;
+        out[1] = vxMetersPerSecond + trackWidthMeters / 2 * omegaRadiansPerSecond;
+        return out;
+    }
+
+    /**
+     * Normalizes left and right wheel speeds in place so neither is above a max speed, keeping
+     * their ratio and so the curvature the robot drives.
+     *
+     * @param speeds                            the left and right speeds; mutated with the
+     *                                          normalized speeds
+     * @param attainableMaxSpeedMetersPerSecond the absolute max speed that a wheel can reach
+     */
+    public static void normalizeWheelSpeeds(double[] speeds, double attainableMaxSpeedMetersPerSecond) {
+        MathUtility.normalizeMagnitudes(speeds, attainableMaxSpeedMetersPerSecond);
+    }
+}
@@ -0,0 +1,65 @@
+/*----------------------------------------------------------------------------*/
+/* Copyright (c) 2019 FIRST. All Rights Reserved.                             */
+/* Open Source Software - may be modified and shared by FRC teams. The code   */
+/* must be accompanied by the FIRST BSD license file in the root directory of */
+/* the project.                                                               */
+/*----------------------------------------------------------------------------*/
+
+package org.firstinspires.ftc.library.kinematics.wpilibkinematics;
+
+/**
+ * Represents the wheel speeds for a differential drive drivetrain.
+ */
+@SuppressWarnings("MemberName")
+public class DifferentialDriveWheelSpeeds {
+    /**
+     * Speed of the left side of the robot.
+     */
+    public double leftMetersPerSecond;
+
+    /**
+     * Speed of the right side of the robot.
+     */
+    public double rightMetersPerSecond;
+
+    /**
+     * Constructs a DifferentialDriveWheelSpeeds with zeros for left and right speeds.
+     */
+    public DifferentialDriveWheelSpeeds() {
+    }
+
+    /**
+     * Constructs a DifferentialDriveWheelSpeeds.
+     *
+     * @param leftMetersPerSecond  The left speed.
+     * @param rightMetersPerSecond The right speed.
+     */
+    public DifferentialDriveWheelSpeeds(double leftMetersPerSecond, double rightMetersPerSecond) {
+        this.leftMetersPerSecond = leftMetersPerSecond;
+        this.rightMetersPerSecond = rightMetersPerSecond;
+    }
+
+    /**
+     * Normalizes the wheel speeds using some max attainable speed, keeping the ratio between the
+     * two sides and so the curvature the robot drives. See
+     * {@link MecanumDriveWheelSpeeds#normalize(double)}.
+     *
+     * @param attainableMaxSpeedMetersPerSecond The absolute max speed that a wheel can reach.
+     */
+    public void normalize(double attainableMaxSpeedMetersPerSecond) {
+        double realMaxSpeed = Math.max(Math.abs(leftMetersPerSecond), Math.abs(rightMetersPerSecond));
+
+        if (realMaxSpeed > attainableMaxSpeedMetersPerSecond) {
+            leftMetersPerSecond = leftMetersPerSecond / realMaxSpeed
+                    * attainableMaxSpeedMetersPerSecond;
+            rightMetersPerSecond = rightMetersPerSecond / realMaxSpeed
+                    * attainableMaxSpeedMetersPerSecond;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DifferentialDriveWheelSpeeds(Left: %.2f m/s, Right: %.2f m/s)",
+                leftMetersPerSecond, rightMetersPerSecond);
+    }
+}
@@ -0,0 +1,206 @@
+/*----------------------------------------------------------------------------*/
+/* Copyright (c) 2019 FIRST. All Rights Reserved.                             */
+/* Open Source Software - may be modified and shared by FRC teams. The code   */
+/* must be accompanied by the FIRST BSD license file in the root directory of */
+/* the project.                                                               */
+/*----------------------------------------------------------------------------*/
+
+package org.firstinspires.ftc.library.kinematics.wpilibkinematics;
+
+import org.ejml.simple.SimpleMatrix;
+import org.firstinspires.ftc.library.math.MathUtility;
+import org.firstinspires.ftc.library.math.geometry.Translation2d;
+
+/**
+ * Helper class that converts a chassis velocity (dx, dy, and dtheta components) into individual
+ * wheel speeds for a mecanum drive.
+ *
+ * <p>The inverse kinematics (converting from a desired chassis velocity to individual wheel
+ * speeds) uses the relative locations of the wheels with respect to the center of rotation. The
+ * center of rotation for inverse kinematics is also variable. This means that you can set your
+ * center of rotation in a corner of the robot to perform special evasion maneuvers.
+ *
+ * <p>Forward kinematics (converting an array of wheel speeds into the overall chassis motion)
+ * performs the exact opposite of what inverse kinematics does. Since this is an overdetermined
+ * system (more equations than variables), we use a least-squares approximation.
+ *
+ * <p>The pseudoinverse is computed once, when the kinematics is constructed, and both directions
+ * are evaluated from precomputed coefficients. The methods that take and fill {@code double[]}
+ * arrays, in the order front left, front right, rear left, rear right, don't allocate:
+ *
+ * <pre>
+ * kinematics.toWheelSpeeds(vx, vy, omega, speeds);
+ * MecanumDriveKinematics.normalizeWheelSpeeds(speeds, maxSpeed);
+ * SimpleMotorFeedforward.calculate(feedforwards, speeds, null, voltages);
+ * </pre>
+ */
+public class MecanumDriveKinematics {
+    private final double[] m_wheelX = new double[4];
+    private final double[] m_wheelY = new double[4];
+
+    // Wheel i turns at vx + VY_SIGN[i] * vy + m_omegaCoefficient[i] * omega
+    private static final double[] VY_SIGN = {-1, 1, 1, -1};
+    private final double[] m_omegaCoefficient = new double[4];
+
+    // Rows of the pseudoinverse of the inverse kinematics about the robot center
+    private final double[] m_forwardVx = new double[4];
+    private final double[] m_forwardVy = new double[4];
+    private final double[] m_forwardOmega = new double[4];
+
+    /**
+     * Constructs a mecanum drive kinematics object.
+     *
+     * @param frontLeftWheelMeters  The location of the front-left wheel relative to the
+     *                              physical center of the robot.
+     * @param frontRightWheelMeters The location of the front-right wheel relative to
+     *                              the physical center of the robot.
+     * @param rearLeftWheelMeters   The location of the rear-left wheel relative to the
+     *                              physical center of the robot.
+     * @param rearRightWheelMeters  The location of the rear-right wheel relative to the
+     *                              physical center of the robot.
+     */
+    public MecanumDriveKinematics(Translation2d frontLeftWheelMeters,
+                                  Translation2d frontRightWheelMeters,
+                                  Translation2d rearLeftWheelMeters,
+                                  Translation2d rearRightWheelMeters) {
+        Translation2d[] wheels = {frontLeftWheelMeters, frontRightWheelMeters,
+                rearLeftWheelMeters, rearRightWheelMeters};
+        for (int i = 0; i < 4; i++) {
+            m_wheelX[i] = wheels[i].getX();
+            m_wheelY[i] = wheels[i].getY();
+        }
+        setCenterOfRotation(0, 0);
+
+        SimpleMatrix inverseKinematics = new SimpleMatrix(4, 3);
+        for (int i = 0; i < 4; i++) {
+            inverseKinematics.setRow(i, 0, 1, VY_SIGN[i], m_omegaCoefficient[i]);
+        }
+        SimpleMatrix forwardKinematics = inverseKinematics.pseudoInverse();
+        for (int i = 0; i < 4; i++) {
+            m_forwardVx[i] = forwardKinematics.get(0, i);
+            m_forwardVy[i] = forwardKinematics.get(1, i);
+            m_forwardOmega[i] = forwardKinematics.get(2, i);
+        }
+    }
+
+    /**
+     * Sets the center of rotation used by the inverse kinematics methods that don't take one.
+     *
+     * @param xMeters the x coordinate of the center of rotation, relative to the robot center
+     * @param yMeters the y coordinate of the center of rotation, relative to the robot center
+     */
+    public void setCenterOfRotation(double xMeters, double yMeters) {
+        for (int i = 0; i < 4; i++) {
+            m_omegaCoefficient[i] = omegaCoefficient(i, xMeters, yMeters);
+        }
+    }
+
+    // The rollers of the front-left and rear-right wheels are at +45 degrees to the robot's x
+    // axis, the others at -45 degrees
+    private double omegaCoefficient(int wheel, double centerXMeters, double centerYMeters) {
+        double x = m_wheelX[wheel] - centerXMeters;
+        double y = m_wheelY[wheel] - centerYMeters;
+        return VY_SIGN[wheel] < 0 ? -(x + y) : x - y;
+    }
+
+    /**
+     * Performs inverse kinematics to return the wheel speeds from a desired chassis velocity. The
+     * wheel speeds are not normalized.
+     *
+     * @param chassisSpeeds          The desired chassis speed.
+     * @param centerOfRotationMeters The center of rotation for this call only; the center set
+     *                               with {@link #setCenterOfRotation} is unchanged.
+     * @return The wheel speeds.
+     */
+    public MecanumDriveWheelSpeeds toWheelSpeeds(ChassisSpeeds chassisSpeeds,
+                                                 Translation2d centerOfRotationMeters) {
+        double[] speeds = new double[4];
+        for (int i = 0; i < 4; i++) {
+            speeds[i] = chassisSpeeds.vxMetersPerSecond + VY_SIGN[i] * chassisSpeeds.vyMetersPerSecond
+                    + omegaCoefficient(i, centerOfRotationMeters.getX(), centerOfRotationMeters.getY())
+                    * chassisSpeeds.omegaRadiansPerSecond;
+        }
+        return new MecanumDriveWheelSpeeds(speeds[0], speeds[1], speeds[2], speeds[3]);
+    }
+
+    /**
+     * Performs inverse kinematics about the current center of rotation. See
+     * {@link #toWheelSpeeds(ChassisSpeeds, Translation2d)}.
+     *
+     * @param chassisSpeeds The desired chassis speed.
+     * @return The wheel speeds.
+     */
+    public MecanumDriveWheelSpeeds toWheelSpeeds(ChassisSpeeds chassisSpeeds) {
+        double[] speeds = toWheelSpeeds(chassisSpeeds.vxMetersPerSecond,
+                chassisSpeeds.vyMetersPerSecond, chassisSpeeds.omegaRadiansPerSecond, new double[4]);
+        return new MecanumDriveWheelSpeeds(speeds[0], speeds[1], speeds[2], speeds[3]);
+    }
+
+    /**
+     * Performs inverse kinematics about the current center of rotation into an array. Does not
+     * allocate.
+     *
+     * @param vxMetersPerSecond     the forward velocity of the robot
+     * @param vyMetersPerSecond     the sideways velocity of the robot
+     * @param omegaRadiansPerSecond the angular velocity of the robot
+     * @param out                   receives the wheel speeds
+     * @return out
+     */
+    public double[] toWheelSpeeds(double vxMetersPerSecond, double vyMetersPerSecond,
+                                  double omegaRadiansPerSecond, double[] out) {
+        for (int i = 0; i < 4; i++) {
+            out[i] = vxMetersPerSecond + VY_SIGN[i] * vyMetersPerSecond
+                    + m_omegaCoefficient[i] * omegaRadiansPerSecond;
+        }
+        return out;
+    }
+
+    /**
+     * Performs forward kinematics to return the resulting chassis state from the given wheel
+     * speeds. This method is often used for odometry -- determining the robot's position on the
+     * field using data from the real-world speed of each wheel on the robot.
+     *
+     * @param wheelSpeeds The current mecanum drive wheel speeds.
+     * @return The resulting chassis speed.
+     */
+    public ChassisSpeeds toChassisSpeeds(MecanumDriveWheelSpeeds wheelSpeeds) {
+        return toChassisSpeeds(wheelSpeeds.frontLeftMetersPerSecond,
+                wheelSpeeds.frontRightMetersPerSecond, wheelSpeeds.rearLeftMetersPerSecond,
+                wheelSpeeds.rearRightMetersPerSecond, new ChassisSpeeds());
+    }
+
+    /**
+     * Performs forward kinematics from an array of wheel speeds into a reusable ChassisSpeeds.
+     * Does not allocate.
+     *
+     * @param wheelSpeeds the wheel speeds
+     * @param out         receives the chassis speed
+     * @return out
+     */
+    public ChassisSpeeds toChassisSpeeds(double[] wheelSpeeds, ChassisSpeeds out) {
+        return toChassisSpeeds(wheelSpeeds[0], wheelSpeeds[1], wheelSpeeds[2], wheelSpeeds[3], out);
+    }
+
+    private ChassisSpeeds toChassisSpeeds(double frontLeft, double frontRight, double rearLeft,
+                                          double rearRight, ChassisSpeeds out) {
+        out.vxMetersPerSecond = m_forwardVx[0] * frontLeft + m_forwardVx[1] * frontRight
+                + m_forwardVx[2] * rearLeft + m_forwardVx[3] * rearRight;
+        out.vyMetersPerSecond = m_forwardVy[0] * frontLeft + m_forwardVy[1] * frontRight
+                + m_forwardVy[2] * rearLeft + m_forwardVy[3] * rearRight;
+        out.omegaRadiansPerSecond = m_forwardOmega[0] * frontLeft + m_forwardOmega[1] * frontRight
+                + m_forwardOmega[2] * rearLeft + m_forwardOmega[3] * rearRight;
+        return out;
+    }
+
+    /**
+     * Normalizes wheel speeds in place so none is above a max speed, scaling all of them by the
+     * same factor so the robot keeps moving in the same direction. Also works on motor powers,
+     * with a max of 1.
+     *
+     * @param speeds                            the wheel speeds; mutated with the normalized speeds
+     * @param attainableMaxSpeedMetersPerSecond the absolute max speed that a wheel can reach
+     */
+    public static void normalizeWheelSpeeds(double[] speeds, double attainableMaxSpeedMetersPerSecond) {
+        MathUtility.normalizeMagnitudes(speeds, attainableMaxSpeedMetersPerSecond);
+    }
+}
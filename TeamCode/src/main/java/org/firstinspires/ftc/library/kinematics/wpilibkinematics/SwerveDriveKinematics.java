@@ -8,11 +8,10 @@
 package org.firstinspires.ftc.library.kinematics.wpilibkinematics;
 
 import org.ejml.simple.SimpleMatrix;
+import org.firstinspires.ftc.library.math.MathUtility;
 import org.firstinspires.ftc.library.math.geometry.Rotation2d;
 import org.firstinspires.ftc.library.math.geometry.Translation2d;
 
-import java.util.Arrays;
-import java.util.Collections;
 
 /**
  * Helper class that converts a chassis velocity (dx, dy, and dtheta components)
@@ -35,15 +34,29 @@ import java.util.Collections;
  *
  * <p>Forward kinematics is also used for odometry -- determining the position of
  * the robot on the field using encoders and a gyro.
+ *
+ * <p>The pseudoinverse is computed once, when the kinematics is constructed, and both
+ * directions are evaluated from precomputed coefficients in primitive arrays. The methods that
+ * take and fill {@code double[]} arrays, such as
+ * {@link #toModuleStates(double, double, double, double[], double[])}, don't allocate, for
+ * drive loops running at several hundred hertz.
  */
 
 public class SwerveDriveKinematics {
-    private final SimpleMatrix m_inverseKinematics;
-    private final SimpleMatrix m_forwardKinematics;
-
     private final int m_numModules;
-    private final Translation2d[] m_modules;
-    private Translation2d m_prevCoR = new Translation2d();
+    private final double[] m_moduleX;
+    private final double[] m_moduleY;
+
+    // Inverse kinematics for the current center of rotation: module i moves at
+    // (vx + omega * m_omegaToVx[i], vy + omega * m_omegaToVy[i])
+    private final double[] m_omegaToVx;
+    private final double[] m_omegaToVy;
+
+    // Rows of the pseudoinverse of the inverse kinematics about the robot center, which map
+    // [vx0, vy0, vx1, vy1, ...] to the chassis speeds
+    private final double[] m_forwardVx;
+    private final double[] m_forwardVy;
+    private final double[] m_forwardOmega;
 
     /**
      * Constructs a swerve drive kinematics object. This takes in a variable
@@ -61,15 +74,163 @@ public class SwerveDriveKinematics {
             throw new IllegalArgumentException("A swerve drive requires at least two modules");
         }
         m_numModules = wheelsMeters.length;
-        m_modules = Arrays.copyOf(wheelsMeters, m_numModules);
-        m_inverseKinematics = new SimpleMatrix(m_numModules * 2, 3);
+        m_moduleX = new double[m_numModules];
+        m_moduleY = new double[m_numModules];
+        m_omegaToVx = new double[m_numModules];
+        m_omegaToVy = new double[m_numModules];
 
+        SimpleMatrix inverseKinematics = new SimpleMatrix(m_numModules * 2, 3);
         for (int i = 0; i < m_numModules; i++) {
-            m_inverseKinematics.setRow(i * 2 + 0, 0, /* Start Data */ 1, 0, -m_modules[i].getY());
-            m_inverseKinematics.setRow(i * 2 + 1, 0, /* Start Data */ 0, 1, +m_modules[i].getX());
+            m_moduleX[i] = wheelsMeters[i].getX();
+            m_moduleY[i] = wheelsMeters[i].getY();
+            inverseKinematics.setRow(i * 2 + 0, 0, /* Start Data */ 1, 0, -m_moduleY[i]);
+            inverseKinematics.setRow(i * 2 + 1, 0, /* Start Data */ 0, 1, +m_moduleX[i]);
+        }
+        setCenterOfRotation(0, 0);
+
+        SimpleMatrix forwardKinematics = inverseKinematics.pseudoInverse();
+        m_forwardVx = new double[m_numModules * 2];
+        m_forwardVy = new double[m_numModules * 2];
+        m_forwardOmega = new double[m_numModules * 2];
+        for (int j = 0; j < m_numModules * 2; j++) {
+            m_forwardVx[j] = forwardKinematics.get(0, j);
+            m_forwardVy[j] = forwardKinematics.get(1, j);
+            m_forwardOmega[j] = forwardKinematics.get(2, j);
         }
-        m_forwardKinematics = m_inverseKinematics.pseudoInverse();
+    }
+
+    /**
+     * @return the number of modules
+     */
+    public int getNumModules() {
+        return m_numModules;
+    }
+
+    // The module locations relative to the robot center, for the odometry
+    double getModuleX(int module) {
+        return m_moduleX[module];
+    }
+
+    double getModuleY(int module) {
+        return m_moduleY[module];
+    }
+
+    /**
+     * Sets the center of rotation used by the array-based inverse kinematics methods, such as
+     * {@link #toModuleStates(double, double, double, double[], double[])}. Changing it only
+     * recomputes one coefficient pair per module.
+     *
+     * @param xMeters the x coordinate of the center of rotation, relative to the robot center
+     * @param yMeters the y coordinate of the center of rotation, relative to the robot center
+     */
+    public void setCenterOfRotation(double xMeters, double yMeters) {
+        for (int i = 0; i < m_numModules; i++) {
+            m_omegaToVx[i] = -(m_moduleY[i] - yMeters);
+            m_omegaToVy[i] = m_moduleX[i] - xMeters;
+        }
+    }
+
+    /**
+     * Performs inverse kinematics about the current center of rotation, writing the velocity
+     * vector of each module into the given arrays. Does not allocate.
+     *
+     * @param vxMetersPerSecond     the forward velocity of the robot
+     * @param vyMetersPerSecond     the sideways velocity of the robot
+     * @param omegaRadiansPerSecond the angular velocity of the robot
+     * @param moduleVx              receives the x component of each module's velocity
+     * @param moduleVy              receives the y component of each module's velocity
+     */
+    public void toModuleVectors(double vxMetersPerSecond, double vyMetersPerSecond,
+                                double omegaRadiansPerSecond, double[] moduleVx, double[] moduleVy) {
+        for (int i = 0; i < m_numModules; i++) {
+            moduleVx[i] = vxMetersPerSecond + omegaRadiansPerSecond * m_omegaToVx[i];
+            moduleVy[i] = vyMetersPerSecond + omegaRadiansPerSecond * m_omegaToVy[i];
+        }
+    }
+
+    /**
+     * Performs inverse kinematics about the current center of rotation, writing each module's
+     * speed and angle into the given arrays. Does not allocate. A module that should not move
+     * keeps the angle already in the array, so it doesn't snap to zero when the robot stops.
+     *
+     * @param vxMetersPerSecond     the forward velocity of the robot
+     * @param vyMetersPerSecond     the sideways velocity of the robot
+     * @param omegaRadiansPerSecond the angular velocity of the robot
+     * @param speeds                receives the speed of each module, in meters per second
+     * @param angles                holds the current angle of each module in radians, and receives
+     *                              the new angle
+     */
+    public void toModuleStates(double vxMetersPerSecond, double vyMetersPerSecond,
+                               double omegaRadiansPerSecond, double[] speeds, double[] angles) {
+        for (int i = 0; i < m_numModules; i++) {
+            double x = vxMetersPerSecond + omegaRadiansPerSecond * m_omegaToVx[i];
+            double y = vyMetersPerSecond + omegaRadiansPerSecond * m_omegaToVy[i];
+            double speed = Math.hypot(x, y);
+            speeds[i] = speed;
+            if (speed > 1e-9) {
+                angles[i] = Math.atan2(y, x);
+            }
+        }
+    }
+
+    /**
+     * Performs second-order inverse kinematics about the current center of rotation. Besides each
+     * module's speed and angle, this computes how fast each module has to steer and how fast its
+     * wheel has to accelerate to follow the chassis acceleration. First-order kinematics only
+     * points each module where it should be now; feeding the steering velocities forward to the
+     * steering controllers keeps modules from lagging behind while the robot translates and
+     * rotates at the same time, which shows up as skew. Does not allocate.
+     *
+     * @param vxMetersPerSecond       the forward velocity of the robot
+     * @param vyMetersPerSecond       the sideways velocity of the robot
+     * @param omegaRadiansPerSecond   the angular velocity of the robot
+     * @param axMetersPerSecondSq     the forward acceleration of the robot relative to the field,
+     *                                expressed in the robot frame as a trajectory provides it
+     * @param ayMetersPerSecondSq     the sideways acceleration of the robot relative to the field,
+     *                                expressed in the robot frame
+     * @param alphaRadiansPerSecondSq the angular acceleration of the robot
+     * @param speeds                  receives the speed of each module
+     * @param angles                  holds the current angle of each module in radians, and
+     *                                receives the new angle
+     * @param steerVelocities         receives the steering velocity of each module, in radians
+     *                                per second
+     * @param accelerations           receives the wheel acceleration of each module
+     */
+    public void toModuleStates(double vxMetersPerSecond, double vyMetersPerSecond,
+                               double omegaRadiansPerSecond, double axMetersPerSecondSq,
+                               double ayMetersPerSecondSq, double alphaRadiansPerSecondSq,
+                               double[] speeds, double[] angles, double[] steerVelocities,
+                               double[] accelerations) {
+        double omegaSq = omegaRadiansPerSecond * omegaRadiansPerSecond;
+        for (int i = 0; i < m_numModules; i++) {
+            // The module's offset from the center of rotation is (m_omegaToVy[i], -m_omegaToVx[i]),
+            // so its acceleration adds the angular and centripetal terms
+            double x = vxMetersPerSecond + omegaRadiansPerSecond * m_omegaToVx[i];
+            double y = vyMetersPerSecond + omegaRadiansPerSecond * m_omegaToVy[i];
+            double ax = axMetersPerSecondSq + alphaRadiansPerSecondSq * m_omegaToVx[i]
+                    - omegaSq * m_omegaToVy[i];
+            double ay = ayMetersPerSecondSq + alphaRadiansPerSecondSq * m_omegaToVy[i]
+                    + omegaSq * m_omegaToVx[i];
 
+            double speedSq = x * x + y * y;
+            double speed = Math.sqrt(speedSq);
+            speeds[i] = speed;
+            if (speed > 1e-9) {
+                angles[i] = Math.atan2(y, x);
+                // The module's velocity turns at this rate relative to the field; the module turns
+                // relative to the robot, which is itself rotating
+                steerVelocities[i] = (x * ay - y * ax) / speedSq - omegaRadiansPerSecond;
+                accelerations[i] = (x * ax + y * ay) / speed;
+            } else {
+                // Starting from rest, point the module where it is about to accelerate
+                double acceleration = Math.hypot(ax, ay);
+                if (acceleration > 1e-9) {
+                    angles[i] = Math.atan2(ay, ax);
+                }
+                steerVelocities[i] = -omegaRadiansPerSecond;
+                accelerations[i] = acceleration;
+            }
+        }
     }
 
     /**
@@ -97,35 +258,8 @@ public class SwerveDriveKinematics {
     @SuppressWarnings({"LocalVariableName", "PMD.AvoidInstantiatingObjectsInLoops"})
     public SwerveModuleState[] toSwerveModuleStates(ChassisSpeeds chassisSpeeds,
                                                     Translation2d centerOfRotationMeters) {
-        if (!centerOfRotationMeters.equals(m_prevCoR)) {
-            for (int i = 0; i < m_numModules; i++) {
-                m_inverseKinematics.setRow(i * 2 + 0, 0, /* Start Data */ 1, 0,
-                        -m_modules[i].getY() + centerOfRotationMeters.getY());
-                m_inverseKinematics.setRow(i * 2 + 1, 0, /* Start Data */ 0, 1,
-                        +m_modules[i].getX() - centerOfRotationMeters.getX());
-            }
-            m_prevCoR = centerOfRotationMeters;
-        }
-
-        SimpleMatrix chassisSpeedsVector = new SimpleMatrix(3, 1);
-        chassisSpeedsVector.setColumn(0, 0,
-                chassisSpeeds.vxMetersPerSecond, chassisSpeeds.vyMetersPerSecond,
-                chassisSpeeds.omegaRadiansPerSecond);
-
-        SimpleMatrix moduleStatesMatrix = m_inverseKinematics.mult(chassisSpeedsVector);
-        SwerveModuleState[] moduleStates = new SwerveModuleState[m_numModules];
-
-        for (int i = 0; i < m_numModules; i++) {
-            double x = moduleStatesMatrix.get(i * 2, 0);
-            double y = moduleStatesMatrix.get(i * 2 + 1, 0);
-
-            double speed = Math.hypot(x, y);
-            Rotation2d angle = new Rotation2d(x, y);
-
-            moduleStates[i] = new SwerveModuleState(speed, angle);
-        }
-
-        return moduleStates;
+        return toSwerveModuleStates(chassisSpeeds,
+                centerOfRotationMeters.getX(), centerOfRotationMeters.getY());
     }
 
     /**
@@ -136,7 +270,20 @@ public class SwerveDriveKinematics {
      * @return An array containing the module states.
      */
     public SwerveModuleState[] toSwerveModuleStates(ChassisSpeeds chassisSpeeds) {
-        return toSwerveModuleStates(chassisSpeeds, new Translation2d());
+        return toSwerveModuleStates(chassisSpeeds, 0, 0);
+    }
+
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    private SwerveModuleState[] toSwerveModuleStates(ChassisSpeeds chassisSpeeds,
+                                                     double corX, double corY) {
+        double omega = chassisSpeeds.omegaRadiansPerSecond;
+        SwerveModuleState[] moduleStates = new SwerveModuleState[m_numModules];
+        for (int i = 0; i < m_numModules; i++) {
+            double x = chassisSpeeds.vxMetersPerSecond - omega * (m_moduleY[i] - corY);
+            double y = chassisSpeeds.vyMetersPerSecond + omega * (m_moduleX[i] - corX);
+            moduleStates[i] = new SwerveModuleState(Math.hypot(x, y), new Rotation2d(x, y));
+        }
+        return moduleStates;
     }
 
     /**
@@ -157,18 +304,44 @@ public class SwerveDriveKinematics {
                             + "constructor"
             );
         }
-        SimpleMatrix moduleStatesMatrix = new SimpleMatrix(m_numModules * 2, 1);
-
+        double vx = 0;
+        double vy = 0;
+        double omega = 0;
         for (int i = 0; i < m_numModules; i++) {
             SwerveModuleState module = wheelStates[i];
-            moduleStatesMatrix.set(i * 2, 0, module.speedMetersPerSecond * module.angle.getCos());
-            moduleStatesMatrix.set(i * 2 + 1, module.speedMetersPerSecond * module.angle.getSin());
+            double x = module.speedMetersPerSecond * module.angle.getCos();
+            double y = module.speedMetersPerSecond * module.angle.getSin();
+            vx += m_forwardVx[2 * i] * x + m_forwardVx[2 * i + 1] * y;
+            vy += m_forwardVy[2 * i] * x + m_forwardVy[2 * i + 1] * y;
+            omega += m_forwardOmega[2 * i] * x + m_forwardOmega[2 * i + 1] * y;
         }
+        return new ChassisSpeeds(vx, vy, omega);
+    }
 
-        SimpleMatrix chassisSpeedsVector = m_forwardKinematics.mult(moduleStatesMatrix);
-        return new ChassisSpeeds(chassisSpeedsVector.get(0, 0), chassisSpeedsVector.get(1, 0),
-                chassisSpeedsVector.get(2, 0));
-
+    /**
+     * Performs forward kinematics from module speeds and angles, writing the result into a
+     * reusable ChassisSpeeds. Does not allocate.
+     *
+     * @param speeds the speed of each module, in meters per second
+     * @param angles the angle of each module, in radians
+     * @param out    receives the chassis speeds
+     * @return out
+     */
+    public ChassisSpeeds toChassisSpeeds(double[] speeds, double[] angles, ChassisSpeeds out) {
+        double vx = 0;
+        double vy = 0;
+        double omega = 0;
+        for (int i = 0; i < m_numModules; i++) {
+            double x = speeds[i] * Math.cos(angles[i]);
+            double y = speeds[i] * Math.sin(angles[i]);
+            vx += m_forwardVx[2 * i] * x + m_forwardVx[2 * i + 1] * y;
+            vy += m_forwardVy[2 * i] * x + m_forwardVy[2 * i + 1] * y;
+            omega += m_forwardOmega[2 * i] * x + m_forwardOmega[2 * i + 1] * y;
+        }
+        out.vxMetersPerSecond = vx;
+        out.vyMetersPerSecond = vy;
+        out.omegaRadiansPerSecond = omega;
+        return out;
     }
 
     /**
@@ -185,7 +358,10 @@ public class SwerveDriveKinematics {
      */
     public static void normalizeWheelSpeeds(SwerveModuleState[] moduleStates,
                                             double attainableMaxSpeedMetersPerSecond) {
-        double realMaxSpeed = Collections.max(Arrays.asList(moduleStates)).speedMetersPerSecond;
+        double realMaxSpeed = 0;
+        for (SwerveModuleState moduleState : moduleStates) {
+            realMaxSpeed = Math.max(realMaxSpeed, Math.abs(moduleState.speedMetersPerSecond));
+        }
         if (realMaxSpeed > attainableMaxSpeedMetersPerSecond) {
             for (SwerveModuleState moduleState : moduleStates) {
                 moduleState.speedMetersPerSecond = moduleState.speedMetersPerSecond / realMaxSpeed
@@ -193,4 +369,15 @@ public class SwerveDriveKinematics {
             }
         }
     }
+
+    /**
+     * Normalizes wheel speeds in place, as {@link #normalizeWheelSpeeds(SwerveModuleState[], double)}
+     * does for module states.
+     *
+     * @param speeds                            the module speeds; mutated with the normalized speeds
+     * @param attainableMaxSpeedMetersPerSecond the absolute max speed that a module can reach
+     */
+    public static void normalizeWheelSpeeds(double[] speeds, double attainableMaxSpeedMetersPerSecond) {
+        MathUtility.normalizeMagnitudes(speeds, attainableMaxSpeedMetersPerSecond);
+    }
 }
@@ -8,9 +8,9 @@
 package org.firstinspires.ftc.library.kinematics.wpilibkinematics;
 
 
+import org.firstinspires.ftc.library.math.MathUtility;
 import org.firstinspires.ftc.library.math.geometry.Pose2d;
 import org.firstinspires.ftc.library.math.geometry.Rotation2d;
-import org.firstinspires.ftc.library.math.geometry.Twist2d;
 
 /**
  * Class for swerve drive odometry. Odometry allows you to track the robot's
@@ -20,15 +20,43 @@ import org.firstinspires.ftc.library.math.geometry.Twist2d;
  * <p>Teams can use odometry during the autonomous period for complex tasks like
  * path following. Furthermore, odometry can be used for latency compensation
  * when using computer-vision systems.
+ *
+ * <p>{@link #update(Rotation2d, double[], double[])} integrates the distance each wheel
+ * travelled since the last update, which is more accurate than integrating velocities over
+ * the loop period, and detects skidding modules: with the rotation known from the gyro, each
+ * module gives its own estimate of the robot's translation, and the least-squares estimate is
+ * their weighted mean. A module whose estimate is far from the median of the estimates, compared
+ * to the median residual, counts as skidding and is down-weighted in the fit. The pose is kept
+ * as primitives and the pose object is only created when it is asked for, so updates don't
+ * allocate.
  */
 
 public class SwerveDriveOdometry {
     private final SwerveDriveKinematics m_kinematics;
+    private final int m_numModules;
+    private double m_x;
+    private double m_y;
+    private double m_heading;
     private Pose2d m_poseMeters;
     private double m_prevTimeSeconds = -1;
 
-    private Rotation2d m_gyroOffset;
-    private Rotation2d m_previousAngle;
+    private double m_gyroOffset;
+    private double m_previousAngle;
+    private final ChassisSpeeds m_chassisSpeeds = new ChassisSpeeds();
+
+    // Position updates
+    private final double[] m_previousDistances;
+    private final double[] m_previousAngles;
+    private boolean m_hasPreviousPositions;
+    private final double[] m_translationX;
+    private final double[] m_translationY;
+    private final double[] m_residuals;
+    private final double[] m_weights;
+    private final double[] m_sorted;
+    private final boolean[] m_skidding;
+    private double m_minSkidResidual = 0.002;
+    private double m_skidResidualRatio = 3.0;
+    private int m_skidCount;
 
     /**
      * Constructs a SwerveDriveOdometry object.
@@ -40,9 +68,16 @@ public class SwerveDriveOdometry {
     public SwerveDriveOdometry(SwerveDriveKinematics kinematics, Rotation2d gyroAngle,
                                Pose2d initialPose) {
         m_kinematics = kinematics;
-        m_poseMeters = initialPose;
-        m_gyroOffset = m_poseMeters.getRotation().minus(gyroAngle);
-        m_previousAngle = initialPose.getRotation();
+        m_numModules = kinematics.getNumModules();
+        m_previousDistances = new double[m_numModules];
+        m_previousAngles = new double[m_numModules];
+        m_translationX = new double[m_numModules];
+        m_translationY = new double[m_numModules];
+        m_residuals = new double[m_numModules];
+        m_weights = new double[m_numModules];
+        m_sorted = new double[m_numModules];
+        m_skidding = new boolean[m_numModules];
+        resetPosition(initialPose, gyroAngle);
     }
 
     /**
@@ -55,6 +90,24 @@ public class SwerveDriveOdometry {
         this(kinematics, gyroAngle, new Pose2d());
     }
 
+    /**
+     * Sets when a module counts as skidding in
+     * {@link #update(Rotation2d, double[], double[])}: when its residual is above both the
+     * minimum and the ratio times the median residual of all modules.
+     *
+     * @param minResidualMeters the residual below which a module never counts as skidding, in
+     *                          meters per update
+     * @param ratio             the multiple of the median residual above which a module counts
+     *                          as skidding
+     */
+    public void setSkidDetection(double minResidualMeters, double ratio) {
+        if (minResidualMeters < 0 || ratio < 1) {
+            throw new IllegalArgumentException("The skid residual must not be negative and the ratio at least 1");
+        }
+        m_minSkidResidual = minResidualMeters;
+        m_skidResidualRatio = ratio;
+    }
+
     /**
      * Resets the robot's position on the field.
      *
@@ -65,9 +118,28 @@ public class SwerveDriveOdometry {
      * @param gyroAngle The angle reported by the gyroscope.
      */
     public void resetPosition(Pose2d pose, Rotation2d gyroAngle) {
+        m_x = pose.getTranslation().getX();
+        m_y = pose.getTranslation().getY();
+        m_heading = pose.getRotation().getRadians();
         m_poseMeters = pose;
-        m_previousAngle = pose.getRotation();
-        m_gyroOffset = m_poseMeters.getRotation().minus(gyroAngle);
+        m_previousAngle = m_heading;
+        m_gyroOffset = m_heading - gyroAngle.getRadians();
+    }
+
+    /**
+     * Resets the robot's position on the field, along with the module positions the next
+     * {@link #update(Rotation2d, double[], double[])} measures from.
+     *
+     * @param pose      The position on the field that your robot is at.
+     * @param gyroAngle The angle reported by the gyroscope.
+     * @param distances The distance each wheel has travelled, in meters.
+     * @param angles    The angle of each module, in radians.
+     */
+    public void resetPosition(Pose2d pose, Rotation2d gyroAngle, double[] distances, double[] angles) {
+        resetPosition(pose, gyroAngle);
+        System.arraycopy(distances, 0, m_previousDistances, 0, m_numModules);
+        System.arraycopy(angles, 0, m_previousAngles, 0, m_numModules);
+        m_hasPreviousPositions = true;
     }
 
     /**
@@ -76,9 +148,27 @@ public class SwerveDriveOdometry {
      * @return The pose of the robot (x and y are in meters).
      */
     public Pose2d getPoseMeters() {
+        if (m_poseMeters == null) {
+            m_poseMeters = new Pose2d(m_x, m_y, new Rotation2d(m_heading));
+        }
         return m_poseMeters;
     }
 
+    /**
+     * @param module The index of the module.
+     * @return Whether the module was found skidding in the last position update.
+     */
+    public boolean isSkidding(int module) {
+        return m_skidding[module];
+    }
+
+    /**
+     * @return The number of modules found skidding in the last position update.
+     */
+    public int getSkidCount() {
+        return m_skidCount;
+    }
+
     /**
      * Updates the robot's position on the field using forward kinematics and
      * integration of the pose over time. This method takes in the current time as
@@ -99,19 +189,147 @@ public class SwerveDriveOdometry {
         double period = m_prevTimeSeconds >= 0 ? currentTimeSeconds - m_prevTimeSeconds : 0.0;
         m_prevTimeSeconds = currentTimeSeconds;
 
-        Rotation2d angle = gyroAngle.plus(m_gyroOffset);
-
         ChassisSpeeds chassisState = m_kinematics.toChassisSpeeds(moduleStates);
-        Pose2d newPose = m_poseMeters.exp(
-                new Twist2d(chassisState.vxMetersPerSecond * period,
-                        chassisState.vyMetersPerSecond * period,
-                        angle.minus(m_previousAngle).getRadians()));
+        integrate(chassisState.vxMetersPerSecond * period, chassisState.vyMetersPerSecond * period,
+                gyroAngle);
+        return getPoseMeters();
+    }
 
-        m_previousAngle = angle;
-        m_poseMeters = new Pose2d(newPose.getTranslation(), angle);
+    /**
+     * Updates the robot's position on the field from module speeds and angles held in arrays, as
+     * {@link #updateWithTime(double, Rotation2d, SwerveModuleState...)} does. Only the new pose is
+     * allocated.
+     *
+     * @param currentTimeSeconds The current time in seconds.
+     * @param gyroAngle          The angle reported by the gyroscope.
+     * @param speeds             The speed of each module, in meters per second, in the order the
+     *                           modules were given to the kinematics.
+     * @param angles             The angle of each module, in radians.
+     * @return The new pose of the robot.
+     */
+    public Pose2d updateWithTime(double currentTimeSeconds, Rotation2d gyroAngle,
+                                 double[] speeds, double[] angles) {
+        double period = m_prevTimeSeconds >= 0 ? currentTimeSeconds - m_prevTimeSeconds : 0.0;
+        m_prevTimeSeconds = currentTimeSeconds;
 
-        return m_poseMeters;
+        m_kinematics.toChassisSpeeds(speeds, angles, m_chassisSpeeds);
+        integrate(m_chassisSpeeds.vxMetersPerSecond * period,
+                m_chassisSpeeds.vyMetersPerSecond * period, gyroAngle);
+        return getPoseMeters();
     }
 
+    /**
+     * Updates the robot's position on the field from the distance each wheel has travelled,
+     * down-weighting modules that skid. The first update after construction only records the
+     * module positions, unless they were given to
+     * {@link #resetPosition(Pose2d, Rotation2d, double[], double[])}. Does not allocate; use
+     * {@link #getPoseMeters()} for the new pose.
+     *
+     * @param gyroAngle The angle reported by the gyroscope.
+     * @param distances The distance each wheel has travelled, in meters, in the order the
+     *                  modules were given to the kinematics.
+     * @param angles    The angle of each module, in radians.
+     */
+    public void update(Rotation2d gyroAngle, double[] distances, double[] angles) {
+        if (!m_hasPreviousPositions) {
+            System.arraycopy(distances, 0, m_previousDistances, 0, m_numModules);
+            System.arraycopy(angles, 0, m_previousAngles, 0, m_numModules);
+            m_hasPreviousPositions = true;
+            return;
+        }
 
+        double angle = gyroAngle.getRadians() + m_gyroOffset;
+        double dtheta = MathUtility.normalizeRadians(angle - m_previousAngle, false);
+
+        // Each module's displacement over the update, at the average of its angles, less the part
+        // the rotation accounts for, is that module's estimate of the robot's translation
+        for (int i = 0; i < m_numModules; i++) {
+            double distance = distances[i] - m_previousDistances[i];
+            double moduleAngle = m_previousAngles[i]
+                    + MathUtility.normalizeRadians(angles[i] - m_previousAngles[i], false) / 2;
+            m_translationX[i] = distance * Math.cos(moduleAngle)
+                    + dtheta * m_kinematics.getModuleY(i);
+            m_translationY[i] = distance * Math.sin(moduleAngle)
+                    - dtheta * m_kinematics.getModuleX(i);
+            m_previousDistances[i] = distances[i];
+            m_previousAngles[i] = angles[i];
+            m_weights[i] = 1;
+            m_skidding[i] = false;
+        }
+
+        // Residuals against the median of the estimates, which one skidding module can't drag
+        // towards itself the way it would drag the mean
+        System.arraycopy(m_translationX, 0, m_sorted, 0, m_numModules);
+        double medianX = median(m_sorted);
+        System.arraycopy(m_translationY, 0, m_sorted, 0, m_numModules);
+        double medianY = median(m_sorted);
+        for (int i = 0; i < m_numModules; i++) {
+            m_residuals[i] = Math.hypot(m_translationX[i] - medianX, m_translationY[i] - medianY);
+            m_sorted[i] = m_residuals[i];
+        }
+        double threshold = Math.max(m_minSkidResidual, m_skidResidualRatio * median(m_sorted));
+
+        m_skidCount = 0;
+        for (int i = 0; i < m_numModules; i++) {
+            if (m_residuals[i] > threshold) {
+                double ratio = threshold / m_residuals[i];
+                m_weights[i] = ratio * ratio;
+                m_skidding[i] = true;
+                m_skidCount++;
+            }
+        }
+
+        // The weighted least-squares translation is the weighted mean of the estimates
+        double sumX = 0;
+        double sumY = 0;
+        double sumWeights = 0;
+        for (int i = 0; i < m_numModules; i++) {
+            sumX += m_weights[i] * m_translationX[i];
+            sumY += m_weights[i] * m_translationY[i];
+            sumWeights += m_weights[i];
+        }
+        integrate(sumX / sumWeights, sumY / sumWeights, gyroAngle);
+    }
+
+    // Sorts the values in place and returns their median
+    private static double median(double[] values) {
+        for (int i = 1; i < values.length; i++) {
+            double value = values[i];
+            int j = i - 1;
+            while (j >= 0 && values[j] > value) {
+                values[j + 1] = values[j];
+                j--;
+            }
+            values[j + 1] = value;
+        }
+        int middle = values.length / 2;
+        return values.length % 2 == 1 ? values[middle] : (values[middle - 1] + values[middle]) / 2;
+    }
+
+    // Applies a robot-relative translation along the arc the gyro's rotation implies, as Pose2d.exp
+    // does, and takes the heading from the gyro
+    private void integrate(double dx, double dy, Rotation2d gyroAngle) {
+        double angle = gyroAngle.getRadians() + m_gyroOffset;
+        double dtheta = MathUtility.normalizeRadians(angle - m_previousAngle, false);
+
+        double s;
+        double c;
+        if (Math.abs(dtheta) < 1E-9) {
+            s = 1.0 - 1.0 / 6.0 * dtheta * dtheta;
+            c = 0.5 * dtheta;
+        } else {
+            s = Math.sin(dtheta) / dtheta;
+            c = (1 - Math.cos(dtheta)) / dtheta;
+        }
+        double tx = dx * s - dy * c;
+        double ty = dx * c + dy * s;
+        double cos = Math.cos(m_heading);
+        double sin = Math.sin(m_heading);
+        m_x += tx * cos - ty * sin;
+        m_y += tx * sin + ty * cos;
+
+        m_previousAngle = angle;
+        m_heading = angle;
+        m_poseMeters = null;
+    }
 }
@@ -7,6 +7,7 @@
 
 package org.firstinspires.ftc.library.kinematics.wpilibkinematics;
 
+import org.firstinspires.ftc.library.math.MathUtility;
 import org.firstinspires.ftc.library.math.geometry.Rotation2d;
 
 /**
@@ -61,7 +62,16 @@ public class SwerveModuleState implements Comparable<SwerveModuleState> {
         return String.format("SwerveModuleState(Speed: %.2f m/s, Angle: %s)", speedMetersPerSecond,
                 angle);
     }
-        public static SwerveModuleState optimize(
+    /**
+     * Minimizes the change in heading the desired swerve module state would require by
+     * potentially reversing the direction the wheel spins. If this is used with a PID controller
+     * that has continuous input, the module never has to turn more than 90 degrees.
+     *
+     * @param desiredState The desired state.
+     * @param currentAngle The current module angle.
+     * @return The optimized state, as a new object.
+     */
+    public static SwerveModuleState optimize(
             SwerveModuleState desiredState, Rotation2d currentAngle) {
         Rotation2d delta = desiredState.angle.minus(currentAngle);
         if (Math.abs(delta.getDegrees()) > 90.0) {
@@ -72,4 +82,65 @@ public class SwerveModuleState implements Comparable<SwerveModuleState> {
             return new SwerveModuleState(desiredState.speedMetersPerSecond, desiredState.angle);
         }
     }
+
+    /**
+     * Scales the speed by the cosine of the angle error, so a module that is still turning toward
+     * its target drives slower instead of pushing the robot sideways.
+     *
+     * @param currentAngle The current module angle.
+     */
+    public void cosineScale(Rotation2d currentAngle) {
+        speedMetersPerSecond *= angle.minus(currentAngle).getCos();
+    }
+
+    /**
+     * Optimizes module states held in arrays, in place, as {@link #optimize(SwerveModuleState,
+     * Rotation2d)} does. Does not allocate.
+     *
+     * @param speeds        the desired speeds; negated for modules that are flipped
+     * @param angles        the desired angles in radians; turned half a turn for modules that are
+     *                      flipped
+     * @param currentAngles the current angle of each module, in radians
+     */
+    public static void optimize(double[] speeds, double[] angles, double[] currentAngles) {
+        optimize(speeds, angles, currentAngles, null);
+    }
+
+    /**
+     * Optimizes module states held in arrays, in place, also negating the wheel accelerations of
+     * flipped modules.
+     *
+     * @param speeds        the desired speeds; negated for modules that are flipped
+     * @param angles        the desired angles in radians; turned half a turn for modules that are
+     *                      flipped
+     * @param currentAngles the current angle of each module, in radians
+     * @param accelerations the desired wheel accelerations, or null
+     */
+    public static void optimize(double[] speeds, double[] angles, double[] currentAngles,
+                                double[] accelerations) {
+        for (int i = 0; i < speeds.length; i++) {
+            double delta = MathUtility.normalizeRadians(angles[i] - currentAngles[i], false);
+            if (Math.abs(delta) > Math.PI / 2) {
+                speeds[i] = -speeds[i];
+                angles[i] = MathUtility.normalizeRadians(angles[i] + Math.PI, false);
+                if (accelerations != null) {
+                    accelerations[i] = -accelerations[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Scales speeds held in arrays by the cosine of each module's angle error, in place, as
+     * {@link #cosineScale(Rotation2d)} does. Does not allocate.
+     *
+     * @param speeds        the desired speeds
+     * @param angles        the desired angles, in radians
+     * @param currentAngles the current angle of each module, in radians
+     */
+    public static void cosineScale(double[] speeds, double[] angles, double[] currentAngles) {
+        for (int i = 0; i < speeds.length; i++) {
+            speeds[i] *= Math.cos(angles[i] - currentAngles[i]);
+        }
+    }
 }
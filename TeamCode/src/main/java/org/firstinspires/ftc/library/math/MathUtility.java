@@ -50,6 +50,26 @@ public final class MathUtility {
         return new BigDecimal((String.valueOf(number))).setScale(places, RoundingMode.HALF_UP).doubleValue();
     }
 
+    /**
+     * Scales values in place by one common factor so that none has a magnitude above a maximum,
+     * keeping their ratios. Used to normalize wheel speeds and motor powers.
+     *
+     * @param values       the values; mutated with the scaled values
+     * @param maxMagnitude the largest allowed magnitude
+     */
+    public static void normalizeMagnitudes(double[] values, double maxMagnitude) {
+        double realMax = 0;
+        for (double value : values) {
+            realMax = Math.max(realMax, Math.abs(value));
+        }
+        if (realMax > maxMagnitude) {
+            double scale = maxMagnitude / realMax;
+            for (int i = 0; i < values.length; i++) {
+                values[i] *= scale;
+            }
+        }
+    }
+
     /**
      * Function to normalize all angles
      *
@@ -4,6 +4,7 @@ import org.firstinspires.ftc.library.controller.Controller;
 import org.firstinspires.ftc.library.kinematics.wpilibkinematics.ChassisSpeeds;
 import org.firstinspires.ftc.library.math.MathUtility;
 import org.firstinspires.ftc.library.math.geometry.Pose2d;
+import org.firstinspires.ftc.library.math.geometry.Rotation2d;
 import org.firstinspires.ftc.library.math.geometry.Transform2d;
 import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
 
@@ -14,8 +15,8 @@ public class P2PController {
     public final AngleUnit angleUnit;
 
     private Pose2d target;
-    private Pose2d current;
-    private Transform2d error;
+    private double targetX, targetY, targetHeading;
+    private double currentX, currentY, currentHeading;
 
     /**
      * The constructor for a P2PController object.
@@ -34,9 +35,10 @@ public class P2PController {
         this.yController = yController;
         this.headingController = headingController;
         this.angleUnit = angleUnit;
-        this.current = start;
-        this.target = target;
-        getError(); // updates error
+        this.currentX = start.getX();
+        this.currentY = start.getY();
+        this.currentHeading = start.getHeading();
+        setTarget(target);
         setTolerance(positionalTolerance, angularTolerance);
     }
 
@@ -60,15 +62,32 @@ public class P2PController {
      * @return field-centric chassis speeds/power
      */
     public ChassisSpeeds calculate(Pose2d pv) {
-        // Update internal variables
-        current = pv;
-        getError();
+        return calculate(pv.getX(), pv.getY(), pv.getHeading(), new ChassisSpeeds());
+    }
+
+    /**
+     * Calculates the output for robot movement without allocating, for calling every loop.
+     *
+     * @param x       the last known x coordinate of the robot
+     * @param y       the last known y coordinate of the robot
+     * @param heading the last known heading of the robot, in radians
+     * @param out     the chassis speeds to write the field-centric output into
+     * @return out
+     */
+    public ChassisSpeeds calculate(double x, double y, double heading, ChassisSpeeds out) {
+        currentX = x;
+        currentY = y;
+        currentHeading = heading;
 
-        double xVal = xController.calculate(current.getX(), target.getX());
-        double yVal = yController.calculate(current.getY(), target.getY());
-        double headingVal = headingController.calculate(0, MathUtility.normalizeAngle(error.getRotation().getAngle(angleUnit), false, angleUnit));
+        double headingError = targetHeading - heading;
+        if (angleUnit == AngleUnit.DEGREES) {
+            headingError = Math.toDegrees(headingError);
+        }
 
-        return new ChassisSpeeds(xVal, yVal, headingVal);
+        out.vxMetersPerSecond = xController.calculate(x, targetX);
+        out.vyMetersPerSecond = yController.calculate(y, targetY);
+        out.omegaRadiansPerSecond = headingController.calculate(0, MathUtility.normalizeAngle(headingError, false, angleUnit));
+        return out;
     }
 
     /**
@@ -78,12 +97,32 @@ public class P2PController {
      */
     public void setTarget(Pose2d sp) {
         target = sp;
+        targetX = sp.getX();
+        targetY = sp.getY();
+        targetHeading = sp.getHeading();
+    }
+
+    /**
+     * Sets the target pose without allocating.
+     *
+     * @param x       the desired x coordinate
+     * @param y       the desired y coordinate
+     * @param heading the desired heading, in radians
+     */
+    public void setTarget(double x, double y, double heading) {
+        target = null;
+        targetX = x;
+        targetY = y;
+        targetHeading = heading;
     }
 
     /**
      * @return The current target pose.
      */
     public Pose2d getTarget() {
+        if (target == null) {
+            target = new Pose2d(targetX, targetY, new Rotation2d(targetHeading));
+        }
         return target;
     }
 
@@ -116,12 +155,11 @@ public class P2PController {
     }
 
     /**
-     * Updates the internal object for error and returns it
+     * Returns the error from the last known position to the target
      *
      * @return the positional and angular error
      */
     public Transform2d getError() {
-        error = target.minus(current);
-        return error;
+        return getTarget().minus(new Pose2d(currentX, currentY, new Rotation2d(currentHeading)));
     }
 }
@@ -0,0 +1,285 @@
+package org.firstinspires.ftc.library.p2p;
+
+import org.firstinspires.ftc.library.controller.TrapezoidProfile;
+import org.firstinspires.ftc.library.kinematics.wpilibkinematics.ChassisSpeeds;
+import org.firstinspires.ftc.library.math.geometry.Pose2d;
+
+import java.util.Arrays;
+
+/**
+ * Follows a queue of waypoints with a {@link P2PController}, without stopping at the ones in
+ * between.
+ *
+ * <p>The path is the straight segments from the robot's pose at the start through each waypoint.
+ * Every loop the robot's position is projected onto the current segment, and the controller is
+ * aimed at a point the lookahead distance further along the path, which may lie on a later
+ * segment, so the robot cuts smoothly across each corner instead of driving into it. A waypoint
+ * is passed once the robot is within the lookahead distance of it or beyond its end of the
+ * segment. The heading targets the heading of the waypoint ending the segment the aim point is
+ * on; only the last waypoint is settled on.
+ *
+ * <p>The speed is scheduled along the distance left on the path with the velocity and
+ * acceleration of {@link TrapezoidProfile.Constraints}: it rises by at most the acceleration,
+ * never exceeds the velocity, and is at most the speed from which the robot can still stop at the
+ * last waypoint. Before the last waypoint the translation output always has the scheduled speed,
+ * towards the aim point; at the last one the controller's output is only capped by it. The
+ * controllers' outputs and the constraints must be in the same units, such as inches per second.
+ *
+ * <p>Waypoints are kept in arrays that grow as needed, and following the path doesn't allocate.
+ *
+ * <pre>
+ * P2PPathFollower follower = new P2PPathFollower(p2pController,
+ *         new TrapezoidProfile.Constraints(40, 60), 8)
+ *         .addWaypoint(24, 0, 0)
+ *         .addWaypoint(24, 24, Math.PI / 2)
+ *         .addWaypoint(48, 24, Math.PI / 2);
+ *
+ * // every loop
+ * ChassisSpeeds speeds = follower.calculate(odometry.getX(), odometry.getY(),
+ *         odometry.getHeading(), reusedSpeeds);
+ * </pre>
+ */
+public class P2PPathFollower {
+    public final P2PController controller;
+
+    private final TrapezoidProfile.Constraints constraints;
+    private double lookahead;
+
+    private double[] xs = new double[8];
+    private double[] ys = new double[8];
+    private double[] headings = new double[8];
+    // the length of the path from the end of each segment to the last waypoint
+    private double[] remainingLengths = new double[8];
+    private int count;
+
+    private int segment;
+    private boolean started;
+    private double startX, startY;
+    private double speed;
+    private double lastTime;
+    private double remaining;
+
+    /**
+     * Creates a follower with no waypoints.
+     *
+     * @param controller  the controller that drives towards the aim point
+     * @param constraints the maximum speed and acceleration along the path
+     * @param lookahead   the distance ahead along the path the robot aims for
+     */
+    public P2PPathFollower(P2PController controller, TrapezoidProfile.Constraints constraints, double lookahead) {
+        if (constraints.maxVelocity <= 0 || constraints.maxAcceleration <= 0) {
+            throw new IllegalArgumentException("The path constraints must be positive");
+        }
+        this.controller = controller;
+        this.constraints = constraints;
+        setLookahead(lookahead);
+    }
+
+    /**
+     * @param lookahead the distance ahead along the path the robot aims for
+     */
+    public void setLookahead(double lookahead) {
+        if (lookahead <= 0) {
+            throw new IllegalArgumentException("The lookahead must be positive");
+        }
+        this.lookahead = lookahead;
+    }
+
+    /**
+     * Adds a waypoint to the end of the path.
+     *
+     * @param x       the x coordinate
+     * @param y       the y coordinate
+     * @param heading the heading of the robot towards the waypoint, in radians
+     * @return this follower, for chaining
+     */
+    public P2PPathFollower addWaypoint(double x, double y, double heading) {
+        if (count == xs.length) {
+            xs = Arrays.copyOf(xs, count * 2);
+            ys = Arrays.copyOf(ys, count * 2);
+            headings = Arrays.copyOf(headings, count * 2);
+            remainingLengths = Arrays.copyOf(remainingLengths, count * 2);
+        }
+        xs[count] = x;
+        ys[count] = y;
+        headings[count] = heading;
+        remainingLengths[count] = 0;
+        if (count > 0) {
+            double length = Math.hypot(x - xs[count - 1], y - ys[count - 1]);
+            for (int i = 0; i < count; i++) {
+                remainingLengths[i] += length;
+            }
+        }
+        count++;
+        return this;
+    }
+
+    /**
+     * Adds a waypoint to the end of the path.
+     *
+     * @param waypoint the pose of the robot at the waypoint
+     * @return this follower, for chaining
+     */
+    public P2PPathFollower addWaypoint(Pose2d waypoint) {
+        return addWaypoint(waypoint.getX(), waypoint.getY(), waypoint.getHeading());
+    }
+
+    /**
+     * Removes every waypoint and starts over.
+     */
+    public void clear() {
+        count = 0;
+        reset();
+    }
+
+    /**
+     * Restarts the path from the first waypoint, from wherever the robot is at the next call to
+     * {@link #calculate(double, double, double, ChassisSpeeds)}.
+     */
+    public void reset() {
+        segment = 0;
+        started = false;
+        speed = 0;
+    }
+
+    /**
+     * Calculates the output for this loop.
+     *
+     * @param x       the last known x coordinate of the robot
+     * @param y       the last known y coordinate of the robot
+     * @param heading the last known heading of the robot, in radians
+     * @param out     the chassis speeds to write the field-centric output into
+     * @return out, which is zero if there are no waypoints
+     */
+    public ChassisSpeeds calculate(double x, double y, double heading, ChassisSpeeds out) {
+        if (count == 0) {
+            out.vxMetersPerSecond = 0;
+            out.vyMetersPerSecond = 0;
+            out.omegaRadiansPerSecond = 0;
+            return out;
+        }
+        double time = System.nanoTime() / 1E9;
+        double dt = started ? time - lastTime : 0;
+        lastTime = time;
+        if (!started) {
+            started = true;
+            startX = x;
+            startY = y;
+        }
+
+        // Pass the waypoints the robot has reached, and project it onto the current segment
+        double along;
+        while (true) {
+            along = project(segment, x, y);
+            if (segment == count - 1) {
+                break;
+            }
+            double length = segmentLength(segment);
+            double toEnd = Math.hypot(xs[segment] - x, ys[segment] - y);
+            if (along < length && toEnd > lookahead) {
+                break;
+            }
+            segment++;
+        }
+        double length = segmentLength(segment);
+        along = Math.max(0, Math.min(along, length));
+        // On the last segment, measure straight to the end so an overshoot can be corrected
+        remaining = segment == count - 1
+                ? Math.hypot(xs[segment] - x, ys[segment] - y)
+                : length - along + remainingLengths[segment];
+
+        // Walk the lookahead along the path to find the aim point
+        int aimSegment = segment;
+        double aimAlong = along + lookahead;
+        while (aimSegment < count - 1 && aimAlong > segmentLength(aimSegment)) {
+            aimAlong -= segmentLength(aimSegment);
+            aimSegment++;
+        }
+        boolean last = aimSegment == count - 1 && aimAlong >= segmentLength(aimSegment);
+        double aimX;
+        double aimY;
+        if (last) {
+            aimX = xs[count - 1];
+            aimY = ys[count - 1];
+        } else {
+            double fraction = aimAlong / segmentLength(aimSegment);
+            aimX = segmentStartX(aimSegment) + (xs[aimSegment] - segmentStartX(aimSegment)) * fraction;
+            aimY = segmentStartY(aimSegment) + (ys[aimSegment] - segmentStartY(aimSegment)) * fraction;
+        }
+
+        controller.setTarget(aimX, aimY, headings[aimSegment]);
+        controller.calculate(x, y, heading, out);
+
+        // Schedule the speed: accelerate, cruise, and brake to stop at the last waypoint
+        double limit = Math.min(constraints.maxVelocity,
+                Math.sqrt(2 * constraints.maxAcceleration * remaining));
+        limit = Math.min(limit, speed + constraints.maxAcceleration * dt);
+
+        double magnitude = Math.hypot(out.vxMetersPerSecond, out.vyMetersPerSecond);
+        double scaled = last ? Math.min(magnitude, limit) : limit;
+        double scale = magnitude > 1E-9 ? scaled / magnitude : 0;
+        out.vxMetersPerSecond *= scale;
+        out.vyMetersPerSecond *= scale;
+        speed = scaled;
+        return out;
+    }
+
+    /**
+     * @return whether the robot has settled at the last waypoint within the controller's
+     * tolerances
+     */
+    public boolean isFinished() {
+        return count > 0 && started && segment == count - 1 && controller.atTarget();
+    }
+
+    /**
+     * @return the index of the waypoint the robot is heading to
+     */
+    public int getCurrentWaypoint() {
+        return segment;
+    }
+
+    /**
+     * @return the number of waypoints
+     */
+    public int getWaypointCount() {
+        return count;
+    }
+
+    /**
+     * @return the distance left along the path at the last call
+     */
+    public double getRemainingDistance() {
+        return remaining;
+    }
+
+    /**
+     * @return the speed along the path commanded at the last call
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    // The distance along a segment of the robot's projection onto it
+    private double project(int segment, double x, double y) {
+        double length = segmentLength(segment);
+        if (length < 1E-9) {
+            return 0;
+        }
+        double fromX = segmentStartX(segment);
+        double fromY = segmentStartY(segment);
+        return ((x - fromX) * (xs[segment] - fromX) + (y - fromY) * (ys[segment] - fromY)) / length;
+    }
+
+    private double segmentLength(int segment) {
+        return Math.hypot(xs[segment] - segmentStartX(segment), ys[segment] - segmentStartY(segment));
+    }
+
+    private double segmentStartX(int segment) {
+        return segment == 0 ? startX : xs[segment - 1];
+    }
+
+    private double segmentStartY(int segment) {
+        return segment == 0 ? startY : ys[segment - 1];
+    }
+}
@@ -53,6 +53,19 @@ public class Limelight {
         return (aprilTagHeight - limelightHeight) / Math.tan(angleToGoalRadians);
     }
 
+    /**
+     * Returns the time the frame behind the latest result was captured, for use with
+     * {@link org.firstinspires.ftc.library.kinematics.PoseEstimator}.
+     * @return capture time in seconds on the System.nanoTime() clock, or -1 if there is no valid result
+     */
+    public double getCaptureTimestamp() {
+        LLResult result = limelight.getLatestResult();
+        if (result == null || !result.isValid()) return -1;
+
+        double latencyMillis = result.getCaptureLatency() + result.getTargetingLatency() + result.getStaleness();
+        return System.nanoTime() / 1E9 - latencyMillis / 1000.0;
+    }
+
     /*
 
     public double getTx() {
@@ -210,6 +210,19 @@ public class OV2311 {
         return Math.sqrt(x * x + y * y + z * z);
     }
 
+    /**
+     * Returns the time the frame behind the latest detections was captured, for use with
+     * {@link org.firstinspires.ftc.library.kinematics.PoseEstimator}. This does not consume the
+     * fresh detections.
+     * @return capture time in seconds on the System.nanoTime() clock, or -1 if no tag detected
+     */
+    public double getCaptureTimestamp() {
+        List<AprilTagDetection> detections = aprilTagProcessor.getDetections();
+        if (detections == null || detections.isEmpty()) return -1;
+
+        return detections.get(0).frameAcquisitionNanoTime / 1E9;
+    }
+
     public void disableLiveView() {
         visionPortal.stopLiveView();
     }